@@ -35,6 +35,15 @@ public class Breadcrumb implements JsonStream.Streamable {
         this.logger = logger;
     }
 
+    Breadcrumb(@NonNull String message,
+               @NonNull BreadcrumbType type,
+               @Nullable Map<String, Object> metadata,
+               long timestampMillis,
+               @NonNull Logger logger) {
+        this.impl = new BreadcrumbInternal(message, type, metadata, timestampMillis);
+        this.logger = logger;
+    }
+
     private void logNull(String property) {
         logger.e("Invalid null value supplied to breadcrumb." + property + ", ignoring");
     }
@@ -99,12 +108,12 @@ public class Breadcrumb implements JsonStream.Streamable {
      */
     @NonNull
     public Date getTimestamp() {
-        return impl.timestamp;
+        return impl.getTimestamp();
     }
 
     @NonNull
     String getStringTimestamp() {
-        return DateUtils.toIso8601(impl.timestamp);
+        return DateUtils.toIso8601(impl.timestampMillis);
     }
 
     @Override
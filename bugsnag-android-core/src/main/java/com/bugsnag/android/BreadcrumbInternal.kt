@@ -1,5 +1,6 @@
 package com.bugsnag.android
 
+import com.bugsnag.android.internal.DateUtils
 import com.bugsnag.android.internal.StringUtils
 import com.bugsnag.android.internal.TrimMetrics
 import java.io.IOException
@@ -14,16 +15,30 @@ internal class BreadcrumbInternal internal constructor(
     @JvmField var message: String,
     @JvmField var type: BreadcrumbType,
     @JvmField var metadata: MutableMap<String, Any?>?,
-    @JvmField val timestamp: Date = Date()
+    @JvmField val timestampMillis: Long = System.currentTimeMillis()
 ) : JsonStream.Streamable { // JvmField allows direct field access optimizations
 
     internal constructor(message: String) : this(
         message,
         BreadcrumbType.MANUAL,
         mutableMapOf(),
-        Date()
+        System.currentTimeMillis()
     )
 
+    internal constructor(
+        message: String,
+        type: BreadcrumbType,
+        metadata: MutableMap<String, Any?>?,
+        timestamp: Date
+    ) : this(message, type, metadata, timestamp.time)
+
+    /**
+     * The timestamp is held as milliseconds since the epoch, and is only converted to a [Date]
+     * or ISO-8601 string when it is read or serialized.
+     */
+    val timestamp: Date
+        get() = Date(timestampMillis)
+
     internal fun trimMetadataStringsTo(maxStringLength: Int): TrimMetrics {
         val metadata = this.metadata ?: return TrimMetrics(0, 0)
         return StringUtils.trimStringValuesTo(maxStringLength, metadata)
@@ -32,7 +47,7 @@ internal class BreadcrumbInternal internal constructor(
     @Throws(IOException::class)
     override fun toStream(writer: JsonStream) {
         writer.beginObject()
-        writer.name("timestamp").value(timestamp)
+        writer.name("timestamp").value(DateUtils.toIso8601(timestampMillis))
         writer.name("name").value(message)
         writer.name("type").value(type.toString())
         writer.name("metaData")
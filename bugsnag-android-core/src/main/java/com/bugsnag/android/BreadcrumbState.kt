@@ -1,8 +1,11 @@
 package com.bugsnag.android
 
+import androidx.annotation.VisibleForTesting
 import com.bugsnag.android.internal.DateUtils
 import java.io.IOException
-import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
 
 /**
  * Stores breadcrumbs added to the [Client] in a ring buffer. If the number of breadcrumbs exceeds
@@ -18,16 +21,24 @@ internal class BreadcrumbState(
 ) : BaseObservable(), JsonStream.Streamable {
 
     /*
-     * We use the `index` as both a pointer to the tail of our ring-buffer, and also as "cheat"
-     * semaphore. When the ring-buffer is being copied - the index is set to a negative number,
-     * which is an invalid array-index. By masking the `expected` value in a `compareAndSet` with
-     * `validIndexMask`: the CAS operation will only succeed if it wouldn't interrupt a concurrent
-     * `copy()` call.
+     * Each breadcrumb is assigned a sequence number from `nextSequence`, which determines its
+     * slot in the ring buffer. Every slot has a matching entry in `slotSequences` which works
+     * like a per-slot seqlock: a writer marks the slot as busy before storing its breadcrumb,
+     * then publishes its sequence number once the breadcrumb is in place. A writer can only mark
+     * a slot as busy if it still holds an older breadcrumb, so a writer which was delayed until
+     * a newer breadcrumb was published to its slot drops its own (already evicted) breadcrumb.
+     *
+     * Readers never block writers: `copy()` reads the sequence number of each slot before and
+     * after reading the breadcrumb, and only keeps it if both match the expected sequence. A
+     * breadcrumb which is overwritten or still being written during the copy is skipped.
      */
-    private val validIndexMask: Int = Int.MAX_VALUE
-
-    private val store = arrayOfNulls<Breadcrumb?>(maxBreadcrumbs)
-    private val index = AtomicInteger(0)
+    private val store = AtomicReferenceArray<Breadcrumb?>(maxBreadcrumbs)
+    private val slotSequences = AtomicLongArray(maxBreadcrumbs).apply {
+        for (slot in 0 until maxBreadcrumbs) {
+            set(slot, EMPTY_SLOT)
+        }
+    }
+    private val nextSequence = AtomicLong(0)
 
     fun add(breadcrumb: Breadcrumb) {
         if (maxBreadcrumbs == 0 || !callbackState.runOnBreadcrumbTasks(breadcrumb, logger)) {
@@ -35,29 +46,34 @@ internal class BreadcrumbState(
         }
 
         // store the breadcrumb in the ring buffer
-        val position = getBreadcrumbIndex()
-        store[position] = breadcrumb
+        publish(nextSequence.getAndIncrement(), breadcrumb)
 
         updateState {
             // use direct field access to avoid overhead of accessor method
             StateEvent.AddBreadcrumb(
                 breadcrumb.impl.message,
                 breadcrumb.impl.type,
-                DateUtils.toIso8601(breadcrumb.impl.timestamp),
+                DateUtils.toIso8601(breadcrumb.impl.timestampMillis),
                 breadcrumb.impl.metadata ?: mutableMapOf()
             )
         }
     }
 
-    /**
-     * Retrieves the index in the ring buffer where the breadcrumb should be stored.
-     */
-    private fun getBreadcrumbIndex(): Int {
+    @VisibleForTesting
+    internal fun publish(sequence: Long, breadcrumb: Breadcrumb) {
+        val slot = (sequence % maxBreadcrumbs).toInt()
         while (true) {
-            val currentValue = index.get() and validIndexMask
-            val nextValue = (currentValue + 1) % maxBreadcrumbs
-            if (index.compareAndSet(currentValue, nextValue)) {
-                return currentValue
+            val current = slotSequences.get(slot)
+            when {
+                // wait for the other writer to finish, its breadcrumb may be older than ours
+                current == BUSY_SLOT -> Thread.yield()
+                // a newer breadcrumb has already replaced ours
+                current >= sequence -> return
+                slotSequences.compareAndSet(slot, current, BUSY_SLOT) -> {
+                    store.set(slot, breadcrumb)
+                    slotSequences.set(slot, sequence)
+                    return
+                }
             }
         }
     }
@@ -70,21 +86,20 @@ internal class BreadcrumbState(
             return emptyList()
         }
 
-        // Set a negative value that stops any other thread from adding a breadcrumb.
-        // This handles reentrancy by waiting here until the old value has been reset.
-        var tail = -1
-        while (tail == -1) {
-            tail = index.getAndSet(-1)
-        }
-
-        try {
-            val result = arrayOfNulls<Breadcrumb>(maxBreadcrumbs)
-            store.copyInto(result, 0, tail, maxBreadcrumbs)
-            store.copyInto(result, maxBreadcrumbs - tail, 0, tail)
-            return result.filterNotNull()
-        } finally {
-            index.set(tail)
+        val end = nextSequence.get()
+        val start = maxOf(0L, end - maxBreadcrumbs)
+        val result = ArrayList<Breadcrumb>((end - start).toInt())
+        for (sequence in start until end) {
+            val slot = (sequence % maxBreadcrumbs).toInt()
+            if (slotSequences.get(slot) != sequence) {
+                continue
+            }
+            val breadcrumb = store.get(slot)
+            if (breadcrumb != null && slotSequences.get(slot) == sequence) {
+                result.add(breadcrumb)
+            }
         }
+        return result
     }
 
     @Throws(IOException::class)
@@ -94,4 +109,9 @@ internal class BreadcrumbState(
         crumbs.forEach { it.toStream(writer) }
         writer.endArray()
     }
+
+    private companion object {
+        const val EMPTY_SLOT = -1L
+        const val BUSY_SLOT = -2L
+    }
 }
@@ -18,8 +18,18 @@ internal class BugsnagEventMapper(
         return Event(convertToEventImpl(map, apiKey), logger)
     }
 
+    /**
+     * Converts [map] to an [EventInternal]. If [decodeOnAccess] is set the breadcrumbs and
+     * threads are only decoded if they are accessed, and are otherwise serialized exactly as
+     * they appear in [map].
+     */
     @Suppress("UNCHECKED_CAST")
-    internal fun convertToEventImpl(map: Map<in String, Any?>, apiKey: String): EventInternal {
+    @JvmOverloads
+    internal fun convertToEventImpl(
+        map: Map<in String, Any?>,
+        apiKey: String,
+        decodeOnAccess: Boolean = false
+    ): EventInternal {
         val event = EventInternal(apiKey, logger)
 
         // populate exceptions. check this early to avoid unnecessary serialization if
@@ -52,11 +62,17 @@ internal class BugsnagEventMapper(
         // populate breadcrumbs
         val breadcrumbList: List<MutableMap<String, Any?>> =
             (map["breadcrumbs"] as? List<MutableMap<String, Any?>>).orEmpty()
-        breadcrumbList.mapTo(event.breadcrumbs) {
-            Breadcrumb(
-                convertBreadcrumbInternal(it),
-                logger
-            )
+        if (decodeOnAccess) {
+            event.breadcrumbs = DecodeOnAccessList(breadcrumbList) {
+                Breadcrumb(convertBreadcrumbInternal(it), logger)
+            }
+        } else {
+            breadcrumbList.mapTo(event.breadcrumbs) {
+                Breadcrumb(
+                    convertBreadcrumbInternal(it),
+                    logger
+                )
+            }
         }
 
         // populate context
@@ -82,7 +98,11 @@ internal class BugsnagEventMapper(
 
         // populate threads
         val threads = map["threads"] as? List<Map<String, Any?>>
-        threads?.mapTo(event.threads) { Thread(convertThread(it), logger) }
+        if (threads != null && decodeOnAccess) {
+            event.threads = DecodeOnAccessList(threads) { Thread(convertThread(it), logger) }
+        } else {
+            threads?.mapTo(event.threads) { Thread(convertThread(it), logger) }
+        }
 
         // populate projectPackages
         val projectPackages = map["projectPackages"] as? List<String>
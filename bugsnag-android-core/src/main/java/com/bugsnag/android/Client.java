@@ -140,6 +140,8 @@ public class Client implements MetadataAware, CallbackAware, UserAware, FeatureF
                 data.put("hasConnection", hasConnection);
                 data.put("networkState", networkState);
                 leaveAutoBreadcrumb("Connectivity changed", BreadcrumbType.STATE, data);
+                getEventStore().onConnectivityChanged(hasConnection);
+                sessionTracker.onConnectivityChanged(hasConnection);
                 if (hasConnection) {
                     getEventStore().flushAsync();
                     sessionTracker.flushAsync();
@@ -1121,7 +1123,7 @@ public class Client implements MetadataAware, CallbackAware, UserAware, FeatureF
                                 @Nullable Map<String, Object> metadata,
                                 @NonNull BreadcrumbType type) {
         if (message != null && type != null) {
-            breadcrumbState.add(new Breadcrumb(message, type, metadata, new Date(), logger));
+            breadcrumbState.add(new Breadcrumb(message, type, metadata, System.currentTimeMillis(), logger));
         } else {
             logNull("leaveBreadcrumb");
         }
@@ -1139,7 +1141,7 @@ public class Client implements MetadataAware, CallbackAware, UserAware, FeatureF
                              @NonNull BreadcrumbType type,
                              @NonNull Map<String, Object> metadata) {
         if (!immutableConfig.shouldDiscardBreadcrumb(type)) {
-            breadcrumbState.add(new Breadcrumb(message, type, metadata, new Date(), logger));
+            breadcrumbState.add(new Breadcrumb(message, type, metadata, System.currentTimeMillis(), logger));
         }
     }
 
@@ -1157,7 +1159,7 @@ public class Client implements MetadataAware, CallbackAware, UserAware, FeatureF
             data.put("unhandled", String.valueOf(event.isUnhandled()));
             data.put("severity", event.getSeverity().toString());
             breadcrumbState.add(new Breadcrumb(errorClass,
-                    BreadcrumbType.ERROR, data, new Date(), logger));
+                    BreadcrumbType.ERROR, data, System.currentTimeMillis(), logger));
         }
     }
 
@@ -24,7 +24,8 @@ internal class ClientObservable : BaseObservable() {
                 lastRunInfoPath,
                 consecutiveLaunchCrashes,
                 conf.sendThreads,
-                conf.maxBreadcrumbs
+                conf.maxBreadcrumbs,
+                conf.journalNativeCrashes
             )
         }
     }
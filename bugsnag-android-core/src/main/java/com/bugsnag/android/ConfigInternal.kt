@@ -53,6 +53,8 @@ internal class ConfigInternal(
     var maxBreadcrumbs: Int = DEFAULT_MAX_BREADCRUMBS
     var maxPersistedEvents: Int = DEFAULT_MAX_PERSISTED_EVENTS
     var maxPersistedSessions: Int = DEFAULT_MAX_PERSISTED_SESSIONS
+    var maxEventsPerRequest: Int = DEFAULT_MAX_EVENTS_PER_REQUEST
+    var maxSessionsPerRequest: Int = DEFAULT_MAX_SESSIONS_PER_REQUEST
     var maxReportedThreads: Int = DEFAULT_MAX_REPORTED_THREADS
     var threadCollectionTimeLimitMillis: Long = DEFAULT_THREAD_COLLECTION_TIME_LIMIT_MS
     var maxStringValueLength: Int = DEFAULT_MAX_STRING_VALUE_LENGTH
@@ -72,6 +74,8 @@ internal class ConfigInternal(
     var persistenceDirectory: File? = null
 
     var attemptDeliveryOnCrash: Boolean = false
+    var compressPayloads: Boolean = false
+    var journalNativeCrashes: Boolean = false
 
     val notifier: Notifier = Notifier()
 
@@ -149,6 +153,10 @@ internal class ConfigInternal(
                 "maxPersistedEvents" to maxPersistedEvents else null,
             if (maxPersistedSessions != defaultConfig.maxPersistedSessions)
                 "maxPersistedSessions" to maxPersistedSessions else null,
+            if (maxEventsPerRequest != defaultConfig.maxEventsPerRequest)
+                "maxEventsPerRequest" to maxEventsPerRequest else null,
+            if (maxSessionsPerRequest != defaultConfig.maxSessionsPerRequest)
+                "maxSessionsPerRequest" to maxSessionsPerRequest else null,
             if (maxReportedThreads != defaultConfig.maxReportedThreads)
                 "maxReportedThreads" to maxReportedThreads else null,
             if (threadCollectionTimeLimitMillis != defaultConfig.threadCollectionTimeLimitMillis)
@@ -158,7 +166,11 @@ internal class ConfigInternal(
             if (sendThreads != defaultConfig.sendThreads)
                 "sendThreads" to sendThreads else null,
             if (attemptDeliveryOnCrash != defaultConfig.attemptDeliveryOnCrash)
-                "attemptDeliveryOnCrash" to attemptDeliveryOnCrash else null
+                "attemptDeliveryOnCrash" to attemptDeliveryOnCrash else null,
+            if (compressPayloads != defaultConfig.compressPayloads)
+                "compressPayloads" to compressPayloads else null,
+            if (journalNativeCrashes != defaultConfig.journalNativeCrashes)
+                "journalNativeCrashes" to journalNativeCrashes else null
         ).toMap()
     }
 
@@ -166,6 +178,8 @@ internal class ConfigInternal(
         private const val DEFAULT_MAX_BREADCRUMBS = 100
         private const val DEFAULT_MAX_PERSISTED_SESSIONS = 128
         private const val DEFAULT_MAX_PERSISTED_EVENTS = 32
+        private const val DEFAULT_MAX_EVENTS_PER_REQUEST = 1
+        private const val DEFAULT_MAX_SESSIONS_PER_REQUEST = 1
         private const val DEFAULT_MAX_REPORTED_THREADS = 200
         private const val DEFAULT_THREAD_COLLECTION_TIME_LIMIT_MS: Long = 5000
         private const val DEFAULT_LAUNCH_CRASH_THRESHOLD_MS: Long = 5000
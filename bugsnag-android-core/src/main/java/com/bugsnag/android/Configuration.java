@@ -532,6 +532,62 @@ public class Configuration implements CallbackAware, MetadataAware, UserAware, F
         }
     }
 
+    /**
+     * Gets the maximum number of persisted events which will be sent to Bugsnag in a single
+     * request when delivering events that were previously stored on disk.
+     * <p>
+     * By default, each persisted event is sent in its own request.
+     */
+    public int getMaxEventsPerRequest() {
+        return impl.getMaxEventsPerRequest();
+    }
+
+    /**
+     * Sets the maximum number of persisted events which will be sent to Bugsnag in a single
+     * request when delivering events that were previously stored on disk. Batching stored
+     * events reduces the number of connections made after a period without network
+     * connectivity. Events are only batched together when they share the same API key, and
+     * batches are limited to {@link EventPayload#DEFAULT_MAX_PAYLOAD_SIZE} bytes.
+     * <p>
+     * By default, each persisted event is sent in its own request.
+     */
+    public void setMaxEventsPerRequest(@IntRange(from = 1) int maxEventsPerRequest) {
+        if (maxEventsPerRequest >= 1) {
+            impl.setMaxEventsPerRequest(maxEventsPerRequest);
+        } else {
+            getLogger().e("Invalid configuration value detected. "
+                    + "Option maxEventsPerRequest should be a positive integer."
+                    + "Supplied value is " + maxEventsPerRequest);
+        }
+    }
+
+    /**
+     * Gets the maximum number of persisted sessions which will be sent to Bugsnag in a single
+     * request when delivering sessions that were previously stored on disk.
+     * <p>
+     * By default, each persisted session is sent in its own request.
+     */
+    public int getMaxSessionsPerRequest() {
+        return impl.getMaxSessionsPerRequest();
+    }
+
+    /**
+     * Sets the maximum number of persisted sessions which will be sent to Bugsnag in a single
+     * request when delivering sessions that were previously stored on disk. Sessions are only
+     * batched together when they share the same API key, app and device information.
+     * <p>
+     * By default, each persisted session is sent in its own request.
+     */
+    public void setMaxSessionsPerRequest(@IntRange(from = 1) int maxSessionsPerRequest) {
+        if (maxSessionsPerRequest >= 1) {
+            impl.setMaxSessionsPerRequest(maxSessionsPerRequest);
+        } else {
+            getLogger().e("Invalid configuration value detected. "
+                    + "Option maxSessionsPerRequest should be a positive integer."
+                    + "Supplied value is " + maxSessionsPerRequest);
+        }
+    }
+
     /**
      * Gets the maximum number of threads that will be reported with an event. Once the threshold is
      * reached, all remaining threads will be omitted.
@@ -1176,6 +1232,61 @@ public class Configuration implements CallbackAware, MetadataAware, UserAware, F
         return impl.getAttemptDeliveryOnCrash();
     }
 
+    /**
+     * Sets whether event and session payloads should be compressed with gzip (sent with a
+     * {@code Content-Encoding: gzip} header). Compressing payloads typically reduces their size
+     * by 5-10x, at the cost of some CPU time on the delivery thread.
+     * <p>
+     * The setting is passed to the {@link Delivery} as
+     * {@link DeliveryParams#getCompressPayloads()}, and is honoured by the default
+     * {@link Delivery} and by {@code OkHttpDelivery}. A custom {@link Delivery} must compress the
+     * payload itself if it checks this setting. Compression should only be enabled when the
+     * configured endpoints accept gzip encoded payloads.
+     * <p>
+     * By default this value is {@code false}.
+     *
+     * @param compressPayloads {@code true} if payloads should be compressed before delivery
+     */
+    public void setCompressPayloads(boolean compressPayloads) {
+        impl.setCompressPayloads(compressPayloads);
+    }
+
+    /**
+     * Whether event and session payloads are compressed before delivery.
+     *
+     * @see #setCompressPayloads(boolean)
+     */
+    public boolean isCompressPayloads() {
+        return impl.getCompressPayloads();
+    }
+
+    /**
+     * Sets whether the NDK plugin should keep the state of the next native crash report in a
+     * memory-mapped journal file, rather than encoding the whole report as JSON when a native
+     * crash occurs. The crash handler then only records the error, stacktrace and threads,
+     * and the report is converted to JSON the next time the app launches.
+     * <p>
+     * This reduces the work done while handling a native crash, at the cost of a journal file
+     * which is sized for the full native report (including {@link #getMaxBreadcrumbs()}
+     * breadcrumbs). This has no effect unless the NDK plugin is loaded.
+     * <p>
+     * By default this value is {@code false}.
+     *
+     * @param journalNativeCrashes {@code true} if native crash reports should be journaled
+     */
+    public void setJournalNativeCrashes(boolean journalNativeCrashes) {
+        impl.setJournalNativeCrashes(journalNativeCrashes);
+    }
+
+    /**
+     * Whether the NDK plugin keeps native crash reports in a memory-mapped journal.
+     *
+     * @see #setJournalNativeCrashes(boolean)
+     */
+    public boolean isJournalNativeCrashes() {
+        return impl.getJournalNativeCrashes();
+    }
+
     Set<Plugin> getPlugins() {
         return impl.getPlugins();
     }
@@ -0,0 +1,44 @@
+package com.bugsnag.android
+
+/**
+ * A list of items which have been read from a stored payload, but are only decoded by [decode]
+ * when any of them is first accessed or modified. Until then [undecodedItems] can be serialized
+ * in place of the items, so a list which was never touched is never decoded.
+ */
+internal class DecodeOnAccessList<T>(
+    source: List<Map<String, Any?>>,
+    private val decode: (Map<String, Any?>) -> T
+) : AbstractMutableList<T>() {
+
+    /**
+     * The items as they were read, or `null` once they have been decoded
+     */
+    var undecodedItems: List<Map<String, Any?>>? = source
+        private set
+
+    private val decodedItems = ArrayList<T>(source.size)
+
+    private fun items(): MutableList<T> {
+        undecodedItems?.let { source ->
+            source.mapTo(decodedItems, decode)
+            undecodedItems = null
+        }
+        return decodedItems
+    }
+
+    override val size: Int
+        get() = undecodedItems?.size ?: decodedItems.size
+
+    override fun get(index: Int): T = items()[index]
+
+    override fun set(index: Int, element: T): T = items().set(index, element)
+
+    override fun add(index: Int, element: T) = items().add(index, element)
+
+    override fun removeAt(index: Int): T = items().removeAt(index)
+
+    override fun clear() {
+        undecodedItems = null
+        decodedItems.clear()
+    }
+}
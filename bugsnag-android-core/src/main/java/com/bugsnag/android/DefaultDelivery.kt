@@ -1,54 +1,159 @@
 package com.bugsnag.android
 
 import android.net.TrafficStats
+import androidx.annotation.VisibleForTesting
 import com.bugsnag.android.internal.JsonHelper
+import java.io.ByteArrayOutputStream
 import java.io.IOException
+import java.io.OutputStream
 import java.net.HttpURLConnection
 import java.net.URL
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.zip.GZIPOutputStream
 
 internal class DefaultDelivery(
-    private val connectivity: Connectivity?,
+    internal val connectivity: Connectivity?,
     private val logger: Logger
 ) : Delivery {
 
+    /**
+     * The delay requested by the Retry-After header of the most recent undelivered response
+     * from each endpoint, which is used to schedule the next delivery attempt.
+     */
+    private val retryAfter = ConcurrentHashMap<String, Long>()
+
+    /**
+     * Returns and clears the delay in milliseconds requested by the last undelivered response
+     * from [endpoint], or null if no delay was requested.
+     */
+    fun takeRetryAfter(endpoint: String): Long? = retryAfter.remove(endpoint)
+
     override fun deliver(payload: Session, deliveryParams: DeliveryParams): DeliveryStatus {
-        val status = deliver(
-            deliveryParams.endpoint,
-            JsonHelper.serialize(payload),
-            payload.integrityToken,
-            deliveryParams.headers
-        )
+        val json = JsonHelper.serialize(payload)
+        val status = when {
+            deliveryParams.compressPayloads -> deliverCompressed(deliveryParams) { it.write(json) }
+            else -> deliver(
+                deliveryParams.endpoint,
+                json,
+                payload.integrityToken,
+                deliveryParams.headers
+            )
+        }
         logger.i("Session API request finished with status $status")
         return status
     }
 
     override fun deliver(payload: EventPayload, deliveryParams: DeliveryParams): DeliveryStatus {
-        val json = payload.trimToSize().toByteArray()
-        val status = deliver(deliveryParams.endpoint, json, payload.integrityToken, deliveryParams.headers)
+        val status = try {
+            deliverStreaming(payload, deliveryParams)
+        } catch (oom: OutOfMemoryError) {
+            logger.w("Encountered OOM delivering payload, falling back to persist on disk", oom)
+            DeliveryStatus.UNDELIVERED
+        } catch (exception: IOException) {
+            logger.w("IOException encountered measuring payload", exception)
+            DeliveryStatus.UNDELIVERED
+        }
         logger.i("Error API request finished with status $status")
         return status
     }
 
+    /**
+     * Deliver the [payload] by streaming its JSON directly into the connection, so that the
+     * encoded payload is never held in memory. A measuring pass is made first to decide whether
+     * the payload must be trimmed, and to calculate the content length and integrity header.
+     */
+    private fun deliverStreaming(
+        payload: EventPayload,
+        deliveryParams: DeliveryParams
+    ): DeliveryStatus {
+        if (connectivity != null && !connectivity.hasNetworkConnection()) {
+            // avoid measuring or compressing a payload which cannot be sent
+            return DeliveryStatus.UNDELIVERED
+        }
+
+        // trimming only measures the payload, so it can still be streamed afterwards. The
+        // integrity header of a compressed payload is calculated from the compressed bytes, so
+        // is only included in the measurement of uncompressed payloads
+        payload.trimToSizeStreaming(withIntegrity = !deliveryParams.compressPayloads)
+        if (deliveryParams.compressPayloads) {
+            return deliverCompressed(deliveryParams, payload::writeTo)
+        }
+
+        val measurement = payload.measure()
+        return deliver(
+            deliveryParams.endpoint,
+            measurement.size.toInt(),
+            measurement.integrityToken,
+            deliveryParams.headers,
+            payload::writeTo
+        )
+    }
+
+    /**
+     * Deliver a payload compressed with gzip. The JSON is streamed through the deflater so
+     * that only the compressed bytes are held in memory, which allows the content length and
+     * integrity header to be calculated from the bytes that are actually sent.
+     */
+    private fun deliverCompressed(
+        deliveryParams: DeliveryParams,
+        writePayload: (OutputStream) -> Unit
+    ): DeliveryStatus {
+        val buffer = ByteArrayOutputStream()
+        GZIPOutputStream(buffer).use(writePayload)
+        val compressed = buffer.toByteArray()
+        return deliver(
+            deliveryParams.endpoint,
+            compressed,
+            computeIntegrityHeader(compressed),
+            deliveryParams.headers + (HEADER_CONTENT_ENCODING to "gzip")
+        )
+    }
+
     fun deliver(
         urlString: String,
         json: ByteArray,
         integrity: String?,
         headers: Map<String, String?>
     ): DeliveryStatus {
+        return deliver(urlString, json.size, integrity, headers) { it.write(json) }
+    }
+
+    private fun deliver(
+        urlString: String,
+        contentLength: Int,
+        integrity: String?,
+        headers: Map<String, String?>,
+        writePayload: (OutputStream) -> Unit
+    ): DeliveryStatus {
 
         TrafficStats.setThreadStatsTag(1)
         if (connectivity != null && !connectivity.hasNetworkConnection()) {
             return DeliveryStatus.UNDELIVERED
         }
         var conn: HttpURLConnection? = null
+        var reusable = false
 
         try {
-            conn = makeRequest(URL(urlString), json, integrity, headers)
+            val timing = RequestTiming()
+            conn = makeRequest(
+                URL(urlString),
+                contentLength,
+                integrity,
+                headers,
+                timing,
+                writePayload
+            )
 
             // End the request, get the response code
             val responseCode = conn.responseCode
+            timing.responseReceived = System.nanoTime()
             val status = DeliveryStatus.forHttpResponseCode(responseCode)
-            logRequestInfo(responseCode, conn, status)
+            if (status == DeliveryStatus.UNDELIVERED) {
+                parseRetryAfter(conn)?.let { retryAfter[urlString] = it }
+            }
+            reusable = readResponse(responseCode, conn)
+            logger.d("Request to $urlString took $timing")
             return status
         } catch (oom: OutOfMemoryError) {
             // attempt to persist the payload on disk. This approach uses streams to write to a
@@ -63,22 +168,29 @@ internal class DefaultDelivery(
             logger.w("Unexpected error delivering payload", exception)
             return DeliveryStatus.FAILURE
         } finally {
-            conn?.disconnect()
+            // a connection whose response has been fully read is returned to the platform's
+            // keep-alive pool, so that flushing several stored payloads avoids a new TCP & TLS
+            // handshake for every request. Anything else must be closed.
+            if (!reusable) {
+                conn?.disconnect()
+            }
         }
     }
 
     private fun makeRequest(
         url: URL,
-        json: ByteArray,
+        contentLength: Int,
         integrity: String?,
-        headers: Map<String, String?>
+        headers: Map<String, String?>,
+        timing: RequestTiming,
+        writePayload: (OutputStream) -> Unit
     ): HttpURLConnection {
         val conn = url.openConnection() as HttpURLConnection
         conn.doOutput = true
 
         // avoids creating a buffer within HttpUrlConnection, see
         // https://developer.android.com/reference/java/net/HttpURLConnection
-        conn.setFixedLengthStreamingMode(json.size)
+        conn.setFixedLengthStreamingMode(contentLength)
 
         integrity?.let { digest ->
             conn.addRequestProperty(HEADER_BUGSNAG_INTEGRITY, digest)
@@ -89,14 +201,39 @@ internal class DefaultDelivery(
             }
         }
 
+        // connect explicitly so that the TCP & TLS handshake can be timed separately
+        conn.connect()
+        timing.connected = System.nanoTime()
+
         // write the JSON payload
-        conn.outputStream.use {
-            it.write(json)
-        }
+        conn.outputStream.use(writePayload)
+        timing.written = System.nanoTime()
         return conn
     }
 
-    private fun logRequestInfo(code: Int, conn: HttpURLConnection, status: DeliveryStatus) {
+    /**
+     * Parses a Retry-After header, which is either a number of seconds or an HTTP date.
+     */
+    private fun parseRetryAfter(conn: HttpURLConnection): Long? {
+        val value = conn.getHeaderField(HEADER_RETRY_AFTER)?.trim() ?: return null
+        val delay = when (val seconds = value.toLongOrNull()) {
+            null -> {
+                val date = conn.getHeaderFieldDate(HEADER_RETRY_AFTER, -1L)
+                if (date <= 0) return null
+                date - System.currentTimeMillis()
+            }
+
+            else -> TimeUnit.SECONDS.toMillis(seconds)
+        }
+        return delay.coerceIn(0L, MAX_RETRY_AFTER_MS)
+    }
+
+    /**
+     * Logs the response and reads its body to the end, which is required for the connection to
+     * be reused. Returns true if the response was fully consumed.
+     */
+    @VisibleForTesting
+    internal fun readResponse(code: Int, conn: HttpURLConnection): Boolean {
         runCatching {
             logger.i(
                 "Request completed with code $code, " +
@@ -104,18 +241,52 @@ internal class DefaultDelivery(
                     "headers: ${conn.headerFields}"
             )
         }
-        runCatching {
-            conn.inputStream.bufferedReader().use {
-                logger.d("Received request response: ${it.readText()}")
+
+        if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            // the body of an error response can only be read from the error stream, which is
+            // null if there is no response body to read
+            val errorDetails = runCatching {
+                conn.errorStream?.bufferedReader()?.use { it.readText() }
+            }
+            errorDetails.getOrNull()?.let {
+                logger.w("Request error details: $it")
             }
+            return errorDetails.isSuccess
         }
 
-        runCatching {
-            if (status != DeliveryStatus.DELIVERED) {
-                conn.errorStream.bufferedReader().use {
-                    logger.w("Request error details: ${it.readText()}")
-                }
-            }
+        // readText only returns once the end of the stream has been reached
+        val response = runCatching {
+            conn.inputStream.bufferedReader().use { it.readText() }
+        }
+        response.getOrNull()?.let {
+            logger.d("Received request response: $it")
         }
+        return response.isSuccess
+    }
+
+    /**
+     * Timestamps of each stage of a request, logged to help measure the cost of establishing
+     * connections. The connect time includes the TLS handshake for HTTPS endpoints, and is
+     * close to zero when a pooled connection is reused.
+     */
+    private class RequestTiming {
+        private val start = System.nanoTime()
+        var connected = start
+        var written = start
+        var responseReceived = start
+
+        override fun toString() = "connect: ${millis(start, connected)}ms, " +
+            "upload: ${millis(connected, written)}ms, " +
+            "response: ${millis(written, responseReceived)}ms"
+
+        private fun millis(from: Long, to: Long) = (to - from) / NANOS_PER_MILLI
+    }
+
+    private companion object {
+        const val NANOS_PER_MILLI = 1_000_000L
+        const val HEADER_RETRY_AFTER = "Retry-After"
+
+        // ignore unreasonable Retry-After values so that delivery is never blocked indefinitely
+        val MAX_RETRY_AFTER_MS = TimeUnit.HOURS.toMillis(1)
     }
 }
@@ -2,6 +2,7 @@ package com.bugsnag.android
 
 import com.bugsnag.android.internal.DateUtils
 import java.io.OutputStream
+import java.security.MessageDigest
 import java.util.Date
 
 private const val HEADER_API_PAYLOAD_VERSION = "Bugsnag-Payload-Version"
@@ -11,6 +12,7 @@ private const val HEADER_CONTENT_TYPE = "Content-Type"
 internal const val HEADER_BUGSNAG_INTEGRITY = "Bugsnag-Integrity"
 internal const val HEADER_API_KEY = "Bugsnag-Api-Key"
 internal const val HEADER_INTERNAL_ERROR = "Bugsnag-Internal-Error"
+internal const val HEADER_CONTENT_ENCODING = "Content-Encoding"
 
 /**
  * Supplies the headers which must be used in any request sent to the Error Reporting API.
@@ -58,6 +60,48 @@ internal fun sessionApiHeaders(apiKey: String): Map<String, String?> = mapOf(
     HEADER_BUGSNAG_SENT_AT to DateUtils.toIso8601(Date())
 )
 
+/**
+ * Formats a SHA-1 digest of a payload as the value of the "Bugsnag-Integrity" header.
+ */
+internal fun formatIntegrityHeader(sha1Digest: ByteArray): String {
+    val builder = StringBuilder("sha1 ")
+    sha1Digest.forEach { byte ->
+        builder.append(String.format("%02x", byte))
+    }
+    return builder.toString()
+}
+
+/**
+ * Calculates the "Bugsnag-Integrity" header for the given encoded payload.
+ */
+internal fun computeIntegrityHeader(payload: ByteArray): String? {
+    return runCatching {
+        formatIntegrityHeader(MessageDigest.getInstance("SHA-1").digest(payload))
+    }.getOrNull()
+}
+
 internal class NullOutputStream : OutputStream() {
     override fun write(b: Int) = Unit
+    override fun write(b: ByteArray, off: Int, len: Int) = Unit
+}
+
+/**
+ * Counts the number of bytes written to the [delegate] stream.
+ */
+internal class CountingOutputStream(private val delegate: OutputStream) : OutputStream() {
+    var count: Long = 0L
+        private set
+
+    override fun write(b: Int) {
+        delegate.write(b)
+        count++
+    }
+
+    override fun write(b: ByteArray, off: Int, len: Int) {
+        delegate.write(b, off, len)
+        count += len
+    }
+
+    override fun flush() = delegate.flush()
+    override fun close() = delegate.close()
 }
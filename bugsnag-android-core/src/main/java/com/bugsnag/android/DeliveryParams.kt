@@ -3,7 +3,7 @@ package com.bugsnag.android
 /**
  * The parameters which should be used to deliver an Event/Session.
  */
-class DeliveryParams(
+class DeliveryParams @JvmOverloads constructor(
 
     /**
      * The endpoint to which the payload should be sent
@@ -13,5 +13,11 @@ class DeliveryParams(
     /**
      * The HTTP headers which must be attached to the request
      */
-    val headers: Map<String, String?>
+    val headers: Map<String, String?>,
+
+    /**
+     * Whether the payload should be compressed with gzip and sent with a
+     * `Content-Encoding: gzip` header, as set by [Configuration.setCompressPayloads]
+     */
+    val compressPayloads: Boolean = false
 )
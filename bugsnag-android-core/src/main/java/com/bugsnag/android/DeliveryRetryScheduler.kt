@@ -0,0 +1,183 @@
+package com.bugsnag.android
+
+import android.os.SystemClock
+import com.bugsnag.android.internal.BackgroundTaskService
+import com.bugsnag.android.internal.TaskPriority
+import com.bugsnag.android.internal.TaskType
+import java.io.File
+import java.util.Random
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+
+/**
+ * Decides when stored payloads that could not be delivered should next be retried.
+ *
+ * Each file is retried with a jittered exponential backoff, and a circuit breaker stops all
+ * delivery attempts for a while after several consecutive failures, so that a flaky network
+ * does not result in a burst of requests which are unlikely to succeed. Once the breaker's
+ * cool-down has passed (or connectivity is regained) a single failure is enough to re-open it.
+ *
+ * A retry is scheduled on the [BackgroundTaskService] for when the next file becomes eligible,
+ * which runs [retry] on the executor for [taskType].
+ *
+ * Requests which are refused because there is no network connection (as reported by
+ * [connectivity], which defaults to that of a [DefaultDelivery]) are not treated as failures,
+ * and instead wait for connectivity to return.
+ */
+internal class DeliveryRetryScheduler @JvmOverloads constructor(
+    private val bgTaskService: BackgroundTaskService,
+    private val taskType: TaskType,
+    private val delivery: Delivery?,
+    private val retry: Runnable,
+    private val clock: () -> Long = { SystemClock.elapsedRealtime() },
+    private val random: Random = Random(),
+    private val connectivity: Connectivity? = (delivery as? DefaultDelivery)?.connectivity
+) {
+
+    private class RetryState {
+        var attempts = 0
+        var nextAttemptTime = 0L
+    }
+
+    private val retryStates = HashMap<File, RetryState>()
+    private var consecutiveFailures = 0
+    private var circuitOpenUntil = 0L
+    private var retryAfterUntil = 0L
+    private var hasConnection = connectivity?.hasNetworkConnection() ?: true
+
+    private var scheduledRetry: Future<*>? = null
+    private var scheduledRetryTime = Long.MAX_VALUE
+
+    /**
+     * Returns the [files] which are currently eligible for delivery, in their original order,
+     * and ensures a retry is scheduled for any that are not. The retry state of any file which
+     * is no longer stored is discarded.
+     */
+    @Synchronized
+    fun filterEligible(files: Collection<File>): List<File> {
+        retryStates.keys.retainAll(files.toSet())
+        val now = clock()
+        val eligibleFiles = when {
+            isCircuitOpen(now) -> emptyList()
+            else -> files.filter { (retryStates[it]?.nextAttemptTime ?: 0L) <= now }
+        }
+        if (hasConnection && eligibleFiles.size < files.size) {
+            scheduleRetry(now)
+        }
+        return eligibleFiles
+    }
+
+    /**
+     * Returns false if the circuit breaker is open and no delivery should be attempted.
+     */
+    @Synchronized
+    fun canAttemptDelivery(): Boolean = !isCircuitOpen(clock())
+
+    /**
+     * Records a successful delivery, which closes the circuit breaker.
+     */
+    @Synchronized
+    fun onDelivered(file: File?) {
+        file?.let { retryStates.remove(it) }
+        consecutiveFailures = 0
+        circuitOpenUntil = 0L
+    }
+
+    /**
+     * Records that a request to [endpoint] containing [files] was not delivered, and that the
+     * files are being kept for a later retry, then schedules that retry.
+     */
+    @Synchronized
+    fun onUndelivered(files: Collection<File>, endpoint: String) {
+        if (!hasConnection || connectivity?.hasNetworkConnection() == false) {
+            // no request was made, so wait for the network to return rather than backing off
+            return
+        }
+
+        val now = clock()
+        val retryAfter = (delivery as? DefaultDelivery)?.takeRetryAfter(endpoint) ?: 0L
+        if (retryAfter > 0) {
+            retryAfterUntil = maxOf(retryAfterUntil, now + retryAfter)
+        }
+
+        files.forEach { file ->
+            val state = retryStates.getOrPut(file) { RetryState() }
+            state.attempts++
+            state.nextAttemptTime = now + maxOf(backoffDelay(state.attempts), retryAfter)
+        }
+
+        consecutiveFailures++
+        if (consecutiveFailures >= CIRCUIT_BREAKER_THRESHOLD) {
+            circuitOpenUntil = now + CIRCUIT_BREAKER_COOL_DOWN_MS
+        }
+        scheduleRetry(now)
+    }
+
+    /**
+     * Called when the network connectivity changes. Pending retries are cancelled while there is
+     * no connection. When it returns the circuit breaker is half-opened, so that the next
+     * delivery attempt acts as a probe, but a server-requested Retry-After is still respected.
+     */
+    @Synchronized
+    fun onConnectivityChanged(hasConnection: Boolean) {
+        this.hasConnection = hasConnection
+        if (hasConnection) {
+            circuitOpenUntil = 0L
+            scheduleRetry(clock())
+        } else {
+            cancelScheduledRetry()
+        }
+    }
+
+    private fun isCircuitOpen(now: Long) = now < circuitOpenUntil || now < retryAfterUntil
+
+    private fun backoffDelay(attempts: Int): Long {
+        val exponent = minOf(attempts - 1, MAX_BACKOFF_EXPONENT)
+        val ceiling = minOf(MAX_BACKOFF_MS, BASE_BACKOFF_MS shl exponent)
+
+        // "equal jitter" keeps a minimum delay while spreading out retries from many devices
+        val half = ceiling / 2
+        return half + random.nextInt(half.toInt() + 1)
+    }
+
+    private fun scheduleRetry(now: Long) {
+        val nextFileTime = retryStates.values.minOfOrNull { it.nextAttemptTime } ?: return
+        val retryTime = maxOf(nextFileTime, circuitOpenUntil, retryAfterUntil)
+        if (scheduledRetry != null && scheduledRetryTime <= retryTime) {
+            return // an earlier retry is already pending
+        }
+
+        cancelScheduledRetry()
+        try {
+            scheduledRetryTime = retryTime
+            scheduledRetry = bgTaskService.scheduleTask(
+                taskType,
+                TaskPriority.LOW,
+                maxOf(retryTime - now, 0L),
+                Runnable {
+                    synchronized(this) {
+                        scheduledRetry = null
+                        scheduledRetryTime = Long.MAX_VALUE
+                    }
+                    retry.run()
+                }
+            )
+        } catch (exc: RejectedExecutionException) {
+            scheduledRetryTime = Long.MAX_VALUE
+        }
+    }
+
+    private fun cancelScheduledRetry() {
+        scheduledRetry?.cancel(false)
+        scheduledRetry = null
+        scheduledRetryTime = Long.MAX_VALUE
+    }
+
+    internal companion object {
+        const val BASE_BACKOFF_MS = 10_000L
+        const val MAX_BACKOFF_MS = 15 * 60_000L
+        const val CIRCUIT_BREAKER_THRESHOLD = 5
+        const val CIRCUIT_BREAKER_COOL_DOWN_MS = 5 * 60_000L
+        private const val MAX_BACKOFF_EXPONENT = 16
+    }
+}
@@ -0,0 +1,184 @@
+package com.bugsnag.android
+
+import java.io.BufferedInputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+
+/**
+ * The header written at the start of a stored event file, which holds enough information about
+ * the event to make decisions about it without parsing its JSON.
+ */
+internal data class EventFileHeader(
+    val apiKey: String,
+    val timestamp: Long,
+    val errorTypes: Set<ErrorType>,
+    val severity: Severity?,
+    val unhandled: Boolean,
+    val isLaunchCrashReport: Boolean,
+    /**
+     * The length of the JSON which follows the header, or -1 if the file was not completely
+     * written
+     */
+    val payloadLength: Long
+)
+
+/**
+ * Reads and writes the container format for stored events. Each file is a fixed header
+ * followed by the event's JSON:
+ *
+ * ```
+ * magic          4 bytes   0xBE 'E' 'V' 'T'
+ * version        1 byte
+ * flags          1 byte    bit 0: unhandled, bit 1: launch crash
+ * payloadLength  4 bytes   length of the JSON, written once the JSON is complete
+ * timestamp      8 bytes
+ * severity       1 byte    Severity ordinal, or 0xFF if unknown
+ * errorTypes     2 bytes   bitset of ErrorType ordinals
+ * apiKey         2 byte length + modified UTF-8
+ * ```
+ *
+ * All values are big-endian. Files which do not start with the magic bytes are treated as
+ * plain JSON, which is how events were stored by earlier versions (and by the NDK).
+ *
+ * This is not backwards compatible: earlier versions read stored events as plain JSON, and so
+ * discard files written in this format as corrupt if the app is downgraded.
+ */
+internal object EventFileFormat {
+
+    private val MAGIC = byteArrayOf(
+        0xBE.toByte(),
+        'E'.code.toByte(),
+        'V'.code.toByte(),
+        'T'.code.toByte()
+    )
+    private const val VERSION = 1
+
+    private const val FLAG_UNHANDLED = 1
+    private const val FLAG_LAUNCH_CRASH = 2
+
+    private const val PAYLOAD_LENGTH_OFFSET = 6L
+    private const val NO_SEVERITY = 0xFF
+
+    /**
+     * The largest header we expect to read, used to rewind the stream of a plain JSON file
+     */
+    private const val MAX_HEADER_SIZE = 512
+
+    fun writeHeader(out: OutputStream, header: EventFileHeader): Int {
+        val data = DataOutputStream(out)
+        data.write(MAGIC)
+        data.writeByte(VERSION)
+
+        var flags = 0
+        if (header.unhandled) flags = flags or FLAG_UNHANDLED
+        if (header.isLaunchCrashReport) flags = flags or FLAG_LAUNCH_CRASH
+        data.writeByte(flags)
+
+        data.writeInt(-1) // filled in by completePayload
+        data.writeLong(header.timestamp)
+        data.writeByte(header.severity?.ordinal ?: NO_SEVERITY)
+        data.writeShort(header.errorTypes.fold(0) { bits, type -> bits or (1 shl type.ordinal) })
+        data.writeUTF(header.apiKey)
+        data.flush()
+        return data.size()
+    }
+
+    /**
+     * Records the length of the JSON which follows a header of [headerSize] bytes, once it has
+     * been written to [out]. Until this is called the file is treated as incomplete.
+     */
+    fun completePayload(out: FileOutputStream, headerSize: Int) {
+        val channel = out.channel
+        val payloadLength = channel.position() - headerSize
+        channel.write(ByteBuffer.allocate(4).putInt(0, payloadLength.toInt()), PAYLOAD_LENGTH_OFFSET)
+    }
+
+    /**
+     * Reads the header of [file], returning null if it is a plain JSON file or cannot be read.
+     */
+    fun readHeader(file: File): EventFileHeader? {
+        return try {
+            DataInputStream(BufferedInputStream(FileInputStream(file), MAX_HEADER_SIZE)).use {
+                readHeader(it)
+            }
+        } catch (exc: IOException) {
+            null
+        }
+    }
+
+    /**
+     * Opens [file] for reading, skipping any header so that the stream only contains the
+     * event's JSON.
+     */
+    @Throws(IOException::class)
+    fun openPayload(file: File): InputStream {
+        val input = BufferedInputStream(FileInputStream(file))
+        try {
+            input.mark(MAX_HEADER_SIZE)
+            val header = try {
+                readHeader(DataInputStream(input))
+            } catch (exc: EOFException) {
+                null
+            }
+
+            if (header == null) {
+                input.reset()
+            } else if (header.payloadLength < 0) {
+                throw IOException("Incomplete event file: $file")
+            }
+            return input
+        } catch (exc: IOException) {
+            input.close()
+            throw exc
+        }
+    }
+
+    /**
+     * Returns the position in [file] where the event's JSON starts, which is after the
+     * header if there is one.
+     */
+    @Throws(IOException::class)
+    fun payloadOffset(file: File): Long {
+        val header = readHeader(file) ?: return 0L
+        if (header.payloadLength < 0) {
+            throw IOException("Incomplete event file: $file")
+        }
+        // the payload is always the last thing in the file
+        return file.length() - header.payloadLength
+    }
+
+    private fun readHeader(input: DataInputStream): EventFileHeader? {
+        val magic = ByteArray(MAGIC.size)
+        input.readFully(magic)
+        if (!magic.contentEquals(MAGIC) || input.readUnsignedByte() != VERSION) {
+            return null
+        }
+
+        val flags = input.readUnsignedByte()
+        val payloadLength = input.readInt().toLong()
+        val timestamp = input.readLong()
+        val severity = Severity.values().getOrNull(input.readUnsignedByte())
+        val errorTypeBits = input.readUnsignedShort()
+        val apiKey = input.readUTF()
+
+        return EventFileHeader(
+            apiKey,
+            timestamp,
+            ErrorType.values().filterTo(LinkedHashSet()) {
+                (errorTypeBits and (1 shl it.ordinal)) != 0
+            },
+            severity,
+            (flags and FLAG_UNHANDLED) != 0,
+            (flags and FLAG_LAUNCH_CRASH) != 0,
+            payloadLength
+        )
+    }
+}
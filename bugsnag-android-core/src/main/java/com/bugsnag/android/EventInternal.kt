@@ -203,7 +203,13 @@ internal class EventInternal : FeatureFlagAware, JsonStream.Streamable, Metadata
         // Write diagnostics
         childWriter.name("app").value(app)
         childWriter.name("device").value(device)
-        childWriter.name("breadcrumbs").value(breadcrumbs)
+        childWriter.name("breadcrumbs")
+        val undecodedBreadcrumbs = (breadcrumbs as? DecodeOnAccessList<*>)?.undecodedItems
+        if (undecodedBreadcrumbs != null) {
+            writeUndecodedBreadcrumbs(childWriter, undecodedBreadcrumbs)
+        } else {
+            childWriter.value(breadcrumbs)
+        }
         childWriter.name("groupingHash").value(groupingHash)
         val usage = internalMetrics.toJsonableMap()
         if (usage.isNotEmpty()) {
@@ -216,9 +222,14 @@ internal class EventInternal : FeatureFlagAware, JsonStream.Streamable, Metadata
         }
 
         childWriter.name("threads")
-        childWriter.beginArray()
-        threads.forEach { childWriter.value(it) }
-        childWriter.endArray()
+        val undecodedThreads = (threads as? DecodeOnAccessList<*>)?.undecodedItems
+        if (undecodedThreads != null) {
+            childWriter.value(undecodedThreads)
+        } else {
+            childWriter.beginArray()
+            threads.forEach { childWriter.value(it) }
+            childWriter.endArray()
+        }
 
         childWriter.name("featureFlags").value(featureFlags)
 
@@ -241,6 +252,22 @@ internal class EventInternal : FeatureFlagAware, JsonStream.Streamable, Metadata
         childWriter.endObject()
     }
 
+    /**
+     * Writes breadcrumbs which were never decoded, redacting their metadata in the same way as
+     * [BreadcrumbInternal.toStream].
+     */
+    private fun writeUndecodedBreadcrumbs(writer: JsonStream, crumbs: List<Map<String, Any?>>) {
+        writer.beginArray()
+        crumbs.forEach { crumb ->
+            writer.beginObject()
+            crumb.forEach { (key, value) ->
+                writer.name(key).value(value, key == "metaData")
+            }
+            writer.endObject()
+        }
+        writer.endArray()
+    }
+
     internal fun getErrorTypesFromStackframes(): Set<ErrorType> {
         val errorTypes = errors.mapNotNull(Error::getType).toSet()
         val frameOverrideTypes = errors
@@ -300,12 +327,17 @@ internal class EventInternal : FeatureFlagAware, JsonStream.Streamable, Metadata
         return TrimMetrics(stringCount, charCount)
     }
 
-    fun trimBreadcrumbsBy(byteCount: Int): TrimMetrics {
+    /**
+     * Remove the oldest breadcrumbs until at least [byteCount] bytes have been removed, using
+     * [breadcrumbSizes] (the encoded size of each breadcrumb) if they have already been measured.
+     */
+    fun trimBreadcrumbsBy(byteCount: Int, breadcrumbSizes: IntArray? = null): TrimMetrics {
         var removedBreadcrumbCount = 0
         var removedByteCount = 0
         while (removedByteCount < byteCount && breadcrumbs.isNotEmpty()) {
             val breadcrumb = breadcrumbs.removeAt(0)
-            removedByteCount += JsonHelper.serialize(breadcrumb).size
+            removedByteCount += breadcrumbSizes?.getOrNull(removedBreadcrumbCount)
+                ?: JsonHelper.serialize(breadcrumb).size
             removedBreadcrumbCount++
         }
         when (removedBreadcrumbCount) {
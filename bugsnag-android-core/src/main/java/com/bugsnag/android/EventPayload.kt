@@ -3,8 +3,14 @@ package com.bugsnag.android
 import androidx.annotation.VisibleForTesting
 import com.bugsnag.android.internal.ImmutableConfig
 import com.bugsnag.android.internal.JsonHelper
+import com.bugsnag.android.internal.StringUtils
+import java.io.BufferedWriter
 import java.io.File
 import java.io.IOException
+import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.security.DigestOutputStream
+import java.security.MessageDigest
 
 /**
  * An error report payload.
@@ -26,20 +32,48 @@ class EventPayload @JvmOverloads internal constructor(
     internal var eventFile: File? = eventFile
         private set
 
+    /**
+     * The stored events which are delivered together in this payload, when several stored
+     * events are batched into a single request. Each batched payload contributes either its
+     * [event] or [eventFile] to the `events` array.
+     */
+    internal var batchedPayloads: List<EventPayload> = emptyList()
+        private set
+
     private var cachedBytes: ByteArray? = null
 
+    private var cachedMeasurement: Measurement? = null
+
     private val logger: Logger get() = config.logger
 
     internal val notifier = Notifier(notifier.name, notifier.version, notifier.url).apply {
         dependencies = notifier.dependencies.toMutableList()
     }
 
+    /**
+     * Creates a payload which delivers each of [payloads] in a single request
+     */
+    internal constructor(
+        apiKey: String?,
+        payloads: List<EventPayload>,
+        notifier: Notifier,
+        config: ImmutableConfig
+    ) : this(apiKey, null, null, notifier, config) {
+        batchedPayloads = payloads
+    }
+
     internal fun getErrorTypes(): Set<ErrorType> {
+        if (batchedPayloads.isNotEmpty()) {
+            return batchedPayloads.flatMapTo(LinkedHashSet()) { it.getErrorTypes() }
+        }
+
         val event = this.event
 
         return event?.impl?.getErrorTypesFromStackframes() ?: (
-            eventFile?.let { EventFilenameInfo.fromFile(it, config).errorTypes }
-                ?: emptySet()
+            eventFile?.let {
+                EventFileFormat.readHeader(it)?.errorTypes
+                    ?: EventFilenameInfo.fromFile(it, config).errorTypes
+            } ?: emptySet()
             )
     }
 
@@ -68,22 +102,57 @@ class EventPayload @JvmOverloads internal constructor(
      */
     @JvmOverloads
     fun trimToSize(maxSizeBytes: Int = DEFAULT_MAX_PAYLOAD_SIZE): EventPayload {
-        var json = toByteArray()
-        if (json.size <= maxSizeBytes) {
-            return this
+        // batches are sized when they are built, and are never trimmed, so are not measured
+        if (batchedPayloads.isEmpty()) {
+            // the encoded payload is kept, so a caller that goes on to call toByteArray() only
+            // encodes the payload once when nothing needs to be trimmed
+            trimEvent(maxSizeBytes, toByteArray().size.toLong())
+        }
+        return this
+    }
+
+    /**
+     * Trim this payload in the same way as [trimToSize], but without holding the encoded payload
+     * in memory. The payload is measured by encoding it into a counting sink, and when
+     * [withIntegrity] is set the [measurement](measure) is kept for delivery if nothing needs
+     * to be trimmed.
+     */
+    internal fun trimToSizeStreaming(
+        withIntegrity: Boolean,
+        maxSizeBytes: Int = DEFAULT_MAX_PAYLOAD_SIZE
+    ): EventPayload {
+        if (batchedPayloads.isEmpty()) {
+            val payloadSize = if (withIntegrity) measure().size else measureSize()
+            trimEvent(maxSizeBytes, payloadSize)
+        }
+        return this
+    }
+
+    /**
+     * Trim the event in this payload, which encodes to [payloadSize] bytes. Metadata strings and
+     * threads are trimmed without needing to be measured, the size of the threads dropped and
+     * each of the breadcrumbs are then measured in a single counting pass, and the breadcrumbs
+     * to drop are chosen from those sizes, rather than re-encoding the whole payload.
+     */
+    private fun trimEvent(maxSizeBytes: Int, payloadSize: Long) {
+        if (payloadSize <= maxSizeBytes) {
+            return
         }
 
         val event = decodedEvent()
-        val (itemsTrimmed, dataTrimmed) = event.impl.trimMetadataStringsTo(config.maxStringValueLength)
+        val metadataTrimMetrics = event.impl.trimMetadataStringsTo(config.maxStringValueLength)
         event.impl.internalMetrics.setMetadataTrimMetrics(
-            itemsTrimmed,
-            dataTrimmed
+            metadataTrimMetrics.itemsTrimmed,
+            metadataTrimMetrics.dataTrimmed
         )
 
         val threadCount = event.threads.size
         val maxReportedThreads = config.maxReportedThreads
+        val omittedThreads = ArrayList<Thread>()
         if (threadCount > maxReportedThreads) {
-            event.threads.subList(maxReportedThreads, threadCount).clear()
+            val removed = event.threads.subList(maxReportedThreads, threadCount)
+            omittedThreads.addAll(removed)
+            removed.clear()
 
             event.threads.add(
                 Thread(
@@ -101,22 +170,40 @@ class EventPayload @JvmOverloads internal constructor(
                     logger
                 )
             )
+            event.impl.internalMetrics.setThreadTrimMetrics(threadCount - maxReportedThreads)
+        }
+        invalidatePayloadCache()
+
+        // a single counting pass over the sections which change size: the dropped threads, the
+        // thread that replaces them, and each of the (already trimmed) breadcrumbs
+        val breadcrumbs = event.breadcrumbs
+        val placeholderThreads = if (omittedThreads.isEmpty()) 0 else 1
+        val sections = ArrayList<JsonStream.Streamable>().apply {
+            addAll(omittedThreads)
+            addAll(event.threads.takeLast(placeholderThreads))
+            addAll(breadcrumbs)
         }
+        val sizes = measureEncodedSizes(sections)
+        val omittedThreadBytes = sizes.take(omittedThreads.size).sum()
+        val placeholderBytes = sizes.drop(omittedThreads.size).take(placeholderThreads).sum()
+        val breadcrumbSizes = sizes.copyOfRange(sizes.size - breadcrumbs.size, sizes.size)
 
-        json = rebuildPayloadCache()
-        if (json.size <= maxSizeBytes) {
-            return this
+        val trimmedSize = payloadSize -
+            StringUtils.minBytesTrimmed(metadataTrimMetrics) -
+            omittedThreadBytes +
+            placeholderBytes
+        if (trimmedSize <= maxSizeBytes) {
+            return
         }
 
-        val breadcrumbAndBytesRemovedCounts =
-            event.impl.trimBreadcrumbsBy(json.size - maxSizeBytes)
+        val breadcrumbAndBytesRemovedCounts = event.impl.trimBreadcrumbsBy(
+            (trimmedSize - maxSizeBytes).toInt(),
+            breadcrumbSizes
+        )
         event.impl.internalMetrics.setBreadcrumbTrimMetrics(
             breadcrumbAndBytesRemovedCounts.itemsTrimmed,
             breadcrumbAndBytesRemovedCounts.dataTrimmed
         )
-
-        rebuildPayloadCache()
-        return this
     }
 
     @Throws(IOException::class)
@@ -129,14 +216,27 @@ class EventPayload @JvmOverloads internal constructor(
 
         when {
             event != null -> writer.value(event)
-            eventFile != null -> writer.value(eventFile)
-            else -> Unit
+            eventFile != null -> writeEventFile(writer, eventFile!!)
+            else -> batchedPayloads.forEach { payload ->
+                val batchedEvent = payload.event
+                val batchedFile = payload.eventFile
+                when {
+                    batchedEvent != null -> writer.value(batchedEvent)
+                    batchedFile != null -> writeEventFile(writer, batchedFile)
+                }
+            }
         }
 
         writer.endArray()
         writer.endObject()
     }
 
+    private fun writeEventFile(writer: JsonStream, file: File) {
+        if (file.length() > 0) {
+            writer.value(file, EventFileFormat.payloadOffset(file))
+        }
+    }
+
     /**
      * Transform this `EventPayload` to a byte array suitable for delivery to a BugSnag event
      * endpoint (typically configured using [EndpointConfiguration.notify]).
@@ -153,10 +253,91 @@ class EventPayload @JvmOverloads internal constructor(
 
     @VisibleForTesting
     internal fun rebuildPayloadCache(): ByteArray {
-        cachedBytes = null
+        invalidatePayloadCache()
         return toByteArray()
     }
 
+    private fun invalidatePayloadCache() {
+        cachedBytes = null
+        cachedMeasurement = null
+    }
+
+    /**
+     * Returns the encoded size of each of the [items], measured in a single counting pass.
+     */
+    private fun measureEncodedSizes(items: List<JsonStream.Streamable>): IntArray {
+        val counter = CountingOutputStream(NullOutputStream())
+        val writer = OutputStreamWriter(counter, Charsets.UTF_8)
+        // lenient so that each item can be written as a separate top-level value
+        val stream = JsonStream(writer).apply { isLenient = true }
+        return IntArray(items.size) { index ->
+            val start = counter.count
+            stream.value(items[index])
+            stream.flush()
+            (counter.count - start).toInt()
+        }
+    }
+
+    /**
+     * Calculate the encoded size of this payload by encoding it into a counting sink, without
+     * calculating its integrity token.
+     */
+    @Throws(IOException::class)
+    private fun measureSize(): Long {
+        cachedBytes?.let { return it.size.toLong() }
+        cachedMeasurement?.let { return it.size }
+
+        val counter = CountingOutputStream(NullOutputStream())
+        writeTo(counter)
+        return counter.count
+    }
+
+    /**
+     * Calculate the encoded size and integrity token of this payload without holding the
+     * encoded payload in memory. The payload is encoded into a counting & digesting sink, so
+     * memory use is bounded by the size of the encoding buffers rather than the payload.
+     */
+    @Throws(IOException::class)
+    internal fun measure(): Measurement {
+        cachedMeasurement?.let { return it }
+
+        val bytes = cachedBytes
+        val measurement = if (bytes != null) {
+            Measurement(bytes.size.toLong(), integrityToken)
+        } else {
+            val shaDigest = MessageDigest.getInstance("SHA-1")
+            val counter = CountingOutputStream(DigestOutputStream(NullOutputStream(), shaDigest))
+            writeTo(counter)
+            Measurement(counter.count, formatIntegrityHeader(shaDigest.digest()))
+        }
+
+        cachedMeasurement = measurement
+        return measurement
+    }
+
+    /**
+     * Write the encoded payload directly to [out], streaming the JSON rather than building a
+     * [ByteArray] first. The stream is flushed but not closed.
+     */
+    @Throws(IOException::class)
+    internal fun writeTo(out: OutputStream) {
+        val bytes = cachedBytes
+        if (bytes != null) {
+            out.write(bytes)
+        } else {
+            val writer = BufferedWriter(OutputStreamWriter(out, Charsets.UTF_8), STREAM_BUFFER_SIZE)
+            val stream = JsonStream(writer, out)
+            toStream(stream)
+            stream.flush()
+        }
+        out.flush()
+    }
+
+    /**
+     * The encoded size of a payload in bytes, and the value of its "Bugsnag-Integrity" header.
+     */
+    internal data class Measurement(val size: Long, val integrityToken: String?)
+
     companion object {
         /**
          * The default maximum payload size for [trimToSize], payloads larger than this will
@@ -164,5 +345,7 @@ class EventPayload @JvmOverloads internal constructor(
          */
         // 1MB with some fiddle room in case of encoding overhead
         const val DEFAULT_MAX_PAYLOAD_SIZE = 999700
+
+        private const val STREAM_BUFFER_SIZE = 8192
     }
 }
@@ -8,13 +8,16 @@ import com.bugsnag.android.JsonStream.Streamable
 import com.bugsnag.android.internal.BackgroundTaskService
 import com.bugsnag.android.internal.ForegroundDetector
 import com.bugsnag.android.internal.ImmutableConfig
+import com.bugsnag.android.internal.TaskPriority
 import com.bugsnag.android.internal.TaskType
 import com.bugsnag.android.internal.dag.Provider
 import java.io.File
+import java.io.FileOutputStream
 import java.util.Calendar
 import java.util.Date
 import java.util.concurrent.Callable
 import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
 import java.util.concurrent.Future
 import java.util.concurrent.RejectedExecutionException
 import java.util.concurrent.TimeUnit
@@ -44,6 +47,14 @@ internal class EventStore(
     var onEventStoreEmptyCallback: () -> Unit = {}
     var onDiscardEventCallback: (EventPayload) -> Unit = {}
     private var isEmptyEventCallbackCalled: Boolean = false
+    private val retryScheduler: DeliveryRetryScheduler
+    private val flushCoalescer: FlushCoalescer
+
+    /**
+     * The number of calls to [flushAsync] which were satisfied by a flush that was already queued
+     */
+    val coalescedFlushCount: Long
+        get() = flushCoalescer.coalescedCount
 
     /**
      * Flush startup crashes synchronously on the main thread. Startup crashes block the main thread
@@ -56,6 +67,7 @@ internal class EventStore(
         val future = try {
             bgTaskService.submitTask(
                 TaskType.ERROR_REQUEST,
+                TaskPriority.HIGH,
                 Runnable {
                     flushLaunchCrashReport()
                     notifyEventQueueEmpty()
@@ -113,7 +125,10 @@ internal class EventStore(
     fun findLaunchCrashReport(storedFiles: Collection<File>): File? {
         return storedFiles
             .asSequence()
-            .filter { fromFile(it, config).isLaunchCrashReport() }
+            .filter {
+                getStoredFileInfo(it)?.isLaunchCrashReport
+                    ?: fromFile(it, config).isLaunchCrashReport()
+            }
             .maxWithOrNull(EVENT_COMPARATOR)
     }
 
@@ -122,6 +137,7 @@ internal class EventStore(
         try {
             return bgTaskService.submitTask(
                 TaskType.ERROR_REQUEST,
+                TaskPriority.HIGH,
                 Callable {
                     flushEventFile(File(filename))
                     filename
@@ -134,32 +150,168 @@ internal class EventStore(
     }
 
     /**
-     * Flush any on-disk errors to Bugsnag
+     * Flush any on-disk errors to Bugsnag. Calls made while a flush is already waiting to run
+     * are coalesced into that flush.
      */
     fun flushAsync() {
         try {
-            bgTaskService.submitTask(
-                TaskType.ERROR_REQUEST,
-                Runnable {
-                    val storedFiles = findStoredFiles()
-                    if (storedFiles.isEmpty()) {
-                        logger.d("No regular events to flush to Bugsnag.")
-                    }
-                    flushReports(storedFiles)
-                    notifyEventQueueEmpty()
-                }
-            )
+            flushCoalescer.requestFlush()
         } catch (exception: RejectedExecutionException) {
             logger.w("Failed to flush all on-disk errors, retaining unsent errors for later.")
         }
     }
 
+    /**
+     * Pauses or resumes scheduled retries of undelivered events when connectivity changes.
+     */
+    fun onConnectivityChanged(hasConnection: Boolean) {
+        retryScheduler.onConnectivityChanged(hasConnection)
+    }
+
+    private fun flushStoredReports() {
+        val storedFiles = findStoredFiles()
+        if (storedFiles.isEmpty()) {
+            logger.d("No regular events to flush to Bugsnag.")
+        }
+
+        // events which recently failed to deliver are left until their retry is due
+        val eligibleFiles = retryScheduler.filterEligible(storedFiles)
+        val deferredCount = storedFiles.size - eligibleFiles.size
+        if (deferredCount > 0) {
+            logger.d("Deferring delivery of $deferredCount error(s) until their retry is due")
+        }
+        flushReports(eligibleFiles)
+
+        // release any events which were deferred, so that they are found by the next flush
+        cancelQueuedFiles(storedFiles)
+        notifyEventQueueEmpty()
+    }
+
     private fun flushReports(storedReports: Collection<File>) {
         if (!storedReports.isEmpty()) {
             val size = storedReports.size
             logger.i("Sending $size saved error(s) to Bugsnag")
-            for (eventFile in storedReports) {
-                flushEventFile(eventFile)
+            if (config.maxEventsPerRequest > 1 && size > 1) {
+                flushBatchedReports(storedReports)
+            } else {
+                for (eventFile in storedReports) {
+                    if (!retryScheduler.canAttemptDelivery()) {
+                        break
+                    }
+                    flushEventFile(eventFile)
+                }
+            }
+        }
+    }
+
+    /**
+     * Deliver the stored reports in batches of up to [ImmutableConfig.maxEventsPerRequest]
+     * events per request. Only events with the same API key are batched together, and each batch
+     * is limited to [EventPayload.DEFAULT_MAX_PAYLOAD_SIZE] based on the size of the stored files.
+     */
+    private fun flushBatchedReports(storedReports: Collection<File>) {
+        val maxBatchSize = config.maxEventsPerRequest
+        storedReports
+            .groupBy { fromFile(it, config).apiKey }
+            .forEach { (_, eventFiles) ->
+                var batch = ArrayList<File>(maxBatchSize)
+                var batchBytes = 0L
+
+                for (eventFile in eventFiles) {
+                    val fileSize = getStoredFileInfo(eventFile)?.size ?: eventFile.length()
+                    if (batch.isNotEmpty() &&
+                        (batch.size >= maxBatchSize || batchBytes + fileSize > MAX_BATCH_BYTES)
+                    ) {
+                        if (!retryScheduler.canAttemptDelivery()) {
+                            return
+                        }
+                        flushEventBatch(batch)
+                        batch = ArrayList(maxBatchSize)
+                        batchBytes = 0L
+                    }
+                    batch.add(eventFile)
+                    batchBytes += fileSize
+                }
+
+                if (batch.isNotEmpty()) {
+                    if (!retryScheduler.canAttemptDelivery()) {
+                        return
+                    }
+                    flushEventBatch(batch)
+                }
+            }
+    }
+
+    private fun flushEventBatch(eventFiles: List<File>) {
+        if (eventFiles.size == 1) {
+            flushEventFile(eventFiles.first())
+            return
+        }
+
+        val payloads = LinkedHashMap<File, EventPayload>()
+        for (eventFile in eventFiles) {
+            try {
+                val (apiKey) = fromFile(eventFile, config)
+                val payload = createEventPayload(eventFile, apiKey)
+                if (payload == null) {
+                    deleteStoredFiles(setOf(eventFile))
+                } else {
+                    payloads[eventFile] = payload
+                }
+            } catch (exception: Exception) {
+                handleEventFlushFailure(exception, eventFile)
+            }
+        }
+
+        // OnSendCallbacks may have changed the apiKey of an event, so we regroup before delivery
+        payloads.entries
+            .groupBy { it.value.apiKey }
+            .forEach { (apiKey, entries) ->
+                if (entries.size == 1) {
+                    val (eventFile, payload) = entries.first()
+                    deliverEventPayload(eventFile, payload)
+                } else {
+                    deliverEventBatch(apiKey, entries.associate { it.key to it.value })
+                }
+            }
+    }
+
+    private fun deliverEventBatch(apiKey: String?, payloads: Map<File, EventPayload>) {
+        val eventFiles = payloads.keys
+        val status = try {
+            val batchPayload = EventPayload(apiKey, payloads.values.toList(), notifier, config)
+            val deliveryParams = config.getErrorApiDeliveryParams(batchPayload)
+            config.delivery.deliver(batchPayload, deliveryParams)
+        } catch (exception: Exception) {
+            // the exception may have been caused by any one of the events, so it is handled
+            // in the same way as a failed delivery rather than discarding the whole batch
+            logger.w("Failed to send event batch", exception)
+            DeliveryStatus.FAILURE
+        }
+
+        when (status) {
+            DeliveryStatus.DELIVERED -> {
+                deleteStoredFiles(eventFiles)
+                eventFiles.forEach { retryScheduler.onDelivered(it) }
+                logger.i("Deleting ${eventFiles.size} sent error files")
+            }
+
+            DeliveryStatus.UNDELIVERED -> {
+                val retainedFiles = eventFiles.filter { undeliveredEventPayload(it) }
+                retryScheduler.onUndelivered(retainedFiles, config.endpoints.notify)
+            }
+
+            // a single bad event can cause the whole batch to be rejected, so we fall back
+            // to delivering each of the events in their own request
+            DeliveryStatus.FAILURE -> {
+                logger.w("Batched delivery failed, retrying errors individually")
+                payloads.forEach { (eventFile, payload) ->
+                    try {
+                        deliverEventPayload(eventFile, payload)
+                    } catch (exception: Exception) {
+                        handleEventFlushFailure(exception, eventFile)
+                    }
+                }
             }
         }
     }
@@ -184,10 +336,15 @@ internal class EventStore(
         when (delivery.deliver(payload, deliveryParams)) {
             DeliveryStatus.DELIVERED -> {
                 deleteStoredFiles(setOf(eventFile))
+                retryScheduler.onDelivered(eventFile)
                 logger.i("Deleting sent error file $eventFile.name")
             }
 
-            DeliveryStatus.UNDELIVERED -> undeliveredEventPayload(eventFile)
+            DeliveryStatus.UNDELIVERED -> {
+                if (undeliveredEventPayload(eventFile)) {
+                    retryScheduler.onUndelivered(setOf(eventFile), deliveryParams.endpoint)
+                }
+            }
             DeliveryStatus.FAILURE -> {
                 val exc: Exception = RuntimeException("Failed to deliver event payload")
                 handleEventFlushFailure(exc, eventFile)
@@ -195,28 +352,39 @@ internal class EventStore(
         }
     }
 
-    private fun undeliveredEventPayload(eventFile: File) {
+    /**
+     * Discards an undelivered event if it is too big or too old to retry, returning true if it
+     * has been kept for a later delivery attempt.
+     */
+    private fun undeliveredEventPayload(eventFile: File): Boolean {
         if (isTooBig(eventFile)) {
-            logger.w(
-                "Discarding over-sized event (${eventFile.length()}) after failed delivery"
-            )
+            val size = getStoredFileInfo(eventFile)?.size ?: eventFile.length()
+            logger.w("Discarding over-sized event ($size) after failed delivery")
             discardEvents(eventFile)
             deleteStoredFiles(setOf(eventFile))
+            return false
         } else if (isTooOld(eventFile)) {
             logger.w(
                 "Discarding historical event (from ${getCreationDate(eventFile)}) after failed delivery"
             )
             discardEvents(eventFile)
             deleteStoredFiles(setOf(eventFile))
+            return false
         } else {
             cancelQueuedFiles(setOf(eventFile))
             logger.w(
                 "Could not send previously saved error(s) to Bugsnag, will try again later"
             )
+            return true
         }
     }
 
     private fun createEventPayload(eventFile: File, apiKey: String): EventPayload? {
+        if (EventFileFormat.readHeader(eventFile)?.payloadLength == -1L) {
+            logger.w("Discarding incomplete event file: ${eventFile.name}")
+            return null
+        }
+
         @Suppress("NAME_SHADOWING")
         var apiKey: String? = apiKey
         val eventSource = MarshalledEventSource(eventFile, apiKey!!, logger)
@@ -243,6 +411,50 @@ internal class EventStore(
         deleteStoredFiles(setOf(eventFile))
     }
 
+    override fun createFileInfo(file: File): StoredFileInfo {
+        val header = EventFileFormat.readHeader(file)
+        if (header != null) {
+            return StoredFileInfo(
+                file,
+                header.timestamp,
+                header.payloadLength.takeIf { it >= 0 } ?: file.length(),
+                header.errorTypes,
+                header.isLaunchCrashReport
+            )
+        }
+
+        val filenameInfo = fromFile(file, config)
+        val timestamp = filenameInfo.timestamp.takeIf { it >= 0 } ?: file.lastModified()
+        return StoredFileInfo(
+            file,
+            timestamp,
+            file.length(),
+            filenameInfo.errorTypes,
+            filenameInfo.isLaunchCrashReport()
+        )
+    }
+
+    override fun writeHeader(streamable: Streamable, filename: String, out: FileOutputStream): Int {
+        val event = streamable as? Event ?: return 0
+        val filenameInfo = fromFile(File(filename), config)
+        return EventFileFormat.writeHeader(
+            out,
+            EventFileHeader(
+                filenameInfo.apiKey,
+                filenameInfo.timestamp,
+                filenameInfo.errorTypes,
+                event.severity,
+                event.isUnhandled,
+                filenameInfo.isLaunchCrashReport(),
+                -1
+            )
+        )
+    }
+
+    override fun completeHeader(out: FileOutputStream, headerSize: Int) {
+        EventFileFormat.completePayload(out, headerSize)
+    }
+
     override fun getFilename(obj: Any?): String {
         return obj?.let { fromEvent(obj = it, apiKey = null, config = config) }?.encode() ?: ""
     }
@@ -256,10 +468,23 @@ internal class EventStore(
         this.notifier = notifier
         this.bgTaskService = bgTaskService
         this.callbackState = callbackState
+        this.retryScheduler = DeliveryRetryScheduler(
+            bgTaskService,
+            TaskType.ERROR_REQUEST,
+            config.delivery,
+            Runnable { flushStoredReports() }
+        )
+        this.flushCoalescer = FlushCoalescer(
+            Executor { task ->
+                bgTaskService.submitTask(TaskType.ERROR_REQUEST, TaskPriority.LOW, task)
+            },
+            Runnable { flushStoredReports() }
+        )
     }
 
     private fun isTooBig(file: File): Boolean {
-        return file.length() > oneMegabyte
+        val size = getStoredFileInfo(file)?.size ?: file.length()
+        return size > oneMegabyte
     }
 
     private fun isTooOld(file: File): Boolean {
@@ -303,5 +528,8 @@ internal class EventStore(
             }
         }
         private const val oneMegabyte = 1024L * 1024L
+
+        // leave room for the payload wrapper (apiKey, notifier) around the batched events
+        private const val MAX_BATCH_BYTES = EventPayload.DEFAULT_MAX_PAYLOAD_SIZE - 4096L
     }
 }
@@ -32,6 +32,13 @@ internal abstract class FileStore(
     private val lock: Lock = ReentrantLock()
     private val queuedFiles: MutableCollection<File> = ConcurrentSkipListSet()
 
+    /**
+     * In-memory index of the files held in [storageDir], built once on first use and then
+     * kept up to date as files are written & deleted. This avoids listing and stat'ing the
+     * storage directory every time a payload is persisted. Guarded by [lock].
+     */
+    private var index: MutableMap<File, StoredFileInfo>? = null
+
     /**
      * Checks whether the storage directory is a writable directory. If it is not,
      * this method will attempt to create the directory.
@@ -51,7 +58,88 @@ internal abstract class FileStore(
     /**
      * Test whether this `FileStore` is definitely empty
      */
-    fun isEmpty(): Boolean = queuedFiles.isEmpty() && storageDir.list().isNullOrEmpty()
+    fun isEmpty(): Boolean {
+        lock.lock()
+        return try {
+            queuedFiles.isEmpty() && storedFileIndex().isEmpty()
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Returns the index of stored files, building it from the contents of [storageDir] if this
+     * is the first time it has been accessed. Must be called while holding [lock].
+     */
+    private fun storedFileIndex(): MutableMap<File, StoredFileInfo> {
+        index?.let { return it }
+
+        val newIndex = HashMap<File, StoredFileInfo>()
+        if (isStorageDirValid(storageDir)) {
+            storageDir.listFiles()?.forEach { file ->
+                // delete any tombstoned/empty files, as they contain no useful info
+                if (file.length() == 0L) {
+                    if (!file.delete()) {
+                        file.deleteOnExit()
+                    }
+                } else if (file.isFile) {
+                    newIndex[file] = createFileInfo(file)
+                }
+            }
+        }
+        index = newIndex
+        return newIndex
+    }
+
+    /**
+     * Adds a newly written file to the index of stored files
+     */
+    private fun addToIndex(file: File) {
+        lock.lock()
+        try {
+            storedFileIndex()[file] = createFileInfo(file)
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Writes any header which precedes the JSON of [streamable] in the file named [filename],
+     * returning the size of the header in bytes.
+     */
+    protected open fun writeHeader(
+        streamable: Streamable,
+        filename: String,
+        out: FileOutputStream
+    ): Int = 0
+
+    /**
+     * Called once the JSON following a header of [headerSize] bytes has been written to [out],
+     * before the file is closed.
+     */
+    protected open fun completeHeader(out: FileOutputStream, headerSize: Int) = Unit
+
+    /**
+     * Creates the [StoredFileInfo] which is held in the in-memory index for the given file.
+     * This is called once per file, either when the index is first built or when the file
+     * is written.
+     */
+    protected open fun createFileInfo(file: File): StoredFileInfo {
+        return StoredFileInfo(file, file.lastModified(), file.length())
+    }
+
+    /**
+     * Returns the indexed information about a stored file, or null if the file is not known
+     * to this store.
+     */
+    fun getStoredFileInfo(file: File): StoredFileInfo? {
+        lock.lock()
+        return try {
+            storedFileIndex()[file]
+        } finally {
+            lock.unlock()
+        }
+    }
 
     fun enqueueContentForDelivery(content: String?, filename: String) {
         if (!isStorageDirValid(storageDir)) {
@@ -61,10 +149,12 @@ internal abstract class FileStore(
         lock.lock()
         var out: Writer? = null
         val filePath = File(storageDir, filename).absolutePath
+        var written = false
         try {
             val fos = FileOutputStream(filePath)
             out = BufferedWriter(OutputStreamWriter(fos, "UTF-8"))
             out.write(content)
+            written = true
         } catch (exc: Exception) {
             val eventFile = File(filePath)
             delegate?.getOrNull()?.onErrorIOFailure(exc, eventFile, "NDK Crash report copy")
@@ -75,6 +165,62 @@ internal abstract class FileStore(
             } catch (exception: Exception) {
                 logger.w("Failed to close unsent payload writer: $filename", exception)
             }
+            if (written) {
+                addToIndex(File(filePath))
+            }
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Writes [content] to [filename] for delivery, streaming it straight to the file.
+     */
+    fun enqueueContentForDelivery(content: Streamable, filename: String) {
+        if (!isStorageDirValid(storageDir)) {
+            return
+        }
+        discardOldestFileIfNeeded()
+        lock.lock()
+        var stream: JsonStream? = null
+        val filePath = File(storageDir, filename).absolutePath
+        var written = false
+        try {
+            val fos = FileOutputStream(filePath)
+            stream = JsonStream(BufferedWriter(OutputStreamWriter(fos, "UTF-8")))
+            stream.value(content)
+            written = true
+        } catch (exc: Exception) {
+            val eventFile = File(filePath)
+            delegate?.getOrNull()?.onErrorIOFailure(exc, eventFile, "NDK Crash report copy")
+            IOUtils.deleteFile(eventFile, logger)
+        } finally {
+            IOUtils.closeQuietly(stream)
+            if (written) {
+                addToIndex(File(filePath))
+            }
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Moves a [file] which was written outside of this store (such as an NDK crash report) into
+     * [storageDir] and adds it to the index of stored files, so that it is found for delivery
+     * and counted towards [maxStoreCount]. Returns false if the file could not be moved.
+     */
+    fun moveIntoStore(file: File): Boolean {
+        if (!isStorageDirValid(storageDir)) {
+            return false
+        }
+        discardOldestFileIfNeeded()
+        lock.lock()
+        try {
+            val storedFile = File(storageDir, file.name)
+            if (!file.renameTo(storedFile)) {
+                return false
+            }
+            addToIndex(storedFile)
+            return true
+        } finally {
             lock.unlock()
         }
     }
@@ -89,12 +235,19 @@ internal abstract class FileStore(
         discardOldestFileIfNeeded()
         val filename = File(storageDir, getFilename(streamable)).absolutePath
         var stream: JsonStream? = null
+        var written = false
         lock.lock()
         try {
             val fos = FileOutputStream(filename)
+            val headerSize = writeHeader(streamable, filename, fos)
             val out: Writer = BufferedWriter(OutputStreamWriter(fos, "UTF-8"))
             stream = JsonStream(out)
             stream.value(streamable)
+            if (headerSize > 0) {
+                stream.flush()
+                completeHeader(fos, headerSize)
+            }
+            written = true
             logger.i("Saved unsent payload to disk: '$filename'")
             return filename
         } catch (exc: FileNotFoundException) {
@@ -105,6 +258,10 @@ internal abstract class FileStore(
             IOUtils.deleteFile(eventFile, logger)
         } finally {
             IOUtils.closeQuietly(stream)
+            if (written) {
+                // the file must be closed before it is indexed so that its length is known
+                addToIndex(File(filename))
+            }
             lock.unlock()
         }
         return null
@@ -112,33 +269,26 @@ internal abstract class FileStore(
 
     fun discardOldestFileIfNeeded() {
         // Limit number of saved payloads to prevent disk space issues
-        if (!isStorageDirValid(storageDir)) return
-        val listFiles = storageDir.listFiles() ?: return
-        if (listFiles.size < maxStoreCount) return
-
-        // Store lastModified to ensure it doesn't change during sort
-        val timestampedFiles = listFiles.mapTo(ArrayList(listFiles.size)) { file ->
-            FileWithTimestamp(file, file.lastModified())
-        }
-
-        // Sort by cached lastModified timestamps
-        timestampedFiles.sort()
-
-        // Number of files to discard takes into account that a new file may need to be written
-        val numberToDiscard = listFiles.size - maxStoreCount + 1
-        var discardedCount = 0
-
-        for (fileMeta in timestampedFiles) {
-            val file = fileMeta.file
-            if (discardedCount == numberToDiscard) {
-                return
-            } else if (!queuedFiles.contains(file)) {
-                logger.w(
-                    "Discarding oldest error as stored error limit reached: '${file.path}'"
-                )
-                deleteStoredFiles(setOf(file))
-                discardedCount++
-            }
+        val candidates: List<StoredFileInfo>
+        lock.lock()
+        try {
+            val storedFiles = storedFileIndex()
+            if (storedFiles.size < maxStoreCount) return
+
+            // Number of files to discard takes into account that a new file may need to be written
+            val numberToDiscard = storedFiles.size - maxStoreCount + 1
+            candidates = storedFiles.values
+                .filter { !queuedFiles.contains(it.file) }
+                .sorted()
+                .take(numberToDiscard)
+        } finally {
+            lock.unlock()
+        }
+
+        for (fileInfo in candidates) {
+            val file = fileInfo.file
+            logger.w("Discarding oldest error as stored error limit reached: '${file.path}'")
+            deleteStoredFiles(setOf(file))
         }
     }
 
@@ -148,21 +298,7 @@ internal abstract class FileStore(
         lock.lock()
         return try {
             val files: MutableList<File> = ArrayList()
-            if (isStorageDirValid(storageDir)) {
-                val values = storageDir.listFiles()
-                if (values != null) {
-                    for (value in values) {
-                        // delete any tombstoned/empty files, as they contain no useful info
-                        if (value.length() == 0L) {
-                            if (!value.delete()) {
-                                value.deleteOnExit()
-                            }
-                        } else if (value.isFile && !queuedFiles.contains(value)) {
-                            files.add(value)
-                        }
-                    }
-                }
-            }
+            storedFileIndex().keys.filterTo(files) { !queuedFiles.contains(it) }
             queuedFiles.addAll(files)
             files
         } finally {
@@ -186,7 +322,9 @@ internal abstract class FileStore(
         try {
             if (storedFiles != null) {
                 queuedFiles.removeAll(storedFiles)
+                val storedFileIndex = storedFileIndex()
                 for (storedFile in storedFiles) {
+                    storedFileIndex.remove(storedFile)
                     if (!storedFile.delete()) {
                         storedFile.deleteOnExit()
                     }
@@ -198,16 +336,22 @@ internal abstract class FileStore(
     }
 
     /**
-     * A data holder for associating a {@link File} with its last modified timestamp.
+     * The indexed information about a file held in a [FileStore].
      *
-     * @param file The file to associate with a timestamp.
-     * @param timestamp The last modified time of the file, cached to ensure consistent ordering.
+     * @param file The stored file.
+     * @param timestamp The time the file was created, used to discard the oldest files first.
+     * @param size The size of the file in bytes when it was indexed.
+     * @param errorTypes The error types encoded in the filename (events only).
+     * @param isLaunchCrashReport Whether the file holds a crash which occurred on launch.
      */
-    private data class FileWithTimestamp(
+    internal data class StoredFileInfo(
         val file: File,
-        val timestamp: Long
-    ) : Comparable<FileWithTimestamp> {
-        override fun compareTo(other: FileWithTimestamp): Int =
+        val timestamp: Long,
+        val size: Long,
+        val errorTypes: Set<ErrorType> = emptySet(),
+        val isLaunchCrashReport: Boolean = false
+    ) : Comparable<StoredFileInfo> {
+        override fun compareTo(other: StoredFileInfo): Int =
             timestamp.compareTo(other.timestamp)
     }
 }
@@ -0,0 +1,80 @@
+package com.bugsnag.android
+
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Coalesces requests to [flush] a store of payloads. A flush scans the whole store, so there is
+ * never any point in having more than one waiting to run: requests made while a flush is waiting
+ * are dropped, and requests made while a flush is running cause at most one more flush once it
+ * completes (to pick up any payloads stored since its scan).
+ */
+internal class FlushCoalescer(
+    private val executor: Executor,
+    private val flush: Runnable
+) {
+
+    private val state = AtomicInteger(STATE_IDLE)
+    private val coalesced = AtomicLong()
+
+    /**
+     * The number of flush requests which did not need a flush of their own
+     */
+    val coalescedCount: Long
+        get() = coalesced.get()
+
+    private val task = Runnable {
+        state.set(STATE_RUNNING)
+        try {
+            flush.run()
+        } finally {
+            if (!state.compareAndSet(STATE_RUNNING, STATE_IDLE)) {
+                // there were requests during the flush, these are all handled by one more pass
+                state.set(STATE_IDLE)
+                try {
+                    requestFlush()
+                } catch (ignored: RejectedExecutionException) {
+                    // the executor is shutting down, the payloads will be flushed next launch
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests a flush, submitting one to the [executor] unless one is already waiting.
+     */
+    @Throws(RejectedExecutionException::class)
+    fun requestFlush() {
+        while (true) {
+            when (state.get()) {
+                STATE_IDLE -> if (state.compareAndSet(STATE_IDLE, STATE_PENDING)) {
+                    try {
+                        executor.execute(task)
+                    } catch (exc: RejectedExecutionException) {
+                        state.compareAndSet(STATE_PENDING, STATE_IDLE)
+                        throw exc
+                    }
+                    return
+                }
+
+                STATE_RUNNING -> if (state.compareAndSet(STATE_RUNNING, STATE_RUNNING_DIRTY)) {
+                    return
+                }
+
+                else -> {
+                    coalesced.incrementAndGet()
+                    return
+                }
+            }
+        }
+    }
+
+    private companion object {
+        const val STATE_IDLE = 0
+        const val STATE_PENDING = 1
+        const val STATE_RUNNING = 2
+        const val STATE_RUNNING_DIRTY = 3
+    }
+}
@@ -22,8 +22,9 @@ import java.io.FileInputStream
 import java.io.Flushable
 import java.io.IOException
 import java.io.InputStreamReader
-import java.io.Reader
+import java.io.OutputStream
 import java.io.Writer
+import java.nio.channels.Channels
 
 /*
  * Originally based on JsonWriter by Jesse Wilson Et al.
@@ -33,7 +34,12 @@ import java.io.Writer
 class JsonStream private constructor(
     private val out: Writer,
     private val serializeNulls: Boolean,
-    private val objectJsonStreamer: ObjectJsonStreamer
+    private val objectJsonStreamer: ObjectJsonStreamer,
+    /**
+     * The stream which [out] encodes into as UTF-8, if known. Files of pre-encoded JSON are
+     * copied straight into this stream rather than being decoded and encoded again.
+     */
+    private val rawOut: OutputStream? = null
 ) : Closeable, Flushable {
     private var stack = IntArray(32)
     private var stackSize = 0
@@ -77,10 +83,18 @@ class JsonStream private constructor(
 
     constructor(out: Writer) : this(out, false, ObjectJsonStreamer())
 
+    internal constructor(out: Writer, rawOut: OutputStream) : this(
+        out,
+        false,
+        ObjectJsonStreamer(),
+        rawOut
+    )
+
     internal constructor(stream: JsonStream, streamer: ObjectJsonStreamer) : this(
         stream.out,
         stream.serializeNulls,
-        streamer
+        streamer,
+        stream.rawOut
     )
 
     /**
@@ -525,18 +539,38 @@ class JsonStream private constructor(
         if (file == null || file.length() <= 0) {
             return this
         }
+        return value(file, 0L)
+    }
 
+    /**
+     * Writes the content of [file] from [offset] onwards into the stream, which must be UTF-8
+     * encoded JSON. When the underlying byte stream is known the bytes are transferred
+     * directly into it, otherwise they are decoded and written as characters.
+     */
+    @Throws(IOException::class)
+    internal fun value(file: File, offset: Long): JsonStream {
         out.flush()
         beforeValue() // add comma if in array
 
-        // Copy the file contents onto the stream
-        var input: Reader? = null
-        try {
-            val fis = FileInputStream(file)
-            input = BufferedReader(InputStreamReader(fis, "UTF-8"))
-            IOUtils.copy(input, out)
-        } finally {
-            IOUtils.closeQuietly(input)
+        FileInputStream(file).use { input ->
+            val channel = input.channel
+            val raw = rawOut
+            if (raw != null) {
+                out.flush()
+                val target = Channels.newChannel(raw)
+                val size = channel.size()
+                var position = offset
+                while (position < size) {
+                    val transferred = channel.transferTo(position, size - position, target)
+                    if (transferred <= 0) {
+                        break
+                    }
+                    position += transferred
+                }
+            } else {
+                channel.position(offset)
+                IOUtils.copy(BufferedReader(InputStreamReader(input, "UTF-8")), out)
+            }
         }
 
         out.flush()
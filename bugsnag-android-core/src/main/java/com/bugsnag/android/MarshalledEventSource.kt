@@ -33,12 +33,14 @@ internal class MarshalledEventSource(
 
     private fun unmarshall(): Event {
         val eventMapper = BugsnagEventMapper(logger)
-        val jsonMap = eventFile.inputStream().buffered().use {
+        val jsonMap = EventFileFormat.openPayload(eventFile).use {
             JsonHelper.deserialize(it)
         }
 
         return Event(
-            eventMapper.convertToEventImpl(jsonMap, apiKey),
+            // most OnSendCallbacks never look at the threads or breadcrumbs, which are the
+            // largest part of a typical event
+            eventMapper.convertToEventImpl(jsonMap, apiKey, decodeOnAccess = true),
             logger
         )
     }
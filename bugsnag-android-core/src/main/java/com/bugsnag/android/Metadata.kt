@@ -5,6 +5,7 @@ package com.bugsnag.android
 import com.bugsnag.android.internal.StringUtils
 import com.bugsnag.android.internal.TrimMetrics
 import java.io.IOException
+import java.util.Collections
 import java.util.concurrent.ConcurrentHashMap
 import java.util.regex.Pattern
 
@@ -13,11 +14,26 @@ import java.util.regex.Pattern
  * every error report.
  *
  * Diagnostic information is presented on your Bugsnag dashboard in tabs.
+ *
+ * Sections are held in an immutable snapshot which is replaced on each write, and a write only
+ * copies the section it touches. This means [copy] only needs to share the current snapshot,
+ * which keeps capturing an event cheap however much metadata has been added. The sections in
+ * [store] are shared rather than copied, so must not be modified once they are passed in.
  */
-internal data class Metadata @JvmOverloads constructor(
-    internal val store: MutableMap<String, MutableMap<String, Any>> = ConcurrentHashMap()
+internal class Metadata @JvmOverloads constructor(
+    store: Map<String, Map<String, Any>> = emptyMap()
 ) : JsonStream.Streamable, MetadataAware {
 
+    @Volatile
+    private var sections: Map<String, Map<String, Any>> = HashMap(store)
+
+    /**
+     * The current snapshot of all the metadata sections. This is never modified, any changes
+     * are made to a new snapshot.
+     */
+    internal val store: Map<String, Map<String, Any>>
+        get() = sections
+
     val jsonStreamer: ObjectJsonStreamer = ObjectJsonStreamer()
 
     var redactedKeys: Set<Pattern>
@@ -28,12 +44,17 @@ internal data class Metadata @JvmOverloads constructor(
 
     @Throws(IOException::class)
     override fun toStream(writer: JsonStream) {
-        jsonStreamer.objectToStream(store, writer, true)
+        jsonStreamer.objectToStream(sections, writer, true)
     }
 
     override fun addMetadata(section: String, value: Map<String, Any?>) {
-        value.entries.forEach {
-            addMetadata(section, it.key, it.value)
+        if (value.isEmpty()) {
+            return
+        }
+        updateSection(section) { tab ->
+            value.entries.forEach {
+                putValue(tab, it.key, it.value)
+            }
         }
     }
 
@@ -41,9 +62,15 @@ internal data class Metadata @JvmOverloads constructor(
         if (value == null) {
             clearMetadata(section, key)
         } else {
-            val tab = store[section] ?: ConcurrentHashMap()
-            store[section] = tab
-            insertValue(tab, key, value)
+            updateSection(section) { tab -> insertValue(tab, key, value) }
+        }
+    }
+
+    private fun putValue(map: MutableMap<String, Any>, key: String, value: Any?) {
+        if (value == null) {
+            map.remove(key)
+        } else {
+            insertValue(map, key, value)
         }
     }
 
@@ -59,43 +86,184 @@ internal data class Metadata @JvmOverloads constructor(
         map[key] = obj
     }
 
+    /**
+     * Replaces [section] with a modified copy, leaving all of the other sections shared with
+     * the previous snapshot. The section is removed if it is left empty.
+     */
+    private inline fun updateSection(section: String, block: (MutableMap<String, Any>) -> Unit) {
+        synchronized(this) {
+            val current = sections
+            val tab = current[section]?.let { HashMap(it) } ?: HashMap()
+            block(tab)
+
+            if (tab.isEmpty() && section !in current) {
+                return
+            }
+            val copy = HashMap(current)
+            if (tab.isEmpty()) {
+                copy.remove(section)
+            } else {
+                copy[section] = Collections.unmodifiableMap(tab)
+            }
+            sections = copy
+        }
+    }
+
+    @Synchronized
     override fun clearMetadata(section: String) {
-        store.remove(section)
+        val current = sections
+        if (section in current) {
+            sections = HashMap(current).apply { remove(section) }
+        }
     }
 
     override fun clearMetadata(section: String, key: String) {
-        val tab = store[section]
-        tab?.remove(key)
-
-        if (tab.isNullOrEmpty()) {
-            store.remove(section)
+        if (sections[section]?.containsKey(key) == true) {
+            updateSection(section) { tab -> tab.remove(key) }
         }
     }
 
+    /**
+     * Returns a view of [section], which always reflects the current snapshot. The section
+     * itself is shared between snapshots, so any changes made through the view copy the
+     * section and are written back to this metadata.
+     */
     override fun getMetadata(section: String): Map<String, Any>? {
-        return store[section]
+        return if (section in sections) SectionView(section) else null
     }
 
     override fun getMetadata(section: String, key: String): Any? {
-        return getMetadata(section)?.get(key)
+        return sections[section]?.get(key)
+    }
+
+    /**
+     * A mutable view of a single section, which reads from the current snapshot and copies the
+     * section on each write (as [addMetadata] and [clearMetadata] do).
+     */
+    private inner class SectionView(
+        private val section: String
+    ) : AbstractMutableMap<String, Any>() {
+
+        private val current: Map<String, Any>
+            get() = sections[section] ?: emptyMap()
+
+        override val size: Int
+            get() = current.size
+
+        override fun get(key: String): Any? = current[key]
+
+        override fun containsKey(key: String): Boolean = current.containsKey(key)
+
+        override fun put(key: String, value: Any): Any? {
+            var previous: Any? = null
+            updateSection(section) { tab -> previous = tab.put(key, value) }
+            return previous
+        }
+
+        override fun remove(key: String): Any? {
+            var previous: Any? = null
+            if (containsKey(key)) {
+                updateSection(section) { tab -> previous = tab.remove(key) }
+            }
+            return previous
+        }
+
+        override fun clear() = clearMetadata(section)
+
+        override val entries: MutableSet<MutableMap.MutableEntry<String, Any>>
+            get() = object : AbstractMutableSet<MutableMap.MutableEntry<String, Any>>() {
+                override val size: Int
+                    get() = current.size
+
+                override fun add(element: MutableMap.MutableEntry<String, Any>): Boolean {
+                    throw UnsupportedOperationException()
+                }
+
+                override fun iterator(): MutableIterator<MutableMap.MutableEntry<String, Any>> {
+                    return EntryIterator(current.entries.iterator())
+                }
+            }
+
+        private inner class EntryIterator(
+            private val snapshot: Iterator<Map.Entry<String, Any>>
+        ) : MutableIterator<MutableMap.MutableEntry<String, Any>> {
+            private var last: String? = null
+
+            override fun hasNext() = snapshot.hasNext()
+
+            override fun next(): MutableMap.MutableEntry<String, Any> {
+                val entry = snapshot.next()
+                last = entry.key
+                return SectionEntry(entry.key, entry.value)
+            }
+
+            override fun remove() {
+                this@SectionView.remove(checkNotNull(last))
+                last = null
+            }
+        }
+
+        private inner class SectionEntry(
+            override val key: String,
+            private var entryValue: Any
+        ) : MutableMap.MutableEntry<String, Any> {
+
+            override val value: Any
+                get() = entryValue
+
+            override fun setValue(newValue: Any): Any {
+                val previous = entryValue
+                put(key, newValue)
+                entryValue = newValue
+                return previous
+            }
+
+            override fun equals(other: Any?): Boolean {
+                return other is Map.Entry<*, *> && key == other.key && entryValue == other.value
+            }
+
+            override fun hashCode(): Int = key.hashCode() xor entryValue.hashCode()
+
+            override fun toString(): String = "$key=$entryValue"
+        }
     }
 
     fun toMap(): MutableMap<String, MutableMap<String, Any>> {
-        val copy = ConcurrentHashMap(store)
+        val snapshot = sections
+        val copy = ConcurrentHashMap<String, MutableMap<String, Any>>()
 
         // deep copy each section
-        store.entries.forEach {
+        snapshot.entries.forEach {
             copy[it.key] = ConcurrentHashMap(it.value)
         }
         return copy
     }
 
+    override fun equals(other: Any?): Boolean {
+        return this === other || (other is Metadata && sections == other.sections)
+    }
+
+    override fun hashCode(): Int = sections.hashCode()
+
+    override fun toString(): String = "Metadata(store=$sections)"
+
     companion object {
         fun merge(vararg data: Metadata): Metadata {
-            val stores = data.map { it.toMap() }
-            val redactKeys = data.flatMap { it.jsonStreamer.redactedKeys }
-            val newMeta = Metadata(mergeMaps(stores) as MutableMap<String, MutableMap<String, Any>>)
-            newMeta.redactedKeys = redactKeys.toSet()
+            val sections = HashMap<String, Map<String, Any>>()
+            data.forEach { metadata ->
+                metadata.sections.forEach { (name, section) ->
+                    // sections which only appear once are shared rather than copied
+                    val base = sections[name]
+                    sections[name] = when (base) {
+                        null -> section
+                        else -> Collections.unmodifiableMap(mergeMaps(listOf(base, section)))
+                    }
+                }
+            }
+
+            val newMeta = Metadata()
+            newMeta.sections = sections
+            newMeta.redactedKeys = data.flatMap { it.jsonStreamer.redactedKeys }.toSet()
             return newMeta
         }
 
@@ -137,21 +305,30 @@ internal data class Metadata @JvmOverloads constructor(
     }
 
     fun copy(): Metadata {
-        return this.copy(store = toMap())
-            .also { it.redactedKeys = redactedKeys.toSet() }
+        val copy = Metadata()
+        copy.sections = sections
+        copy.redactedKeys = redactedKeys.toSet()
+        return copy
     }
 
+    @Synchronized
     fun trimMetadataStringsTo(maxStringLength: Int): TrimMetrics {
         var stringCount = 0
         var charCount = 0
-        store.forEach { entry ->
-            val stringAndCharCounts = StringUtils.trimStringValuesTo(
-                maxStringLength,
-                entry.value as MutableMap<String, Any?>
-            )
-
-            stringCount += stringAndCharCounts.itemsTrimmed
-            charCount += stringAndCharCounts.dataTrimmed
+        val trimmed = HashMap(sections)
+        trimmed.entries.forEach { entry ->
+            // sections may be shared with other snapshots, so are trimmed as a copy
+            val tab = HashMap<String, Any?>(entry.value)
+            val stringAndCharCounts = StringUtils.trimStringValuesTo(maxStringLength, tab)
+
+            if (stringAndCharCounts.itemsTrimmed > 0) {
+                entry.setValue(Collections.unmodifiableMap(tab) as Map<String, Any>)
+                stringCount += stringAndCharCounts.itemsTrimmed
+                charCount += stringAndCharCounts.dataTrimmed
+            }
+        }
+        if (stringCount > 0) {
+            sections = trimmed
         }
         return TrimMetrics(stringCount, charCount)
     }
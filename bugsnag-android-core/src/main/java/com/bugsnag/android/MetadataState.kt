@@ -49,12 +49,8 @@ internal data class MetadataState(val metadata: Metadata = Metadata()) :
      * Observer was added. This is used initially to populate the NDK with data.
      */
     fun emitObservableEvent() {
-        val sections = metadata.store.keys
-
-        for (section in sections) {
-            val data = metadata.getMetadata(section)
-
-            data?.entries?.forEach {
+        metadata.store.forEach { (section, data) ->
+            data.entries.forEach {
                 notifyMetadataAdded(section, it.key, it.value)
             }
         }
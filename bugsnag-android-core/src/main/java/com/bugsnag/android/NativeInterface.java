@@ -9,8 +9,6 @@ import android.annotation.SuppressLint;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -370,24 +368,6 @@ public class NativeInterface {
         return false;
     }
 
-    @SuppressWarnings("unchecked")
-    private static void deepMerge(Map<String, Object> src, Map<String, Object> dst) {
-        for (Map.Entry<String, Object> entry : src.entrySet()) {
-            String key = entry.getKey();
-            Object srcValue = entry.getValue();
-            Object dstValue = dst.get(key);
-            if (srcValue instanceof Map && (dstValue instanceof Map)) {
-                deepMerge((Map<String, Object>) srcValue, (Map<String, Object>) dstValue);
-            } else if (srcValue instanceof Collection && dstValue instanceof Collection) {
-                // Just append everything because we don't know enough about the context or
-                // provenance of the data to make an intelligent decision about this.
-                ((Collection<Object>) dstValue).addAll((Collection<Object>) srcValue);
-            } else {
-                dst.put(key, srcValue);
-            }
-        }
-    }
-
     /**
      * Deliver a report, serialized as an event JSON payload.
      *
@@ -405,21 +385,6 @@ public class NativeInterface {
                                      @Nullable byte[] staticDataBytes,
                                      @NonNull String apiKey,
                                      boolean isLaunching) {
-        // If there's saved static data, merge it directly into the payload map.
-        if (staticDataBytes != null) {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> payloadMap = JsonHelper.INSTANCE.deserialize(
-                    new ByteArrayInputStream(payloadBytes));
-            @SuppressWarnings("unchecked")
-            Map<String, Object> staticDataMap = JsonHelper.INSTANCE.deserialize(
-                    new ByteArrayInputStream(staticDataBytes));
-            deepMerge(staticDataMap, payloadMap);
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            JsonHelper.INSTANCE.serialize(payloadMap, os);
-            payloadBytes = os.toByteArray();
-        }
-
-        String payload = new String(payloadBytes, UTF8Charset);
         String releaseStage = releaseStageBytes == null
                 ? null
                 : new String(releaseStageBytes, UTF8Charset);
@@ -430,11 +395,20 @@ public class NativeInterface {
                 || !config.shouldDiscardByReleaseStage()) {
             EventStore eventStore = client.getEventStore();
 
-            String filename = eventStore.getNdkFilename(payload, apiKey);
+            String filename = eventStore.getNdkFilename(payloadBytes, apiKey);
             if (isLaunching) {
                 filename = filename.replace(".json", "startupcrash.json");
             }
-            eventStore.enqueueContentForDelivery(payload, filename);
+
+            if (staticDataBytes != null) {
+                // If there's saved static data, merge it into the payload as it is written
+                Map<String, Object> staticData = JsonHelper.INSTANCE.deserialize(staticDataBytes);
+                eventStore.enqueueContentForDelivery(
+                        JsonHelper.INSTANCE.merge(payloadBytes, staticData), filename);
+            } else {
+                String payload = new String(payloadBytes, UTF8Charset);
+                eventStore.enqueueContentForDelivery(payload, filename);
+            }
         }
     }
 
@@ -449,8 +423,7 @@ public class NativeInterface {
      */
     public static void deliverReport(@NonNull File reportFile) {
         EventStore eventStore = getClient().getEventStore();
-        File eventFile = new File(eventStore.getStorageDir(), reportFile.getName());
-        if (reportFile.renameTo(eventFile)) {
+        if (eventStore.moveIntoStore(reportFile)) {
             eventStore.flushAsync();
         } else {
             reportFile.delete();
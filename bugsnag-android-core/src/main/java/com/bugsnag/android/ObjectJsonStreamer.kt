@@ -17,6 +17,10 @@ internal class ObjectJsonStreamer {
 
     var redactedKeys = DEFAULT_REDACTED_KEYS
 
+    // compiled from redactedKeys when a key is first checked against them
+    private var keyMatcher = RedactedKeyMatcher.DEFAULT
+    private var keyMatcherSource = DEFAULT_REDACTED_KEYS
+
     // Write complex/nested values to a JsonStreamer
     @Throws(IOException::class)
     fun objectToStream(obj: Any?, writer: JsonStream, shouldRedactKeys: Boolean = false) {
@@ -69,5 +73,14 @@ internal class ObjectJsonStreamer {
     }
 
     // Should this key be redacted
-    private fun isRedactedKey(key: String) = redactedKeys.any { it.matcher(key).matches() }
+    private fun isRedactedKey(key: String): Boolean {
+        val patterns = redactedKeys
+        var matcher = keyMatcher
+        if (keyMatcherSource !== patterns) {
+            matcher = RedactedKeyMatcher.forPatterns(patterns)
+            keyMatcher = matcher
+            keyMatcherSource = patterns
+        }
+        return matcher.isRedacted(key)
+    }
 }
@@ -0,0 +1,162 @@
+package com.bugsnag.android
+
+import java.util.regex.Pattern
+
+/**
+ * Decides whether a key matches any of a set of redaction [patterns].
+ *
+ * Patterns which only match a literal, either on its own or surrounded by `.*` (the common
+ * `.*password.*` case), are checked with a substring search instead of a regex. Any other
+ * patterns are matched as normal. Recent verdicts are kept in a small LRU cache, as the same
+ * keys are serialized over and over again.
+ */
+internal class RedactedKeyMatcher private constructor(val patterns: Set<Pattern>) {
+
+    private val literals = ArrayList<LiteralPattern>()
+    private val regexPatterns = ArrayList<Pattern>()
+    private val hasCaseInsensitiveLiterals: Boolean
+
+    private val verdicts = object : LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Boolean>?) =
+            size > MAX_CACHED_VERDICTS
+    }
+
+    init {
+        patterns.forEach { pattern ->
+            val literal = LiteralPattern.from(pattern)
+            if (literal != null) {
+                literals.add(literal)
+            } else {
+                regexPatterns.add(pattern)
+            }
+        }
+        hasCaseInsensitiveLiterals = literals.any { it.caseInsensitive }
+    }
+
+    fun isRedacted(key: String): Boolean {
+        if (patterns.isEmpty()) {
+            return false
+        }
+        if (key.length > MAX_CACHED_KEY_LENGTH) {
+            return match(key)
+        }
+
+        synchronized(verdicts) {
+            verdicts[key]?.let { return it }
+        }
+        val redacted = match(key)
+        synchronized(verdicts) {
+            verdicts[key] = redacted
+        }
+        return redacted
+    }
+
+    private fun match(key: String): Boolean {
+        // '.' does not match line terminators, so only the regex gets these keys right
+        val literalSafe = key.none { isLineTerminator(it) }
+        if (literalSafe) {
+            val foldedKey = if (hasCaseInsensitiveLiterals) foldAsciiCase(key) else key
+            if (literals.any { it.matches(key, foldedKey) }) {
+                return true
+            }
+        } else if (literals.any { it.pattern.matcher(key).matches() }) {
+            return true
+        }
+        return regexPatterns.any { it.matcher(key).matches() }
+    }
+
+    /**
+     * A pattern which matches [literal], either exactly or (if [contains]) anywhere in a key.
+     */
+    private class LiteralPattern(
+        val pattern: Pattern,
+        val literal: String,
+        val contains: Boolean,
+        val caseInsensitive: Boolean
+    ) {
+
+        fun matches(key: String, foldedKey: String): Boolean {
+            val target = if (caseInsensitive) foldedKey else key
+            return when {
+                contains -> target.contains(literal)
+                else -> target == literal
+            }
+        }
+
+        companion object {
+            private const val WILDCARD = ".*"
+            private const val REGEX_META_CHARS = "\\^$.|?*+()[]{}"
+
+            fun from(pattern: Pattern): LiteralPattern? {
+                val flags = pattern.flags()
+                if ((flags and Pattern.CASE_INSENSITIVE.inv()) != 0) {
+                    return null
+                }
+
+                val regex = pattern.pattern()
+                val contains = regex.length >= WILDCARD.length * 2 &&
+                    regex.startsWith(WILDCARD) &&
+                    regex.endsWith(WILDCARD)
+                val literal = when {
+                    contains -> regex.substring(WILDCARD.length, regex.length - WILDCARD.length)
+                    else -> regex
+                }
+                if (literal.any { it in REGEX_META_CHARS || it.code >= ASCII_LIMIT }) {
+                    return null
+                }
+
+                val caseInsensitive = (flags and Pattern.CASE_INSENSITIVE) != 0
+                return LiteralPattern(
+                    pattern,
+                    if (caseInsensitive) foldAsciiCase(literal) else literal,
+                    contains,
+                    caseInsensitive
+                )
+            }
+        }
+    }
+
+    companion object {
+        private const val MAX_CACHED_VERDICTS = 512
+        private const val MAX_CACHED_KEY_LENGTH = 128
+        private const val ASCII_LIMIT = 0x80
+
+        internal val DEFAULT = RedactedKeyMatcher(ObjectJsonStreamer.DEFAULT_REDACTED_KEYS)
+
+        @Volatile
+        private var lastMatcher: RedactedKeyMatcher = DEFAULT
+
+        /**
+         * Returns a matcher for [patterns]. Each event and [JsonStream] has its own set of
+         * patterns, but they are almost always the same ones, so the most recent matcher is
+         * reused (along with its cache) when the patterns have not changed.
+         */
+        fun forPatterns(patterns: Set<Pattern>): RedactedKeyMatcher {
+            val last = lastMatcher
+            if (last.patterns == patterns) {
+                return last
+            }
+            return RedactedKeyMatcher(patterns.toSet()).also { lastMatcher = it }
+        }
+
+        private fun isLineTerminator(ch: Char) =
+            ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029'
+
+        /**
+         * Lowercases ASCII letters only, which is how [Pattern.CASE_INSENSITIVE] compares
+         * characters when [Pattern.UNICODE_CASE] is not set.
+         */
+        private fun foldAsciiCase(str: String): String {
+            if (str.none { it in 'A'..'Z' }) {
+                return str
+            }
+            val chars = str.toCharArray()
+            for (i in chars.indices) {
+                if (chars[i] in 'A'..'Z') {
+                    chars[i] = chars[i] + ('a' - 'A')
+                }
+            }
+            return String(chars)
+        }
+    }
+}
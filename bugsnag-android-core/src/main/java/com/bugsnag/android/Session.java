@@ -10,6 +10,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -37,6 +38,13 @@ public final class Session implements JsonStream.Streamable, Deliverable, UserAw
 
     private String apiKey;
 
+    /**
+     * The stored payloads which are delivered together in this session payload, when several
+     * stored sessions are batched into a single request.
+     */
+    @Nullable
+    private List<Map<String, Object>> batchedPayloads;
+
     static Session copySession(Session session) {
         Session copy = new Session(session.id, session.startedAt, session.user,
                 session.unhandledCount.get(), session.handledCount.get(), session.notifier,
@@ -47,7 +55,7 @@ public final class Session implements JsonStream.Streamable, Deliverable, UserAw
     }
 
     Session(Map<String, Object> map, Logger logger, String apiKey) {
-        this(null, null, logger, apiKey);
+        this((File) null, null, logger, apiKey);
         setId((String) map.get("id"));
 
         String timestamp = (String) map.get("startedAt");
@@ -65,7 +73,7 @@ public final class Session implements JsonStream.Streamable, Deliverable, UserAw
 
     Session(String id, Date startedAt, User user, boolean autoCaptured,
             Notifier notifier, Logger logger, String apiKey) {
-        this(null, notifier, logger, apiKey);
+        this((File) null, notifier, logger, apiKey);
         this.id = id;
         this.startedAt = new Date(startedAt.getTime());
         this.user = user;
@@ -96,6 +104,16 @@ public final class Session implements JsonStream.Streamable, Deliverable, UserAw
         }
     }
 
+    /**
+     * Creates a payload which delivers several stored v2/v3 session payloads in one request.
+     * The payloads must share the same app and device, which are taken from the first payload.
+     */
+    Session(@NonNull List<Map<String, Object>> batchedPayloads, Notifier notifier,
+            Logger logger, String apiKey) {
+        this((File) null, notifier, logger, apiKey);
+        this.batchedPayloads = batchedPayloads;
+    }
+
     private void logNull(String property) {
         logger.e("Invalid null value supplied to session." + property + ", ignoring");
     }
@@ -241,7 +259,9 @@ public final class Session implements JsonStream.Streamable, Deliverable, UserAw
 
     @Override
     public void toStream(@NonNull JsonStream writer) throws IOException {
-        if (file != null) {
+        if (batchedPayloads != null) {
+            serializeBatchedPayload(writer);
+        } else if (file != null) {
             if (!isLegacyPayload()) {
                 serializePayload(writer);
             } else {
@@ -285,6 +305,25 @@ public final class Session implements JsonStream.Streamable, Deliverable, UserAw
         writer.endObject();
     }
 
+    private void serializeBatchedPayload(@NonNull JsonStream writer) throws IOException {
+        Map<String, Object> firstPayload = batchedPayloads.get(0);
+        writer.beginObject();
+        writer.name("notifier").value(notifier);
+        writer.name("app").value(firstPayload.get("app"));
+        writer.name("device").value(firstPayload.get("device"));
+        writer.name("sessions").beginArray();
+        for (Map<String, Object> payload : batchedPayloads) {
+            Object sessions = payload.get("sessions");
+            if (sessions instanceof List) {
+                for (Object session : (List<?>) sessions) {
+                    writer.value(session);
+                }
+            }
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
     void serializeSessionInfo(@NonNull JsonStream writer) throws IOException {
         writer.beginObject();
         writer.name("id").value(id);
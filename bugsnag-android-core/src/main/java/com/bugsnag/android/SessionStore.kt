@@ -1,7 +1,9 @@
 package com.bugsnag.android
 
 import com.bugsnag.android.SessionFilenameInfo.Companion.defaultFilename
+import com.bugsnag.android.SessionFilenameInfo.Companion.findApiKeyInFilename
 import com.bugsnag.android.SessionFilenameInfo.Companion.findTimestampInFilename
+import com.bugsnag.android.internal.JsonHelper
 import com.bugsnag.android.internal.dag.Provider
 import java.io.File
 import java.util.Calendar
@@ -34,7 +36,93 @@ internal class SessionStore(
         return Date(findTimestampInFilename(file!!))
     }
 
+    /**
+     * Stored session files which are delivered together. If [payload] is null the batch
+     * contains a single file which should be delivered on its own.
+     */
+    class SessionBatch(val files: List<File>, val payload: Session?)
+
+    /**
+     * Groups the stored [files] into batches of up to [maxBatchSize] sessions, each of which can
+     * be delivered in a single request. Only v2/v3 payloads with the same API key, app and
+     * device are batched together, and each batch is limited to [MAX_BATCH_BYTES] based on the
+     * size of the stored files. Legacy or unreadable files are returned in batches of their own.
+     */
+    fun createSessionBatches(
+        files: Collection<File>,
+        maxBatchSize: Int,
+        notifier: Notifier
+    ): List<SessionBatch> {
+        val batches = ArrayList<SessionBatch>()
+        val groups = LinkedHashMap<Triple<String, Any?, Any?>, MutableList<File>>()
+        val payloads = HashMap<File, Map<String, Any?>>()
+
+        for (file in files) {
+            val payload = readBatchablePayload(file)
+            if (payload == null) {
+                batches.add(SessionBatch(listOf(file), null))
+            } else {
+                payloads[file] = payload
+                val fileApiKey = findApiKeyInFilename(file, apiKey)
+                val key = Triple(fileApiKey, payload["app"], payload["device"])
+                groups.getOrPut(key) { ArrayList() }.add(file)
+            }
+        }
+
+        groups.forEach { (key, groupFiles) ->
+            var batch = ArrayList<File>(maxBatchSize)
+            var batchBytes = 0L
+            for (file in groupFiles) {
+                val fileSize = getStoredFileInfo(file)?.size ?: file.length()
+                if (batch.isNotEmpty() &&
+                    (batch.size >= maxBatchSize || batchBytes + fileSize > MAX_BATCH_BYTES)
+                ) {
+                    batches.add(createBatch(batch, payloads, key.first, notifier))
+                    batch = ArrayList(maxBatchSize)
+                    batchBytes = 0L
+                }
+                batch.add(file)
+                batchBytes += fileSize
+            }
+            if (batch.isNotEmpty()) {
+                batches.add(createBatch(batch, payloads, key.first, notifier))
+            }
+        }
+        return batches
+    }
+
+    private fun createBatch(
+        files: List<File>,
+        payloads: Map<File, Map<String, Any?>>,
+        apiKey: String,
+        notifier: Notifier
+    ): SessionBatch {
+        if (files.size == 1) {
+            return SessionBatch(files, null)
+        }
+        val session = Session(files.map { payloads.getValue(it) }, notifier, logger, apiKey)
+        return SessionBatch(files, session)
+    }
+
+    private fun readBatchablePayload(file: File): Map<String, Any?>? {
+        val name = file.name
+        if (!name.endsWith("_v2.json") && !name.endsWith("_v3.json")) {
+            return null
+        }
+        return try {
+            file.inputStream().buffered().use { JsonHelper.deserialize(it) }
+                .takeIf { it["sessions"] is List<*> }
+        } catch (exc: Exception) {
+            logger.w("Could not read stored session $name, it will be sent individually", exc)
+            null
+        }
+    }
+
     companion object {
+
+        // sessions are typically <2kb, this only guards against unusually large payloads
+        private const val MAX_BATCH_BYTES = 256 * 1024L
+
         val SESSION_COMPARATOR: Comparator<in File?> = Comparator { lhs, rhs ->
             if (lhs == null && rhs == null) {
                 return@Comparator 0
@@ -4,6 +4,7 @@ import com.bugsnag.android.internal.BackgroundTaskService;
 import com.bugsnag.android.internal.DateUtils;
 import com.bugsnag.android.internal.ForegroundDetector;
 import com.bugsnag.android.internal.ImmutableConfig;
+import com.bugsnag.android.internal.TaskPriority;
 import com.bugsnag.android.internal.TaskType;
 import com.bugsnag.android.internal.dag.Provider;
 
@@ -15,11 +16,13 @@ import androidx.annotation.VisibleForTesting;
 
 import java.io.File;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Deque;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 
 class SessionTracker extends BaseObservable implements ForegroundDetector.OnActivityCallback {
@@ -37,6 +40,8 @@ class SessionTracker extends BaseObservable implements ForegroundDetector.OnActi
     private volatile Session currentSession = null;
     final BackgroundTaskService backgroundTaskService;
     final Logger logger;
+    private final DeliveryRetryScheduler retryScheduler;
+    private final FlushCoalescer flushCoalescer;
     private boolean shouldSuppressFirstAutoSession = true;
 
     SessionTracker(ImmutableConfig configuration,
@@ -63,6 +68,42 @@ class SessionTracker extends BaseObservable implements ForegroundDetector.OnActi
         this.sessionStore = sessionStore;
         this.backgroundTaskService = backgroundTaskService;
         this.logger = logger;
+        this.retryScheduler = new DeliveryRetryScheduler(
+                backgroundTaskService,
+                TaskType.SESSION_REQUEST,
+                configuration.getDelivery(),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        flushStoredSessions();
+                    }
+                }
+        );
+        this.flushCoalescer = new FlushCoalescer(
+                new Executor() {
+                    @Override
+                    public void execute(@NonNull Runnable task) {
+                        backgroundTaskService.submitTask(
+                                TaskType.SESSION_REQUEST,
+                                TaskPriority.LOW,
+                                task);
+                    }
+                },
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        flushStoredSessions();
+                    }
+                }
+        );
+    }
+
+    /**
+     * The number of calls to {@link #flushAsync()} which were satisfied by a flush that was
+     * already queued
+     */
+    long getCoalescedFlushCount() {
+        return flushCoalescer.getCoalescedCount();
     }
 
     /**
@@ -249,26 +290,101 @@ class SessionTracker extends BaseObservable implements ForegroundDetector.OnActi
      */
     void flushAsync() {
         try {
-            backgroundTaskService.submitTask(TaskType.SESSION_REQUEST, new Runnable() {
-                @Override
-                public void run() {
-                    flushStoredSessions();
-                }
-            });
+            flushCoalescer.requestFlush();
         } catch (RejectedExecutionException ex) {
             logger.w("Failed to flush session reports", ex);
         }
     }
 
     /**
-     * Attempts to flush session payloads stored on disk
+     * Pauses or resumes scheduled retries of undelivered sessions when connectivity changes.
+     */
+    void onConnectivityChanged(boolean hasConnection) {
+        retryScheduler.onConnectivityChanged(hasConnection);
+    }
+
+    /**
+     * Attempts to flush session payloads stored on disk. Sessions which recently failed to
+     * deliver are left until their retry is due.
      */
     void flushStoredSessions() {
-        List<File> storedFiles = sessionStore.get().findStoredFiles();
+        SessionStore store = sessionStore.get();
+        List<File> storedFiles = store.findStoredFiles();
+        List<File> eligibleFiles = retryScheduler.filterEligible(storedFiles);
+        int maxBatchSize = configuration.getMaxSessionsPerRequest();
+
+        if (maxBatchSize > 1 && eligibleFiles.size() > 1) {
+            List<SessionStore.SessionBatch> batches =
+                    store.createSessionBatches(eligibleFiles, maxBatchSize, client.getNotifier());
+            for (SessionStore.SessionBatch batch : batches) {
+                if (!retryScheduler.canAttemptDelivery()) {
+                    break;
+                }
+                Session payload = batch.getPayload();
+                if (payload == null) {
+                    flushStoredSession(batch.getFiles().get(0));
+                } else {
+                    flushStoredSessionBatch(batch.getFiles(), payload);
+                }
+            }
+        } else {
+            for (File storedFile : eligibleFiles) {
+                if (!retryScheduler.canAttemptDelivery()) {
+                    break;
+                }
+                flushStoredSession(storedFile);
+            }
+        }
+
+        // release any sessions which were deferred, so that they are found by the next flush
+        store.cancelQueuedFiles(storedFiles);
+    }
 
-        for (File storedFile : storedFiles) {
-            flushStoredSession(storedFile);
+    /**
+     * Delivers several stored sessions in a single request. If the batch is rejected then each
+     * session is retried individually, so that one bad payload does not discard the others.
+     */
+    void flushStoredSessionBatch(List<File> storedFiles, Session payload) {
+        logger.d("SessionTracker#flushStoredSessionBatch() - attempting delivery of "
+                + storedFiles.size() + " sessions");
+        DeliveryStatus deliveryStatus = deliverSessionPayload(payload);
+        SessionStore store = sessionStore.get();
+
+        switch (deliveryStatus) {
+            case DELIVERED:
+                store.deleteStoredFiles(storedFiles);
+                for (File storedFile : storedFiles) {
+                    retryScheduler.onDelivered(storedFile);
+                }
+                logger.d("Sent " + storedFiles.size() + " stored sessions to Bugsnag");
+                break;
+            case UNDELIVERED:
+                List<File> retainedFiles = new ArrayList<>();
+                for (File storedFile : storedFiles) {
+                    if (store.isTooOld(storedFile)) {
+                        store.deleteStoredFiles(Collections.singletonList(storedFile));
+                    } else {
+                        retainedFiles.add(storedFile);
+                    }
+                }
+                store.cancelQueuedFiles(retainedFiles);
+                retryScheduler.onUndelivered(retainedFiles,
+                        configuration.getEndpoints().getSessions());
+                logger.w("Leaving " + retainedFiles.size()
+                        + " session payloads for future delivery");
+                break;
+            case FAILURE:
+                logger.w("Batched session delivery failed, retrying sessions individually");
+                for (File storedFile : storedFiles) {
+                    flushStoredSession(storedFile);
+                }
+                break;
+            default:
+                break;
         }
+
+        // release any sessions which were deferred, so that they are found by the next flush
+        store.cancelQueuedFiles(storedFiles);
     }
 
     void flushStoredSession(File storedFile) {
@@ -288,6 +404,7 @@ class SessionTracker extends BaseObservable implements ForegroundDetector.OnActi
         switch (deliveryStatus) {
             case DELIVERED:
                 store.deleteStoredFiles(Collections.singletonList(storedFile));
+                retryScheduler.onDelivered(storedFile);
                 logger.d("Sent 1 new session to Bugsnag");
                 break;
             case UNDELIVERED:
@@ -298,6 +415,8 @@ class SessionTracker extends BaseObservable implements ForegroundDetector.OnActi
                     store.deleteStoredFiles(Collections.singletonList(storedFile));
                 } else {
                     store.cancelQueuedFiles(Collections.singletonList(storedFile));
+                    retryScheduler.onUndelivered(Collections.singletonList(storedFile),
+                            configuration.getEndpoints().getSessions());
                     logger.w("Leaving session payload for future delivery");
                 }
                 break;
@@ -333,12 +452,18 @@ class SessionTracker extends BaseObservable implements ForegroundDetector.OnActi
             switch (deliveryStatus) {
                 case UNDELIVERED:
                     logger.w("Storing session payload for future delivery");
-                    sessionStore.get().write(session);
+                    String filename = sessionStore.get().write(session);
+                    if (filename != null) {
+                        retryScheduler.onUndelivered(
+                                Collections.singletonList(new File(filename)),
+                                configuration.getEndpoints().getSessions());
+                    }
                     break;
                 case FAILURE:
                     logger.w("Dropping invalid session tracking payload");
                     break;
                 case DELIVERED:
+                    retryScheduler.onDelivered(null);
                     logger.d("Sent 1 new session to Bugsnag");
                     break;
                 default:
@@ -0,0 +1,73 @@
+package com.bugsnag.android
+
+import com.bugsnag.android.internal.ProjectPackageMatcher
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The immutable values of a [Stackframe] derived from a [StackTraceElement]. These are shared
+ * by every [Stackframe] created from an equal element, and as they are all immutable values
+ * a [Stackframe] which is later modified simply replaces its own references.
+ */
+internal class FrameDescriptor(
+    val method: String,
+    val file: String,
+    val lineNumber: Number,
+    val inProject: Boolean?
+)
+
+/**
+ * A bounded cache of [FrameDescriptor]s for a set of [projectPackages]. The same frames
+ * (`android.os.Looper.loop`, `java.lang.Thread.run` and so on) appear in almost every thread
+ * of every event, so their method names and in-project verdicts are only calculated once.
+ */
+internal class StackframeCache private constructor(
+    val projectPackages: Set<String>
+) {
+
+    private val matcher = ProjectPackageMatcher(projectPackages)
+    private val descriptors = ConcurrentHashMap<StackTraceElement, FrameDescriptor>()
+
+    fun descriptorFor(el: StackTraceElement): FrameDescriptor {
+        descriptors[el]?.let { return it }
+
+        val className = el.className
+        val descriptor = FrameDescriptor(
+            when {
+                className.isNotEmpty() -> className + "." + el.methodName
+                else -> el.methodName
+            },
+            el.fileName ?: "Unknown",
+            el.lineNumber,
+            matcher.inProject(className)
+        )
+
+        if (descriptors.size >= MAX_CACHED_FRAMES) {
+            // start again rather than tracking usage, the frames that matter return quickly
+            descriptors.clear()
+        }
+        descriptors[el] = descriptor
+        return descriptor
+    }
+
+    companion object {
+        private const val MAX_CACHED_FRAMES = 2048
+
+        @Volatile
+        private var lastCache = StackframeCache(emptySet())
+
+        /**
+         * Returns the cache for [projectPackages]. These almost always come from the same
+         * [ImmutableConfig][com.bugsnag.android.internal.ImmutableConfig], so the most recent
+         * cache is reused unless the packages have changed.
+         */
+        fun forProjectPackages(projectPackages: Collection<String>): StackframeCache {
+            val last = lastCache
+            if (last.projectPackages.size == projectPackages.size &&
+                last.projectPackages.containsAll(projectPackages)
+            ) {
+                return last
+            }
+            return StackframeCache(projectPackages.toSet()).also { lastCache = it }
+        }
+    }
+}
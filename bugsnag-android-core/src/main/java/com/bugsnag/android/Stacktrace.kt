@@ -12,38 +12,18 @@ internal class Stacktrace : JsonStream.Streamable {
     companion object {
         private const val STACKTRACE_TRIM_LENGTH = 200
 
-        /**
-         * Calculates whether a stackframe is 'in project' or not by checking its class against
-         * [Configuration.getProjectPackages].
-         *
-         * For example if the projectPackages included 'com.example', then
-         * the `com.example.Foo` class would be considered in project, but `org.example.Bar` would
-         * not.
-         */
-        fun inProject(className: String, projectPackages: Collection<String>): Boolean? {
-            return when {
-                projectPackages.any { className.startsWith(it) } -> true
-                else -> null
-            }
-        }
-
-        fun serializeStackframe(
+        private fun serializeStackframe(
             el: StackTraceElement,
-            projectPackages: Collection<String>,
+            cache: StackframeCache,
             logger: Logger
         ): Stackframe? {
             try {
-                val className = el.className
-                val methodName = when {
-                    className.isNotEmpty() -> className + "." + el.methodName
-                    else -> el.methodName
-                }
-
+                val descriptor = cache.descriptorFor(el)
                 return Stackframe(
-                    methodName,
-                    el.fileName ?: "Unknown",
-                    el.lineNumber,
-                    inProject(className, projectPackages)
+                    descriptor.method,
+                    descriptor.file,
+                    descriptor.lineNumber,
+                    descriptor.inProject
                 )
             } catch (lineEx: Exception) {
                 logger.w("Failed to serialize stacktrace", lineEx)
@@ -52,28 +32,55 @@ internal class Stacktrace : JsonStream.Streamable {
         }
     }
 
+    private var elements: Array<StackTraceElement>? = null
+    private var projectPackages: Collection<String> = emptyList()
+    private var logger: Logger? = null
+    private var frames: MutableList<Stackframe>? = null
+
+    /**
+     * The frames of this stacktrace. When created from [StackTraceElement]s the elements are
+     * only converted to [Stackframe]s the first time this is accessed.
+     */
     val trace: MutableList<Stackframe>
+        get() = frames ?: convertElements().also {
+            frames = it
+            elements = null
+        }
 
     constructor(frames: MutableList<Stackframe>) {
-        trace = limitTraceLength(frames)
+        this.frames = limitTraceLength(frames)
     }
 
+    /**
+     * Captures [stacktrace] without converting it, so that the conversion can happen later
+     * and off the thread which captured it. [trace] and [toStream] convert the elements on
+     * demand.
+     */
     constructor(
         stacktrace: Array<StackTraceElement>,
         projectPackages: Collection<String>,
         logger: Logger
     ) {
+        this.elements = stacktrace
+        this.projectPackages = projectPackages
+        this.logger = logger
+    }
+
+    private fun convertElements(): MutableList<Stackframe> {
+        val stacktrace = elements ?: return ArrayList()
         // avoid allocating new subLists or Arrays by only copying the required number of frames
         // mapping them to our internal Stackframes as we go, roughly equivalent to
         // stacktrace.take(STACKTRACE_TRIM_LENGTH).mapNotNullTo(ArrayList()) { ... }
         val frameCount = min(STACKTRACE_TRIM_LENGTH, stacktrace.size)
-        trace = ArrayList(frameCount)
+        val trace = ArrayList<Stackframe>(frameCount)
+        val cache = StackframeCache.forProjectPackages(projectPackages)
         for (i in 0 until frameCount) {
-            val frame = serializeStackframe(stacktrace[i], projectPackages, logger)
+            val frame = serializeStackframe(stacktrace[i], cache, logger!!)
             if (frame != null) {
                 trace.add(frame)
             }
         }
+        return trace
     }
 
     private fun limitTraceLength(frames: MutableList<Stackframe>): MutableList<Stackframe> {
@@ -11,7 +11,8 @@ sealed class StateEvent { // JvmField allows direct field access optimizations
         @JvmField val lastRunInfoPath: String,
         @JvmField val consecutiveLaunchCrashes: Int,
         @JvmField val sendThreads: ThreadSendPolicy,
-        @JvmField val maxBreadcrumbs: Int
+        @JvmField val maxBreadcrumbs: Int,
+        @JvmField val journalNativeCrashes: Boolean
     ) : StateEvent()
 
     object DeliverPending : StateEvent()
@@ -11,7 +11,23 @@ class ThreadInternal internal constructor(
     stacktrace: Stacktrace
 ) : JsonStream.Streamable {
 
-    var stacktrace: MutableList<Stackframe> = stacktrace.trace.toMutableList()
+    /**
+     * The captured stacktrace, until its frames are first accessed or replaced. Capturing the
+     * threads of an event only takes a snapshot of each [StackTraceElement] array, so the
+     * conversion to [Stackframe]s happens here (typically while the event is delivered).
+     */
+    private var capturedStacktrace: Stacktrace? = stacktrace
+    private var frames: MutableList<Stackframe>? = null
+
+    var stacktrace: MutableList<Stackframe>
+        get() = frames ?: capturedStacktrace!!.trace.toMutableList().also {
+            frames = it
+            capturedStacktrace = null
+        }
+        set(value) {
+            frames = value
+            capturedStacktrace = null
+        }
 
     fun addStackframe(method: String?, file: String?, lineNumber: Long): Stackframe {
         val frame = Stackframe(method, file, lineNumber, null)
@@ -28,9 +44,14 @@ class ThreadInternal internal constructor(
         writer.name("state").value(state)
 
         writer.name("stacktrace")
-        writer.beginArray()
-        stacktrace.forEach { writer.value(it) }
-        writer.endArray()
+        val captured = capturedStacktrace
+        if (captured != null) {
+            writer.value(captured)
+        } else {
+            writer.beginArray()
+            stacktrace.forEach { writer.value(it) }
+            writer.endArray()
+        }
 
         if (isErrorReportingThread) {
             writer.name("errorReportingThread").value(true)
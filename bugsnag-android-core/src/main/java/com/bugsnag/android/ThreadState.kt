@@ -134,6 +134,8 @@ internal class ThreadState @Suppress("LongParameterList") constructor(
 
         val reportThreads = ArrayList<Thread>(maxThreadCount)
 
+        // only the StackTraceElement arrays are captured within the time limit, converting them
+        // to Stackframes is deferred until they are accessed or the event is serialized
         val timeout = SystemClock.elapsedRealtime() + threadCollectionTimeLimitMillis
         for (thread in keepThreads) {
             if (SystemClock.elapsedRealtime() >= timeout) {
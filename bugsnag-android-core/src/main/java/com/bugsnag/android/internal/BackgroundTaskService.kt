@@ -2,17 +2,19 @@ package com.bugsnag.android.internal
 
 import androidx.annotation.VisibleForTesting
 import com.bugsnag.android.internal.dag.RunnableProvider
-import java.util.concurrent.BlockingQueue
 import java.util.concurrent.Callable
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.Future
 import java.util.concurrent.FutureTask
-import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.PriorityBlockingQueue
 import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledThreadPoolExecutor
 import java.util.concurrent.ThreadFactory
 import java.util.concurrent.ThreadPoolExecutor
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
 import java.lang.Thread as JThread
 
 /**
@@ -52,6 +54,54 @@ enum class TaskType {
     DEFAULT
 }
 
+/**
+ * The priority of a task within its [TaskType]. Waiting tasks with a higher priority are run
+ * before those with a lower priority, and tasks with the same priority are run in the order
+ * they were submitted.
+ */
+enum class TaskPriority {
+
+    /**
+     * A task that must not wait behind other work, such as delivering an unhandled error
+     * that has just occurred.
+     */
+    HIGH,
+
+    /**
+     * The priority of most tasks, such as delivering a newly captured handled error.
+     */
+    NORMAL,
+
+    /**
+     * A task that works through a backlog, such as flushing stored errors or sessions.
+     */
+    LOW
+}
+
+/**
+ * A snapshot of the activity of the executor for a [TaskType].
+ */
+class TaskMetrics internal constructor(
+    /**
+     * The number of tasks waiting to run
+     */
+    val queueDepth: Int,
+    val submittedCount: Long,
+    val rejectedCount: Long,
+    val completedCount: Long,
+    val totalWaitTimeMs: Long,
+    val maxWaitTimeMs: Long,
+    val totalRunTimeMs: Long,
+    val maxRunTimeMs: Long
+) {
+    override fun toString(): String {
+        return "TaskMetrics(queueDepth=$queueDepth, submittedCount=$submittedCount, " +
+            "rejectedCount=$rejectedCount, completedCount=$completedCount, " +
+            "totalWaitTimeMs=$totalWaitTimeMs, maxWaitTimeMs=$maxWaitTimeMs, " +
+            "totalRunTimeMs=$totalRunTimeMs, maxRunTimeMs=$maxRunTimeMs)"
+    }
+}
+
 private const val SHUTDOWN_WAIT_MS = 1500L
 
 // these values have been loosely adapted from android.os.AsyncTask over the years.
@@ -64,8 +114,112 @@ private class TaskTypeThread(runnable: Runnable, name: String, val taskType: Tas
 
 internal val JThread.taskType get() = (this as? TaskTypeThread)?.taskType
 
+/**
+ * Records the activity of a [TaskQueue] for [TaskMetrics].
+ */
+internal class TaskStats {
+    private val sequence = AtomicLong()
+    private val submitted = AtomicLong()
+    private val rejected = AtomicLong()
+    private val completed = AtomicLong()
+    private val totalWaitNanos = AtomicLong()
+    private val maxWaitNanos = AtomicLong()
+    private val totalRunNanos = AtomicLong()
+    private val maxRunNanos = AtomicLong()
+
+    fun nextSequence(): Long = sequence.getAndIncrement()
+
+    fun recordSubmitted() {
+        submitted.incrementAndGet()
+    }
+
+    fun recordRejected() {
+        rejected.incrementAndGet()
+    }
+
+    fun recordWait(nanos: Long) {
+        totalWaitNanos.addAndGet(nanos)
+        updateMax(maxWaitNanos, nanos)
+    }
+
+    fun recordRun(nanos: Long) {
+        completed.incrementAndGet()
+        totalRunNanos.addAndGet(nanos)
+        updateMax(maxRunNanos, nanos)
+    }
+
+    private fun updateMax(max: AtomicLong, value: Long) {
+        var current = max.get()
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get()
+        }
+    }
+
+    fun snapshot(queueDepth: Int): TaskMetrics {
+        return TaskMetrics(
+            queueDepth,
+            submitted.get(),
+            rejected.get(),
+            completed.get(),
+            TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()),
+            TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+            TimeUnit.NANOSECONDS.toMillis(totalRunNanos.get()),
+            TimeUnit.NANOSECONDS.toMillis(maxRunNanos.get())
+        )
+    }
+}
+
+/**
+ * A task queued with a [TaskPriority], which records how long it waited and ran.
+ */
+internal class PrioritizedTask(
+    private val task: Runnable,
+    private val priority: TaskPriority,
+    private val stats: TaskStats
+) : Runnable, Comparable<PrioritizedTask> {
+
+    private val sequence = stats.nextSequence()
+    private val queuedAt = System.nanoTime()
+
+    override fun run() {
+        val startedAt = System.nanoTime()
+        stats.recordWait(startedAt - queuedAt)
+        try {
+            task.run()
+        } finally {
+            stats.recordRun(System.nanoTime() - startedAt)
+        }
+    }
+
+    override fun compareTo(other: PrioritizedTask): Int {
+        return when {
+            priority != other.priority -> priority.compareTo(other.priority)
+            else -> sequence.compareTo(other.sequence)
+        }
+    }
+}
+
+/**
+ * The work queue of a single-threaded executor, which holds at most [capacity] tasks and
+ * orders them by [TaskPriority] and then by submission order.
+ */
+internal class TaskQueue(
+    private val capacity: Int,
+    val stats: TaskStats = TaskStats()
+) : PriorityBlockingQueue<Runnable>() {
+
+    override fun offer(e: Runnable): Boolean {
+        val task = e as? PrioritizedTask ?: PrioritizedTask(e, TaskPriority.NORMAL, stats)
+        synchronized(this) {
+            return size < capacity && super.offer(task)
+        }
+    }
+
+    override fun remainingCapacity(): Int = maxOf(capacity - size, 0)
+}
+
 internal fun createExecutor(name: String, type: TaskType, keepAlive: Boolean): ExecutorService {
-    val queue: BlockingQueue<Runnable> = LinkedBlockingQueue(TASK_QUEUE_SIZE)
+    val queue = TaskQueue(TASK_QUEUE_SIZE)
     val threadFactory = ThreadFactory { TaskTypeThread(it, name, type) }
 
     // certain executors (error/session/io) should always keep their threads alive, but others
@@ -81,7 +235,10 @@ internal fun createExecutor(name: String, type: TaskType, keepAlive: Boolean): E
         TimeUnit.SECONDS,
         queue,
         threadFactory
-    )
+    ) { task, executor ->
+        queue.stats.recordRejected()
+        throw RejectedExecutionException("Task $task rejected from $executor")
+    }
 }
 
 /**
@@ -132,8 +289,23 @@ class BackgroundTaskService(
 ) {
 
     /**
-     * Submits a task for execution on a single-threaded executor. It is guaranteed that tasks
-     * with the same [TaskType] are executed in the order of submission.
+     * Holds delayed tasks until they are due, when they are handed to the executor for their
+     * [TaskType]. This is only created if a task is ever scheduled.
+     */
+    private val schedulerDelegate = lazy {
+        ScheduledThreadPoolExecutor(
+            THREAD_POOL_SIZE,
+            ThreadFactory { runnable ->
+                JThread(runnable, "Bugsnag Scheduler thread").apply { isDaemon = true }
+            }
+        )
+    }
+    private val scheduler: ScheduledExecutorService by schedulerDelegate
+
+    /**
+     * Submits a task for execution on a single-threaded executor with [TaskPriority.NORMAL].
+     * It is guaranteed that tasks with the same [TaskType] and [TaskPriority] are executed in
+     * the order of submission.
      *
      * The caller is responsible for catching and handling
      * [java.util.concurrent.RejectedExecutionException] if the executor is saturated.
@@ -144,7 +316,7 @@ class BackgroundTaskService(
      */
     @Throws(RejectedExecutionException::class)
     fun submitTask(taskType: TaskType, runnable: Runnable): Future<*> {
-        return submitTask(taskType, Executors.callable(runnable))
+        return submitTask(taskType, TaskPriority.NORMAL, Executors.callable(runnable))
     }
 
     /**
@@ -152,27 +324,119 @@ class BackgroundTaskService(
      */
     @Throws(RejectedExecutionException::class)
     fun <T> submitTask(taskType: TaskType, callable: Callable<T>): Future<T> {
+        return submitTask(taskType, TaskPriority.NORMAL, callable)
+    }
+
+    /**
+     * Submits a task with the given [priority]. Tasks of the same [TaskType] and priority are
+     * executed in the order of submission, but a waiting task may be overtaken by any task of
+     * the same [TaskType] with a higher priority.
+     *
+     * @see [submitTask]
+     */
+    @Throws(RejectedExecutionException::class)
+    fun submitTask(taskType: TaskType, priority: TaskPriority, runnable: Runnable): Future<*> {
+        return submitTask(taskType, priority, Executors.callable(runnable))
+    }
+
+    /**
+     * @see [submitTask]
+     */
+    @Throws(RejectedExecutionException::class)
+    fun <T> submitTask(
+        taskType: TaskType,
+        priority: TaskPriority,
+        callable: Callable<T>
+    ): Future<T> {
         val task = FutureTask(callable)
-        execute(taskType, task)
+        execute(taskType, priority, task)
         return SafeFuture(task, taskType)
     }
 
+    /**
+     * Submits a task for execution after [delayMs] milliseconds. When the delay has elapsed the
+     * task is run on the same executor as tasks passed to [submitTask] with the given [TaskType].
+     * The returned [Future] can be used to cancel the task before it is run.
+     *
+     * Scheduled tasks are discarded if the service is shutdown before they are due.
+     */
+    @Throws(RejectedExecutionException::class)
+    fun scheduleTask(taskType: TaskType, delayMs: Long, runnable: Runnable): Future<*> {
+        return scheduleTask(taskType, TaskPriority.NORMAL, delayMs, runnable)
+    }
+
+    /**
+     * Schedules a task which is run with the given [priority] once it is due.
+     *
+     * @see [scheduleTask]
+     */
+    @Throws(RejectedExecutionException::class)
+    fun scheduleTask(
+        taskType: TaskType,
+        priority: TaskPriority,
+        delayMs: Long,
+        runnable: Runnable
+    ): Future<*> {
+        return scheduler.schedule(
+            Runnable {
+                try {
+                    execute(taskType, priority, runnable)
+                } catch (ignored: RejectedExecutionException) {
+                    // the executor has been shutdown or is saturated, the task is dropped
+                }
+            },
+            delayMs,
+            TimeUnit.MILLISECONDS
+        )
+    }
+
     fun execute(taskType: TaskType, task: Runnable) {
-        when (taskType) {
-            TaskType.ERROR_REQUEST -> errorExecutor.execute(task)
-            TaskType.SESSION_REQUEST -> sessionExecutor.execute(task)
-            TaskType.IO -> ioExecutor.execute(task)
-            TaskType.INTERNAL_REPORT -> internalReportExecutor.execute(task)
-            TaskType.DEFAULT -> defaultExecutor.execute(task)
+        execute(taskType, TaskPriority.NORMAL, task)
+    }
+
+    fun execute(taskType: TaskType, priority: TaskPriority, task: Runnable) {
+        val executor = executorFor(taskType)
+        val stats = executor.taskQueue?.stats
+        if (stats == null) {
+            executor.execute(task)
+        } else {
+            executor.execute(PrioritizedTask(task, priority, stats))
+            stats.recordSubmitted()
         }
     }
 
+    /**
+     * Returns a snapshot of the activity of the executor for [taskType], or null if the
+     * executor does not record it.
+     */
+    fun getTaskMetrics(taskType: TaskType): TaskMetrics? {
+        val queue = executorFor(taskType).taskQueue ?: return null
+        return queue.stats.snapshot(queue.size)
+    }
+
+    private fun executorFor(taskType: TaskType): ExecutorService {
+        return when (taskType) {
+            TaskType.ERROR_REQUEST -> errorExecutor
+            TaskType.SESSION_REQUEST -> sessionExecutor
+            TaskType.IO -> ioExecutor
+            TaskType.INTERNAL_REPORT -> internalReportExecutor
+            TaskType.DEFAULT -> defaultExecutor
+        }
+    }
+
+    private val ExecutorService.taskQueue: TaskQueue?
+        get() = (this as? ThreadPoolExecutor)?.queue as? TaskQueue
+
     /**
      * Notifies the background service that the process is about to terminate. This causes it to
      * shutdown submission of tasks to executors, while allowing for in-flight tasks
      * to be completed within a reasonable grace period.
      */
     fun shutdown() {
+        if (schedulerDelegate.isInitialized()) {
+            scheduler.shutdownNow()
+        }
+
         // don't wait for existing tasks to complete for these executors, as they are
         // less essential
         internalReportExecutor.shutdownNow()
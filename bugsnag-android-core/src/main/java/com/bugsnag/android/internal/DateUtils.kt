@@ -25,6 +25,14 @@ object DateUtils {
         return iso8601Format.format(date)
     }
 
+    /**
+     * Formats a timestamp in milliseconds since the epoch, without allocating a [Date].
+     */
+    @JvmStatic
+    fun toIso8601(timestamp: Long): String {
+        return iso8601Format.format(timestamp)
+    }
+
     @JvmStatic
     fun fromIso8601(date: String): Date {
         return try {
@@ -53,12 +53,16 @@ data class ImmutableConfig(
     val maxBreadcrumbs: Int,
     val maxPersistedEvents: Int,
     val maxPersistedSessions: Int,
+    val maxEventsPerRequest: Int,
+    val maxSessionsPerRequest: Int,
     val maxReportedThreads: Int,
     val maxStringValueLength: Int,
     val threadCollectionTimeLimitMillis: Long,
     val persistenceDirectory: Lazy<File>,
     val sendLaunchCrashesSynchronously: Boolean,
     val attemptDeliveryOnCrash: Boolean,
+    val compressPayloads: Boolean,
+    val journalNativeCrashes: Boolean,
     val generateAnonymousId: Boolean,
 
     // results cached here to avoid unnecessary lookups in Client.
@@ -67,13 +71,18 @@ data class ImmutableConfig(
     val redactedKeys: Collection<Pattern>
 ) {
 
+    /**
+     * Classifies stackframes as in-project using [projectPackages]
+     */
+    val projectPackageMatcher: ProjectPackageMatcher = ProjectPackageMatcher(projectPackages)
+
     @JvmName("getErrorApiDeliveryParams")
     internal fun getErrorApiDeliveryParams(payload: EventPayload) =
-        DeliveryParams(endpoints.notify, errorApiHeaders(payload))
+        DeliveryParams(endpoints.notify, errorApiHeaders(payload), compressPayloads)
 
     @JvmName("getSessionApiDeliveryParams")
     internal fun getSessionApiDeliveryParams(session: Session) =
-        DeliveryParams(endpoints.sessions, sessionApiHeaders(session.apiKey))
+        DeliveryParams(endpoints.sessions, sessionApiHeaders(session.apiKey), compressPayloads)
 
     /**
      * Returns whether the given throwable should be discarded
@@ -175,6 +184,8 @@ internal fun convertToImmutableConfig(
         maxBreadcrumbs = config.maxBreadcrumbs,
         maxPersistedEvents = config.maxPersistedEvents,
         maxPersistedSessions = config.maxPersistedSessions,
+        maxEventsPerRequest = config.maxEventsPerRequest,
+        maxSessionsPerRequest = config.maxSessionsPerRequest,
         maxReportedThreads = config.maxReportedThreads,
         maxStringValueLength = config.maxStringValueLength,
         threadCollectionTimeLimitMillis = config.threadCollectionTimeLimitMillis,
@@ -183,6 +194,8 @@ internal fun convertToImmutableConfig(
         persistenceDirectory = persistenceDir,
         sendLaunchCrashesSynchronously = config.sendLaunchCrashesSynchronously,
         attemptDeliveryOnCrash = config.isAttemptDeliveryOnCrash,
+        compressPayloads = config.isCompressPayloads,
+        journalNativeCrashes = config.isJournalNativeCrashes,
         packageInfo = packageInfo,
         appInfo = appInfo,
         redactedKeys = config.redactedKeys.toSet()
@@ -20,6 +20,8 @@ interface InternalMetrics {
     fun setMetadataTrimMetrics(stringsTrimmed: Int, charsRemoved: Int)
 
     fun setBreadcrumbTrimMetrics(breadcrumbsRemoved: Int, bytesRemoved: Int)
+
+    fun setThreadTrimMetrics(threadsRemoved: Int)
 }
 
 internal data class TrimMetrics(
@@ -9,6 +9,7 @@ class InternalMetricsImpl(source: Map<String, Any>? = null) : InternalMetrics {
     private var metadataCharsTruncatedCount = 0
     private var breadcrumbsRemovedCount = 0
     private var breadcrumbBytesRemovedCount = 0
+    private var threadsRemovedCount = 0
 
     init {
         if (source != null) {
@@ -23,6 +24,7 @@ class InternalMetricsImpl(source: Map<String, Any>? = null) : InternalMetrics {
                 metadataCharsTruncatedCount = (system["stringCharsTruncated"] as Number?)?.toInt() ?: 0
                 breadcrumbsRemovedCount = (system["breadcrumbsRemovedCount"] as Number?)?.toInt() ?: 0
                 breadcrumbBytesRemovedCount = (system["breadcrumbBytesRemoved"] as Number?)?.toInt() ?: 0
+                threadsRemovedCount = (system["threadsRemoved"] as Number?)?.toInt() ?: 0
             }
         } else {
             configDifferences = hashMapOf()
@@ -38,6 +40,7 @@ class InternalMetricsImpl(source: Map<String, Any>? = null) : InternalMetrics {
             if (metadataCharsTruncatedCount > 0) "stringCharsTruncated" to metadataCharsTruncatedCount else null,
             if (breadcrumbsRemovedCount > 0) "breadcrumbsRemoved" to breadcrumbsRemovedCount else null,
             if (breadcrumbBytesRemovedCount > 0) "breadcrumbBytesRemoved" to breadcrumbBytesRemovedCount else null,
+            if (threadsRemovedCount > 0) "threadsRemoved" to threadsRemovedCount else null,
         ).toMap()
 
         return listOfNotNull(
@@ -108,4 +111,8 @@ class InternalMetricsImpl(source: Map<String, Any>? = null) : InternalMetrics {
         breadcrumbsRemovedCount = breadcrumbsRemoved
         breadcrumbBytesRemovedCount = bytesRemoved
     }
+
+    override fun setThreadTrimMetrics(threadsRemoved: Int) {
+        threadsRemovedCount = threadsRemoved
+    }
 }
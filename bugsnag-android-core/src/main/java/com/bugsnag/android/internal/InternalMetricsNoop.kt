@@ -8,4 +8,5 @@ class InternalMetricsNoop : InternalMetrics {
     override fun notifyRemoveCallback(callback: String) = Unit
     override fun setMetadataTrimMetrics(stringsTrimmed: Int, charsRemoved: Int) = Unit
     override fun setBreadcrumbTrimMetrics(breadcrumbsRemoved: Int, bytesRemoved: Int) = Unit
+    override fun setThreadTrimMetrics(threadsRemoved: Int) = Unit
 }
@@ -1,5 +1,6 @@
 package com.bugsnag.android.internal
 
+import com.bugsnag.android.JsonStream
 import java.io.InputStream
 
 /**
@@ -8,10 +9,27 @@ import java.io.InputStream
  * `Double` depending on their format. Directly decodes UTF-8 from `InputStream` to avoid the
  * overheads associated with `Charset` and `Reader` implementations, and as such as no
  * "charset" parameter.
+ *
+ * The input is read in chunks into a reusable buffer, so there is no need to wrap the
+ * `InputStream` in a `BufferedInputStream`. Runs of plain ASCII within a string are copied
+ * straight out of the buffer, and short object keys are shared between documents.
+ *
+ * Documents can also be streamed straight to a [JsonStream] with [mergeTo], without building
+ * any collections for them.
  */
 internal class JsonCollectionParser(private val input: InputStream) {
     private var current = -1
-    private var position = 0L
+
+    private val buffer = ByteArray(BUFFER_SIZE)
+    private var bufferPos = 0
+    private var bufferLimit = 0
+    private var bufferOffset = 0L
+
+    /**
+     * The 1-based position of [current] in the input, used for error messages
+     */
+    private val position: Long
+        get() = bufferOffset + bufferPos
 
     /**
      * Reusable StringBuilder for building strings, so that we avoid creating new
@@ -24,11 +42,27 @@ internal class JsonCollectionParser(private val input: InputStream) {
     }
 
     private fun advance(): Int {
-        current = input.read()
-        if (current != -1) position++
+        if (bufferPos >= bufferLimit && !fillBuffer()) {
+            current = -1
+            return current
+        }
+        current = buffer[bufferPos++].toInt() and 0xFF
         return current
     }
 
+    private fun fillBuffer(): Boolean {
+        bufferOffset += bufferLimit
+        bufferPos = 0
+        bufferLimit = 0
+
+        val count = input.read(buffer)
+        if (count <= 0) {
+            return false
+        }
+        bufferLimit = count
+        return true
+    }
+
     private fun readUtf8Char(): Int {
         if (current == -1) return -1
 
@@ -99,12 +133,39 @@ internal class JsonCollectionParser(private val input: InputStream) {
         advance()
     }
 
-    private fun parseString(): String {
+    private fun parseString(isKey: Boolean = false): String {
         expect('"'.code)
         stringBuilder.clear()
 
-        while (current != -1 && current != '"'.code) {
-            if (current == '\\'.code) {
+        while (current != -1) {
+            // copy any run of plain ASCII directly from the buffer, current is its first byte
+            val start = bufferPos - 1
+            var end = start
+            while (end < bufferLimit && !ASCII_STRING_END[buffer[end].toInt() and 0xFF]) {
+                end++
+            }
+
+            if (end > start) {
+                if (stringBuilder.isEmpty() && end < bufferLimit && buffer[end] == QUOTE) {
+                    // the whole string is ASCII, so it can be decoded without copying
+                    val str = if (isKey) keyString(start, end) else asciiString(start, end)
+                    bufferPos = end
+                    advance()
+                    expect('"'.code)
+                    return str
+                }
+
+                for (i in start until end) {
+                    stringBuilder.append(buffer[i].toInt().toChar())
+                }
+                bufferPos = end
+                advance()
+                continue
+            }
+
+            if (current == '"'.code) {
+                break
+            } else if (current == '\\'.code) {
                 advance()
                 if (current == -1 || current >= CHAR_LOOKUP_TABLE_SIZE || !VALID_ESCAPES[current]) {
                     throw JsonParseException("Invalid escape sequence at position $position")
@@ -146,6 +207,41 @@ internal class JsonCollectionParser(private val input: InputStream) {
         return stringBuilder.toString()
     }
 
+    private fun asciiString(start: Int, end: Int) =
+        String(buffer, start, end - start, Charsets.ISO_8859_1)
+
+    /**
+     * Returns a previously decoded key if it has the same bytes, so that the same keys
+     * (which are repeated in every stackframe, thread, breadcrumb, etc.) are only decoded once.
+     */
+    private fun keyString(start: Int, end: Int): String {
+        val length = end - start
+        if (length > MAX_CACHED_KEY_LENGTH) {
+            return asciiString(start, end)
+        }
+
+        var hash = 0
+        for (i in start until end) {
+            hash = 31 * hash + buffer[i]
+        }
+        val index = hash and (KEY_CACHE_SIZE - 1)
+
+        val cached = KEY_CACHE[index]
+        if (cached != null && cached.length == length && matchesBuffer(cached, start)) {
+            return cached
+        }
+        return asciiString(start, end).also { KEY_CACHE[index] = it }
+    }
+
+    private fun matchesBuffer(str: String, start: Int): Boolean {
+        for (i in str.indices) {
+            if (str[i].code != buffer[start + i].toInt()) {
+                return false
+            }
+        }
+        return true
+    }
+
     private fun parseNumber(): Number {
         /*
          * Implementation note: we use a StringBuilder to build the number as a string,
@@ -161,8 +257,14 @@ internal class JsonCollectionParser(private val input: InputStream) {
         // Track if this is has a decimal point or exponent
         var isDouble = false
 
+        // integers which cannot overflow are accumulated directly, skipping the String
+        var longValue = 0L
+        var digitCount = 0
+        var isNegative = false
+
         // Handle negative sign
         if (current == '-'.code) {
+            isNegative = true
             stringBuilder.append('-')
             advance()
         }
@@ -173,7 +275,9 @@ internal class JsonCollectionParser(private val input: InputStream) {
             advance()
         } else if (isDigit(current)) {
             do {
-                stringBuilder.appendCodePoint(current)
+                longValue = longValue * 10 + (current - '0'.code)
+                digitCount++
+                stringBuilder.append(current.toChar())
                 advance()
             } while (isDigit(current))
         } else {
@@ -220,6 +324,10 @@ internal class JsonCollectionParser(private val input: InputStream) {
             } while (isDigit(current))
         }
 
+        if (!isDouble && digitCount <= MAX_FAST_LONG_DIGITS) {
+            return if (isNegative) -longValue else longValue
+        }
+
         // Parse the complete string
         val numStr = stringBuilder.toString()
         return if (isDouble) {
@@ -298,7 +406,7 @@ internal class JsonCollectionParser(private val input: InputStream) {
                 throw JsonParseException("Expected string key at position $position")
             }
 
-            val key = parseString()
+            val key = parseString(isKey = true)
             skipWhitespace()
             expect(':'.code)
             skipWhitespace()
@@ -369,7 +477,146 @@ internal class JsonCollectionParser(private val input: InputStream) {
         return result
     }
 
+    /**
+     * Writes the JSON object being parsed to [writer] as it is parsed, deep-merging [overlay]
+     * into it: nested objects are merged, arrays have the overlay's elements appended, and any
+     * other overlay value replaces the parsed one. This produces the same JSON as parsing the
+     * whole document, merging the collections and serializing the result, but only holds the
+     * current nesting in memory.
+     */
+    fun mergeTo(writer: JsonStream, overlay: Map<String, Any?>) {
+        skipWhitespace()
+        if (current != '{'.code) {
+            throw JsonParseException("Expected '{' at position $position")
+        }
+        copyObject(writer, overlay)
+        skipWhitespace()
+        if (current != -1) {
+            throw JsonParseException("Unexpected content after JSON at position $position")
+        }
+    }
+
+    private fun copyValue(writer: JsonStream) {
+        skipWhitespace()
+        when (current) {
+            '{'.code -> copyObject(writer, null)
+            '['.code -> copyArray(writer, null)
+            else -> writer.value(parseValue())
+        }
+    }
+
+    private fun copyArray(writer: JsonStream, appended: Collection<*>?) {
+        expect('['.code)
+        skipWhitespace()
+        writer.beginArray()
+
+        if (current != ']'.code) {
+            while (true) {
+                copyValue(writer)
+                skipWhitespace()
+
+                when (current) {
+                    ','.code -> {
+                        advance()
+                        skipWhitespace()
+                    }
+
+                    ']'.code -> break
+                    else -> throw JsonParseException("Expected ',' or ']' at position $position")
+                }
+            }
+        }
+        advance()
+
+        appended?.forEach { writer.value(it) }
+        writer.endArray()
+    }
+
+    private fun copyObject(writer: JsonStream, overlay: Map<*, *>?) {
+        expect('{'.code)
+        skipWhitespace()
+        writer.beginObject()
+
+        var mergedKeys: MutableSet<String>? = null
+        if (current != '}'.code) {
+            while (true) {
+                if (current != '"'.code) {
+                    throw JsonParseException("Expected string key at position $position")
+                }
+
+                val key = parseString(isKey = true)
+                skipWhitespace()
+                expect(':'.code)
+                skipWhitespace()
+                writer.name(key)
+
+                if (overlay != null && overlay.containsKey(key)) {
+                    val mergedKeySet = mergedKeys ?: HashSet<String>().also { mergedKeys = it }
+                    mergedKeySet.add(key)
+
+                    val value = overlay[key]
+                    when {
+                        value is Map<*, *> && current == '{'.code -> copyObject(writer, value)
+                        value is Collection<*> && current == '['.code -> copyArray(writer, value)
+                        else -> {
+                            parseValue() // replaced by the overlay
+                            writer.value(value)
+                        }
+                    }
+                } else {
+                    copyValue(writer)
+                }
+                skipWhitespace()
+
+                when (current) {
+                    ','.code -> {
+                        advance()
+                        skipWhitespace()
+                    }
+
+                    '}'.code -> break
+                    else -> throw JsonParseException("Expected ',' or '}' at position $position")
+                }
+            }
+        }
+        advance()
+
+        overlay?.forEach { (key, value) ->
+            if (mergedKeys?.contains(key) != true) {
+                writer.name(key as String).value(value)
+            }
+        }
+        writer.endObject()
+    }
+
     internal companion object {
+        private const val BUFFER_SIZE = 8192
+        private const val QUOTE = '"'.code.toByte()
+
+        /**
+         * Any integer with this many digits fits in a Long
+         */
+        private const val MAX_FAST_LONG_DIGITS = 18
+
+        private const val KEY_CACHE_SIZE = 512
+        private const val MAX_CACHED_KEY_LENGTH = 32
+
+        /**
+         * Recently decoded object keys, shared by all parsers. Strings are immutable and safely
+         * published, so a race between parsers can at worst replace an entry.
+         */
+        private val KEY_CACHE = arrayOfNulls<String>(KEY_CACHE_SIZE)
+
+        /**
+         * Bytes which end a run of plain ASCII in a string: quotes, escapes and the start of
+         * any multi-byte UTF-8 sequence
+         */
+        private val ASCII_STRING_END = BooleanArray(256).apply {
+            this['"'.code] = true
+            this['\\'.code] = true
+            fill(true, 0x80, 256)
+        }
+
         /**
          * Our lookup table size is 128 covering all ASCII characters.
          * This allows us to quickly check for whitespace and valid escape characters.
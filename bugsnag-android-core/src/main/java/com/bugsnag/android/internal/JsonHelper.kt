@@ -8,14 +8,13 @@ import java.io.FileOutputStream
 import java.io.IOException
 import java.io.InputStream
 import java.io.OutputStream
-import java.io.PrintWriter
 
 internal object JsonHelper {
 
     fun serialize(streamable: JsonStream.Streamable): ByteArray {
         return ByteArrayOutputStream().use { baos ->
-            PrintWriter(baos).use { pw ->
-                JsonStream(pw).use(streamable::toStream)
+            baos.bufferedWriter().use { writer ->
+                JsonStream(writer, baos).use(streamable::toStream)
                 baos.toByteArray()
             }
         }
@@ -75,6 +74,18 @@ internal object JsonHelper {
         }
     }
 
+    /**
+     * Returns a [JsonStream.Streamable] which writes the JSON object in [data] with [overlay]
+     * deep-merged into it, parsing [data] as it is written rather than deserializing it.
+     */
+    fun merge(data: ByteArray, overlay: Map<String, Any?>): JsonStream.Streamable {
+        return object : JsonStream.Streamable {
+            override fun toStream(writer: JsonStream) {
+                JsonCollectionParser(ByteArrayInputStream(data)).mergeTo(writer, overlay)
+            }
+        }
+    }
+
     /**
      * Convert a long that technically contains an unsigned long value into its (unsigned) hex string equivalent.
      * Negative values are interpreted as if the sign bit is the high bit of an unsigned integer.
@@ -0,0 +1,50 @@
+package com.bugsnag.android.internal
+
+/**
+ * Decides whether a class is part of the app's project, by checking whether its name starts
+ * with any of the configured `projectPackages`.
+ *
+ * Any package which starts with another package is redundant, so only the shortest prefixes are
+ * kept, sorted. If a class name starts with one of these prefixes then that prefix is the
+ * greatest one which sorts before the class name, so each lookup is a single binary search
+ * regardless of how many packages are configured.
+ */
+class ProjectPackageMatcher(projectPackages: Collection<String>) {
+
+    private val prefixes: Array<String> = run {
+        val sorted = projectPackages.toSortedSet()
+        val kept = ArrayList<String>(sorted.size)
+        sorted.forEach { pkg ->
+            // sorted order means any prefix of pkg is already in the list, and is the last one
+            if (kept.isEmpty() || !pkg.startsWith(kept.last())) {
+                kept.add(pkg)
+            }
+        }
+        kept.toTypedArray()
+    }
+
+    fun isInProject(className: String): Boolean {
+        var low = 0
+        var high = prefixes.size - 1
+        var floor = -1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val cmp = prefixes[mid].compareTo(className)
+            when {
+                cmp == 0 -> return true
+                cmp < 0 -> {
+                    floor = mid
+                    low = mid + 1
+                }
+                else -> high = mid - 1
+            }
+        }
+        return floor >= 0 && className.startsWith(prefixes[floor])
+    }
+
+    /**
+     * Returns the value for [com.bugsnag.android.Stackframe.inProject] of a frame from
+     * [className]: `true` if it is in the project and `null` otherwise.
+     */
+    fun inProject(className: String): Boolean? = if (isInProject(className)) true else null
+}
@@ -11,6 +11,18 @@ import java.util.concurrent.CopyOnWriteArrayList
 
 internal object StringUtils {
     private const val trimMessageLength = "***<9> CHARS TRUNCATED***".length
+    private const val maxTrimMessageLength = "***<2147483647> CHARS TRUNCATED***".length
+
+    /**
+     * Returns a lower bound for the number of encoded bytes removed by trimming strings, as
+     * reported by [trimMetrics]. Each trimmed string has its excess characters replaced by a
+     * truncation message, and every character removed encodes to at least one byte.
+     */
+    fun minBytesTrimmed(trimMetrics: TrimMetrics): Long {
+        val bytesTrimmed = trimMetrics.dataTrimmed.toLong() -
+            trimMetrics.itemsTrimmed.toLong() * maxTrimMessageLength
+        return maxOf(bytesTrimmed, 0L)
+    }
 
     fun stringTrimmedTo(maxLength: Int, str: String): String {
         val excessCharCount = str.length - maxLength
@@ -300,4 +300,52 @@ class BreadcrumbStateTest {
 
         assertEquals(25, breadcrumbState.copy().size)
     }
+
+    /**
+     * Verifies that a writer which is delayed until a newer breadcrumb has been stored in its
+     * slot does not overwrite the newer breadcrumb
+     */
+    @Test
+    fun testDelayedWriterDoesNotOverwriteNewerBreadcrumb() {
+        breadcrumbState = BreadcrumbState(2, CallbackState(), NoopLogger)
+        repeat(3) { count ->
+            breadcrumbState.add(Breadcrumb("$count", NoopLogger))
+        }
+
+        // the writer of breadcrumb 0 publishes after breadcrumb 2 has replaced it
+        breadcrumbState.publish(0, Breadcrumb("stale", NoopLogger))
+
+        assertEquals(listOf("1", "2"), breadcrumbState.copy().map { it.message })
+    }
+
+    /**
+     * Verifies that copies taken while other threads add breadcrumbs only contain completed
+     * breadcrumbs, in the order they were added
+     */
+    @Test
+    fun testCopyDuringConcurrentAdds() {
+        breadcrumbState = BreadcrumbState(25, CallbackState(), NoopLogger)
+        val writers = List(4) { writer ->
+            Thread {
+                repeat(5000) { count ->
+                    breadcrumbState.add(Breadcrumb("$writer:$count", NoopLogger))
+                }
+            }
+        }
+        writers.forEach { it.start() }
+
+        while (writers.any { it.isAlive }) {
+            val copy = breadcrumbState.copy()
+            assertTrue(copy.size <= 25)
+            assertEquals(copy.size, copy.toSet().size)
+
+            // breadcrumbs left by the same writer must appear in the order they were added
+            copy.groupBy { it.message.substringBefore(':') }.values.forEach { crumbs ->
+                val counts = crumbs.map { it.message.substringAfter(':').toInt() }
+                assertEquals(counts.sorted(), counts)
+            }
+        }
+        writers.forEach { it.join() }
+        assertEquals(25, breadcrumbState.copy().size)
+    }
 }
@@ -190,6 +190,44 @@ public class ConfigurationFacadeTest {
         assertEquals(32, config.impl.getMaxPersistedEvents());
     }
 
+    @Test
+    public void maxEventsPerRequestValid() {
+        config.setMaxEventsPerRequest(10);
+        assertEquals(10, config.impl.getMaxEventsPerRequest());
+    }
+
+    @Test
+    public void maxEventsPerRequestInvalid() {
+        config.setMaxEventsPerRequest(0);
+        assertEquals(1, config.impl.getMaxEventsPerRequest());
+    }
+
+    @Test
+    public void compressPayloads() {
+        assertFalse(config.impl.getCompressPayloads());
+        config.setCompressPayloads(true);
+        assertTrue(config.impl.getCompressPayloads());
+    }
+
+    @Test
+    public void journalNativeCrashes() {
+        assertFalse(config.impl.getJournalNativeCrashes());
+        config.setJournalNativeCrashes(true);
+        assertTrue(config.impl.getJournalNativeCrashes());
+    }
+
+    @Test
+    public void maxSessionsPerRequestValid() {
+        config.setMaxSessionsPerRequest(10);
+        assertEquals(10, config.impl.getMaxSessionsPerRequest());
+    }
+
+    @Test
+    public void maxSessionsPerRequestInvalid() {
+        config.setMaxSessionsPerRequest(0);
+        assertEquals(1, config.impl.getMaxSessionsPerRequest());
+    }
+
     @Test
     public void maxPersistedSessionsValid() {
         config.setMaxPersistedSessions(55);
@@ -0,0 +1,94 @@
+package com.bugsnag.android
+
+import com.bugsnag.android.BugsnagTestUtils.generateConfiguration
+import com.bugsnag.android.BugsnagTestUtils.generateEvent
+import com.bugsnag.android.internal.convertToImmutableConfig
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.net.InetSocketAddress
+import java.util.zip.GZIPInputStream
+
+/**
+ * Verifies that DefaultDelivery sends gzip compressed payloads when compressPayloads is enabled.
+ */
+class DefaultDeliveryCompressionTest {
+
+    private lateinit var server: HttpServer
+    private val requests = mutableListOf<ReceivedRequest>()
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/") { exchange ->
+            synchronized(requests) {
+                requests.add(
+                    ReceivedRequest(
+                        exchange.requestHeaders.getFirst(HEADER_CONTENT_ENCODING),
+                        exchange.requestHeaders.getFirst(HEADER_BUGSNAG_INTEGRITY),
+                        exchange.requestBody.readBytes()
+                    )
+                )
+            }
+            exchange.sendResponseHeaders(202, -1)
+            exchange.close()
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun compressedEventPayload() {
+        val payload = createPayload()
+        val json = payload.toByteArray()
+
+        val status = DefaultDelivery(null, NoopLogger).deliver(payload, deliveryParams(true))
+        assertEquals(DeliveryStatus.DELIVERED, status)
+
+        val request = requests.single()
+        assertEquals("gzip", request.contentEncoding)
+        assertTrue(request.body.size < json.size)
+        assertArrayEquals(json, GZIPInputStream(request.body.inputStream()).readBytes())
+        assertEquals(computeIntegrityHeader(request.body), request.integrity)
+    }
+
+    @Test
+    fun uncompressedEventPayload() {
+        val payload = createPayload()
+        val json = payload.toByteArray()
+
+        val status = DefaultDelivery(null, NoopLogger).deliver(payload, deliveryParams(false))
+        assertEquals(DeliveryStatus.DELIVERED, status)
+
+        val request = requests.single()
+        assertNull(request.contentEncoding)
+        assertArrayEquals(json, request.body)
+        assertEquals(computeIntegrityHeader(json), request.integrity)
+    }
+
+    private fun createPayload(): EventPayload {
+        val config = convertToImmutableConfig(generateConfiguration())
+        return EventPayload(config.apiKey, generateEvent(), null, Notifier(), config)
+    }
+
+    private fun deliveryParams(compressPayloads: Boolean) = DeliveryParams(
+        "http://127.0.0.1:${server.address.port}/",
+        mapOf("Bugsnag-Api-Key" to "5d1ec5bd39a74caa1267142706a7fb21"),
+        compressPayloads
+    )
+
+    private class ReceivedRequest(
+        val contentEncoding: String?,
+        val integrity: String?,
+        val body: ByteArray
+    )
+}
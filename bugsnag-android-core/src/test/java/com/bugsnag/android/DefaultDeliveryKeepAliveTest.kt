@@ -0,0 +1,128 @@
+package com.bugsnag.android
+
+import com.bugsnag.android.BugsnagTestUtils.generateConfiguration
+import com.bugsnag.android.BugsnagTestUtils.generateEvent
+import com.bugsnag.android.internal.convertToImmutableConfig
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.verify
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.SequenceInputStream
+import java.net.HttpURLConnection
+import java.net.InetSocketAddress
+
+/**
+ * Verifies that DefaultDelivery drains responses so that connections are reused between requests.
+ */
+class DefaultDeliveryKeepAliveTest {
+
+    private lateinit var server: HttpServer
+    private val clientPorts = mutableListOf<Int>()
+    private var responseCode = 202
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/") { exchange ->
+            exchange.requestBody.readBytes()
+            synchronized(clientPorts) {
+                clientPorts.add(exchange.remoteAddress.port)
+            }
+            val body = "{\"status\":$responseCode}".toByteArray()
+            if (responseCode == 429) {
+                exchange.responseHeaders.add("Retry-After", "120")
+            }
+            exchange.sendResponseHeaders(responseCode, body.size.toLong())
+            exchange.responseBody.use { it.write(body) }
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun connectionReusedForDeliveredPayloads() {
+        val delivery = DefaultDelivery(null, NoopLogger)
+        repeat(3) {
+            val status = delivery.deliver(createPayload(), deliveryParams())
+            assertEquals(DeliveryStatus.DELIVERED, status)
+        }
+        assertEquals(3, clientPorts.size)
+        assertEquals(1, clientPorts.toSet().size)
+    }
+
+    @Test
+    fun connectionReusedAfterErrorResponse() {
+        val delivery = DefaultDelivery(null, NoopLogger)
+        responseCode = 400
+        assertEquals(DeliveryStatus.FAILURE, delivery.deliver(createPayload(), deliveryParams()))
+        responseCode = 202
+        assertEquals(DeliveryStatus.DELIVERED, delivery.deliver(createPayload(), deliveryParams()))
+        assertEquals(1, clientPorts.toSet().size)
+    }
+
+    @Test
+    fun retryAfterRecordedForRateLimitedRequests() {
+        val delivery = DefaultDelivery(null, NoopLogger)
+        val params = deliveryParams()
+        responseCode = 429
+        assertEquals(DeliveryStatus.UNDELIVERED, delivery.deliver(createPayload(), params))
+        assertEquals(120_000L, delivery.takeRetryAfter(params.endpoint))
+        assertNull(delivery.takeRetryAfter(params.endpoint))
+    }
+
+    @Test
+    fun partiallyReadResponseNotReused() {
+        val conn = mock(HttpURLConnection::class.java)
+        `when`(conn.inputStream).thenReturn(
+            SequenceInputStream(
+                ByteArrayInputStream("{\"status\":".toByteArray()),
+                object : InputStream() {
+                    override fun read(): Int = throw IOException("connection reset")
+                }
+            )
+        )
+
+        // a 2xx response has no error stream, so only a fully read input stream can be reused
+        assertFalse(DefaultDelivery(null, NoopLogger).readResponse(202, conn))
+    }
+
+    @Test
+    fun fullyReadResponseReused() {
+        val conn = mock(HttpURLConnection::class.java)
+        `when`(conn.inputStream).thenReturn(ByteArrayInputStream("{}".toByteArray()))
+        assertTrue(DefaultDelivery(null, NoopLogger).readResponse(202, conn))
+    }
+
+    @Test
+    fun errorResponseReadFromErrorStream() {
+        val conn = mock(HttpURLConnection::class.java)
+        `when`(conn.errorStream).thenReturn(ByteArrayInputStream("{}".toByteArray()))
+        assertTrue(DefaultDelivery(null, NoopLogger).readResponse(400, conn))
+        verify(conn, never()).inputStream
+    }
+
+    private fun createPayload(): EventPayload {
+        val config = convertToImmutableConfig(generateConfiguration())
+        return EventPayload(config.apiKey, generateEvent(), null, Notifier(), config)
+    }
+
+    private fun deliveryParams() = DeliveryParams(
+        "http://127.0.0.1:${server.address.port}/",
+        mapOf("Bugsnag-Api-Key" to "5d1ec5bd39a74caa1267142706a7fb21")
+    )
+}
@@ -0,0 +1,178 @@
+package com.bugsnag.android
+
+import com.bugsnag.android.DeliveryRetryScheduler.Companion.BASE_BACKOFF_MS
+import com.bugsnag.android.DeliveryRetryScheduler.Companion.CIRCUIT_BREAKER_COOL_DOWN_MS
+import com.bugsnag.android.DeliveryRetryScheduler.Companion.CIRCUIT_BREAKER_THRESHOLD
+import com.bugsnag.android.internal.BackgroundTaskService
+import com.bugsnag.android.internal.TaskPriority
+import com.bugsnag.android.internal.TaskType
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentCaptor
+import org.mockito.ArgumentMatchers.any
+import org.mockito.ArgumentMatchers.anyLong
+import org.mockito.ArgumentMatchers.eq
+import org.mockito.Mock
+import org.mockito.Mockito.lenient
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.junit.MockitoJUnitRunner
+import java.io.File
+import java.util.Random
+import java.util.concurrent.Future
+
+@RunWith(MockitoJUnitRunner::class)
+class DeliveryRetrySchedulerTest {
+
+    @Mock
+    lateinit var bgTaskService: BackgroundTaskService
+
+    @Mock
+    lateinit var future: Future<*>
+
+    private val endpoint = "https://notify.example.com"
+    private val files = listOf(File("a.json"), File("b.json"), File("c.json"))
+    private val delivery = DefaultDelivery(null, NoopLogger)
+    private var now = 0L
+    private var retries = 0
+    private lateinit var scheduler: DeliveryRetryScheduler
+
+    @Before
+    fun setUp() {
+        lenient().`when`(bgTaskService.scheduleTask(any(), any(), anyLong(), any())).thenReturn(future)
+        scheduler = DeliveryRetryScheduler(
+            bgTaskService,
+            TaskType.ERROR_REQUEST,
+            delivery,
+            Runnable { retries++ },
+            { now },
+            Random(0)
+        )
+    }
+
+    private fun createScheduler(connectivity: Connectivity) = DeliveryRetryScheduler(
+        bgTaskService,
+        TaskType.ERROR_REQUEST,
+        DefaultDelivery(connectivity, NoopLogger),
+        Runnable { retries++ },
+        { now },
+        Random(0)
+    )
+
+    private class FakeConnectivity(var connected: Boolean) : Connectivity {
+        override fun registerForNetworkChanges() = Unit
+        override fun unregisterForNetworkChanges() = Unit
+        override fun hasNetworkConnection() = connected
+        override fun retrieveNetworkAccessState() = if (connected) "connected" else "none"
+    }
+
+    @Test
+    fun undeliveredFileBacksOff() {
+        scheduler.onUndelivered(listOf(files[0]), endpoint)
+        assertEquals(files.drop(1), scheduler.filterEligible(files))
+        verify(bgTaskService).scheduleTask(
+            eq(TaskType.ERROR_REQUEST),
+            eq(TaskPriority.LOW),
+            anyLong(),
+            any()
+        )
+
+        now += BASE_BACKOFF_MS
+        assertEquals(files, scheduler.filterEligible(files))
+    }
+
+    @Test
+    fun backoffGrowsWithAttempts() {
+        val file = files[0]
+        scheduler.onUndelivered(listOf(file), endpoint)
+        now += BASE_BACKOFF_MS
+        scheduler.onUndelivered(listOf(file), endpoint)
+
+        // the second delay is jittered between 1x and 2x the base delay
+        now += BASE_BACKOFF_MS / 2
+        assertTrue(scheduler.filterEligible(listOf(file)).isEmpty())
+        now += BASE_BACKOFF_MS * 2
+        assertEquals(listOf(file), scheduler.filterEligible(listOf(file)))
+    }
+
+    @Test
+    fun circuitBreakerOpensAfterConsecutiveFailures() {
+        repeat(CIRCUIT_BREAKER_THRESHOLD) {
+            assertTrue(scheduler.canAttemptDelivery())
+            scheduler.onUndelivered(listOf(files[0]), endpoint)
+        }
+        assertFalse(scheduler.canAttemptDelivery())
+        assertTrue(scheduler.filterEligible(files).isEmpty())
+
+        now += CIRCUIT_BREAKER_COOL_DOWN_MS
+        assertTrue(scheduler.canAttemptDelivery())
+
+        // a single failure re-opens the breaker until there is a successful delivery
+        scheduler.onUndelivered(listOf(files[1]), endpoint)
+        assertFalse(scheduler.canAttemptDelivery())
+        scheduler.onDelivered(files[1])
+        assertTrue(scheduler.canAttemptDelivery())
+    }
+
+    @Test
+    fun connectivityHalfOpensCircuitBreaker() {
+        repeat(CIRCUIT_BREAKER_THRESHOLD) {
+            scheduler.onUndelivered(listOf(files[0]), endpoint)
+        }
+        assertFalse(scheduler.canAttemptDelivery())
+
+        scheduler.onConnectivityChanged(false)
+        verify(future).cancel(false)
+        scheduler.onConnectivityChanged(true)
+        assertTrue(scheduler.canAttemptDelivery())
+    }
+
+    @Test
+    fun noBackoffWithoutConnectivity() {
+        scheduler.onConnectivityChanged(false)
+        scheduler.onUndelivered(listOf(files[0]), endpoint)
+        assertEquals(files, scheduler.filterEligible(files))
+        verify(bgTaskService, never()).scheduleTask(any(), any(), anyLong(), any())
+    }
+
+    @Test
+    fun connectionStateSeededFromConnectivity() {
+        val connectivity = FakeConnectivity(false)
+        scheduler = createScheduler(connectivity)
+        scheduler.onUndelivered(listOf(files[0]), endpoint)
+        assertEquals(files, scheduler.filterEligible(files))
+        verify(bgTaskService, never()).scheduleTask(any(), any(), anyLong(), any())
+    }
+
+    @Test
+    fun refusalsWithoutNetworkAreNotFailures() {
+        val connectivity = FakeConnectivity(true)
+        scheduler = createScheduler(connectivity)
+
+        // the connection is lost before the connectivity callback is delivered
+        connectivity.connected = false
+        repeat(CIRCUIT_BREAKER_THRESHOLD) {
+            scheduler.onUndelivered(listOf(files[0]), endpoint)
+        }
+        assertTrue(scheduler.canAttemptDelivery())
+        assertEquals(files, scheduler.filterEligible(files))
+        verify(bgTaskService, never()).scheduleTask(any(), any(), anyLong(), any())
+    }
+
+    @Test
+    fun earliestRetryScheduledOnce() {
+        scheduler.onUndelivered(listOf(files[0]), endpoint)
+        now += 1
+        scheduler.onUndelivered(listOf(files[0]), endpoint)
+
+        val retry = ArgumentCaptor.forClass(Runnable::class.java)
+        verify(bgTaskService, times(1)).scheduleTask(any(), any(), anyLong(), retry.capture())
+        retry.value.run()
+        assertEquals(1, retries)
+    }
+}
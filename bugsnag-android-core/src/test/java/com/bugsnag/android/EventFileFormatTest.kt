@@ -0,0 +1,87 @@
+package com.bugsnag.android
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertThrows
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.file.Files
+
+class EventFileFormatTest {
+
+    private lateinit var file: File
+
+    private val header = EventFileHeader(
+        "5d1ec5bd39a74caa1267142706a7fb21",
+        1504255147933L,
+        setOf(ErrorType.ANDROID, ErrorType.C),
+        Severity.WARNING,
+        unhandled = true,
+        isLaunchCrashReport = false,
+        payloadLength = -1
+    )
+
+    @Before
+    fun setUp() {
+        file = Files.createTempFile("event", ".json").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        file.delete()
+    }
+
+    @Test
+    fun headerRoundTrip() {
+        val json = """{"exceptions":[]}"""
+        FileOutputStream(file).use { out ->
+            val headerSize = EventFileFormat.writeHeader(out, header)
+            assertEquals(header, EventFileFormat.readHeader(file))
+
+            out.write(json.toByteArray())
+            EventFileFormat.completePayload(out, headerSize)
+        }
+
+        val stored = EventFileFormat.readHeader(file)
+        assertEquals(header.copy(payloadLength = json.length.toLong()), stored)
+        assertEquals(json, EventFileFormat.openPayload(file).use { it.reader().readText() })
+        val offset = EventFileFormat.payloadOffset(file).toInt()
+        assertEquals(json, String(file.readBytes().copyOfRange(offset, file.length().toInt())))
+    }
+
+    @Test
+    fun plainJsonFile() {
+        val json = """{"apiKey":"5d1ec5bd39a74caa1267142706a7fb21","events":[]}"""
+        file.writeText(json)
+        assertNull(EventFileFormat.readHeader(file))
+        assertEquals(json, EventFileFormat.openPayload(file).use { it.reader().readText() })
+        assertEquals(0L, EventFileFormat.payloadOffset(file))
+    }
+
+    @Test
+    fun shortPlainJsonFile() {
+        file.writeText("{}")
+        assertNull(EventFileFormat.readHeader(file))
+        assertEquals("{}", EventFileFormat.openPayload(file).use { it.reader().readText() })
+    }
+
+    @Test
+    fun incompleteFile() {
+        FileOutputStream(file).use { out ->
+            EventFileFormat.writeHeader(out, header)
+            out.write("""{"exceptions":[""".toByteArray())
+        }
+
+        assertEquals(-1L, EventFileFormat.readHeader(file)?.payloadLength)
+        assertThrows(IOException::class.java) {
+            EventFileFormat.openPayload(file)
+        }
+        assertThrows(IOException::class.java) {
+            EventFileFormat.payloadOffset(file)
+        }
+    }
+}
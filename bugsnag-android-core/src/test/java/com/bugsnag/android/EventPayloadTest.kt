@@ -1,8 +1,10 @@
 package com.bugsnag.android
 
+import org.junit.Assert.assertArrayEquals
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNotSame
 import org.junit.Test
+import java.io.ByteArrayOutputStream
 
 class EventPayloadTest {
 
@@ -19,4 +21,27 @@ class EventPayloadTest {
         assertEquals(original.url, copy.url)
         assertEquals(original.version, copy.version)
     }
+
+    @Test
+    fun testMeasureMatchesEncodedPayload() {
+        val config = BugsnagTestUtils.generateImmutableConfig()
+        val event = BugsnagTestUtils.generateEvent()
+        val payload = EventPayload("api-key", event, null, Notifier(), config)
+
+        val measurement = payload.measure()
+        val bytes = payload.toByteArray()
+        assertEquals(bytes.size.toLong(), measurement.size)
+        assertEquals(payload.integrityToken, measurement.integrityToken)
+    }
+
+    @Test
+    fun testWriteToMatchesEncodedPayload() {
+        val config = BugsnagTestUtils.generateImmutableConfig()
+        val event = BugsnagTestUtils.generateEvent()
+        val streamed = ByteArrayOutputStream()
+        EventPayload("api-key", event, null, Notifier(), config).writeTo(streamed)
+
+        val bytes = EventPayload("api-key", event, null, Notifier(), config).toByteArray()
+        assertArrayEquals(bytes, streamed.toByteArray())
+    }
 }
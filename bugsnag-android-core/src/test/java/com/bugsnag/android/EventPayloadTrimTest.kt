@@ -1,6 +1,9 @@
 package com.bugsnag.android
 
+import com.bugsnag.android.internal.InternalMetricsImpl
+import com.bugsnag.android.internal.JsonHelper
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.mockito.Mock
@@ -39,6 +42,9 @@ class EventPayloadTrimTest {
             }
         )
 
+        val internalMetrics = InternalMetricsImpl()
+        event.impl.internalMetrics = internalMetrics
+
         val notifier = Notifier(name = "Test Notifier", version = "9.9.9")
         val payload = EventPayload(null, event, null, notifier, config)
         val trimmed = requireNotNull(payload.trimToSize(BIG_STRING_LENGTH).event)
@@ -60,5 +66,73 @@ class EventPayloadTrimTest {
         val breadcrumbs = trimmed.breadcrumbs
         assertEquals(1, breadcrumbs.size)
         assertEquals("Removed, along with 9 older breadcrumbs, to reduce payload size", breadcrumbs[0].message)
+
+        val system = internalMetrics.toJsonableMap()["system"] as Map<*, *>
+        assertEquals(8, system["threadsRemoved"])
+        assertEquals(10, system["breadcrumbsRemoved"])
+    }
+
+    @Test
+    fun testNoTrimWhenUnderLimit() {
+        val event = BugsnagTestUtils.generateEvent()
+        event.breadcrumbs.clear()
+        repeat(times = 10) { breadcrumbIdx ->
+            event.leaveBreadcrumb("breadcrumb $breadcrumbIdx")
+        }
+
+        val config = BugsnagTestUtils.generateImmutableConfig()
+        val payload = EventPayload(null, event, null, Notifier(), config)
+        val expected = payload.measure()
+        val trimmed = requireNotNull(payload.trimToSize().event)
+
+        assertEquals(10, trimmed.breadcrumbs.size)
+        assertEquals(expected.size, payload.toByteArray().size.toLong())
+    }
+
+    @Test
+    fun testUntrimmedPayloadEncodedOnce() {
+        val event = BugsnagTestUtils.generateEvent()
+        val config = BugsnagTestUtils.generateImmutableConfig()
+        val payload = EventPayload(null, event, null, Notifier(), config)
+        payload.trimToSize()
+
+        // the payload encoded while trimming is kept, so a change made afterwards is not seen
+        event.context = "changed after trimming"
+        val json = JsonHelper.deserialize(payload.toByteArray())
+        val events = json["events"] as List<*>
+        assertNotEquals("changed after trimming", (events[0] as Map<*, *>)["context"])
+    }
+
+    @Test
+    fun testStreamingTrimMatchesTrimToSize() {
+        val config = BugsnagTestUtils.generateImmutableConfig(
+            Configuration("abc123").apply {
+                maxReportedThreads = 2
+                maxStringValueLength = MAX_STRING_LENGTH
+            }
+        )
+        val payloads = List(2) {
+            val event = BugsnagTestUtils.generateEvent()
+            event.addMetadata("trimming", "bigString", "*".repeat(BIG_STRING_LENGTH))
+            event.threads.clear()
+            repeat(times = 10) { threadIdx ->
+                event.addThread(threadIdx.toLong(), "test thread $threadIdx")
+            }
+            event.breadcrumbs.clear()
+            repeat(times = 10) { breadcrumbIdx ->
+                event.leaveBreadcrumb("breadcrumb $breadcrumbIdx")
+            }
+            EventPayload(null, event, null, Notifier(), config)
+        }
+
+        val maxSize = payloads[0].measure().size.toInt() - BIG_STRING_LENGTH
+        val trimmed = requireNotNull(payloads[0].trimToSize(maxSize).event)
+        val streamed = requireNotNull(
+            payloads[1].trimToSizeStreaming(withIntegrity = false, maxSizeBytes = maxSize).event
+        )
+
+        assertEquals(3, trimmed.threads.size)
+        assertEquals(trimmed.threads.size, streamed.threads.size)
+        assertEquals(trimmed.breadcrumbs.size, streamed.breadcrumbs.size)
     }
 }
@@ -0,0 +1,171 @@
+package com.bugsnag.android
+
+import com.bugsnag.android.BugsnagTestUtils.generateConfiguration
+import com.bugsnag.android.BugsnagTestUtils.generateEvent
+import com.bugsnag.android.FileStore.Delegate
+import com.bugsnag.android.internal.BackgroundTaskService
+import com.bugsnag.android.internal.JsonHelper
+import com.bugsnag.android.internal.convertToImmutableConfig
+import com.bugsnag.android.internal.dag.ValueProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+/**
+ * Verifies that stored events are batched into a single request when maxEventsPerRequest is set.
+ */
+class EventStoreBatchDeliveryTest {
+
+    private lateinit var storageDir: File
+    private lateinit var backgroundTaskService: BackgroundTaskService
+
+    @Before
+    fun setUp() {
+        storageDir = Files.createTempDirectory("tmp").toFile()
+        backgroundTaskService = BackgroundTaskService()
+    }
+
+    @After
+    fun tearDown() {
+        storageDir.deleteRecursively()
+        backgroundTaskService.shutdown()
+    }
+
+    @Test
+    fun storedEventsDeliveredInBatches() {
+        val delivery = RecordingDelivery { DeliveryStatus.DELIVERED }
+        val eventStore = createEventStore(delivery, maxEventsPerRequest = 2)
+        repeat(5) {
+            eventStore.write(generateEvent())
+        }
+
+        eventStore.flushAsync()
+        backgroundTaskService.shutdown()
+
+        assertEquals(listOf(2, 2, 1), delivery.eventCounts)
+        assertTrue(eventStore.isEmpty())
+    }
+
+    @Test
+    fun eventsNotBatchedByDefault() {
+        val delivery = RecordingDelivery { DeliveryStatus.DELIVERED }
+        val eventStore = createEventStore(delivery, maxEventsPerRequest = 1)
+        repeat(3) {
+            eventStore.write(generateEvent())
+        }
+
+        eventStore.flushAsync()
+        backgroundTaskService.shutdown()
+
+        assertEquals(listOf(1, 1, 1), delivery.eventCounts)
+        assertTrue(eventStore.isEmpty())
+    }
+
+    @Test
+    fun undeliveredBatchRetainsFiles() {
+        val delivery = RecordingDelivery { DeliveryStatus.UNDELIVERED }
+        val eventStore = createEventStore(delivery, maxEventsPerRequest = 5)
+        repeat(3) {
+            eventStore.write(generateEvent())
+        }
+
+        eventStore.flushAsync()
+        backgroundTaskService.shutdown()
+
+        assertEquals(listOf(3), delivery.eventCounts)
+        assertEquals(3, eventStore.findStoredFiles().size)
+    }
+
+    @Test
+    fun failedBatchRetriedIndividually() {
+        val delivery = RecordingDelivery { payload ->
+            when {
+                payload.batchedPayloads.isNotEmpty() -> DeliveryStatus.FAILURE
+                else -> DeliveryStatus.DELIVERED
+            }
+        }
+        val eventStore = createEventStore(delivery, maxEventsPerRequest = 5)
+        repeat(3) {
+            eventStore.write(generateEvent())
+        }
+
+        eventStore.flushAsync()
+        backgroundTaskService.shutdown()
+
+        assertEquals(listOf(3, 1, 1, 1), delivery.eventCounts)
+        assertTrue(eventStore.isEmpty())
+    }
+
+    @Test
+    fun badEventOnlyDiscardsItsOwnFile() {
+        val deliveredContexts = mutableListOf<String?>()
+        val delivery = RecordingDelivery { payload ->
+            val json = JsonHelper.deserialize(payload.toByteArray())
+            val contexts = (json["events"] as List<*>).map { (it as Map<*, *>)["context"] }
+            if ("bad" in contexts) {
+                throw IllegalStateException("cannot deliver bad event")
+            }
+            deliveredContexts.addAll(contexts.map { it as String? })
+            DeliveryStatus.DELIVERED
+        }
+        val eventStore = createEventStore(delivery, maxEventsPerRequest = 5)
+        listOf("first", "bad", "last").forEach { context ->
+            eventStore.write(generateEvent().apply { this.context = context })
+        }
+
+        eventStore.flushAsync()
+        backgroundTaskService.shutdown()
+
+        // the batch fails, so each event is retried on its own and only the bad event is lost
+        assertEquals(listOf(3, 1, 1, 1), delivery.eventCounts)
+        assertEquals(setOf("first", "last"), deliveredContexts.toSet())
+        assertTrue(eventStore.isEmpty())
+    }
+
+    private class RecordingDelivery(
+        private val status: (EventPayload) -> DeliveryStatus
+    ) : Delivery {
+        val eventCounts = mutableListOf<Int>()
+
+        override fun deliver(payload: Session, deliveryParams: DeliveryParams) =
+            DeliveryStatus.DELIVERED
+
+        override fun deliver(
+            payload: EventPayload,
+            deliveryParams: DeliveryParams
+        ): DeliveryStatus {
+            val json = JsonHelper.deserialize(payload.toByteArray())
+            eventCounts.add((json["events"] as List<*>).size)
+            return status(payload)
+        }
+    }
+
+    private fun createEventStore(delivery: Delivery, maxEventsPerRequest: Int): EventStore {
+        val config = generateConfiguration().apply {
+            this.maxEventsPerRequest = maxEventsPerRequest
+            this.delivery = delivery
+            persistenceDirectory = storageDir
+        }
+        return EventStore(
+            convertToImmutableConfig(config),
+            NoopLogger,
+            Notifier(),
+            backgroundTaskService,
+            ValueProvider(
+                object : Delegate {
+                    override fun onErrorIOFailure(
+                        exception: Exception?,
+                        errorFile: File?,
+                        context: String?
+                    ) {
+                    }
+                }
+            ),
+            CallbackState()
+        )
+    }
+}
@@ -0,0 +1,150 @@
+package com.bugsnag.android
+
+import com.bugsnag.android.BugsnagTestUtils.generateConfiguration
+import com.bugsnag.android.BugsnagTestUtils.generateEvent
+import com.bugsnag.android.FileStore.Delegate
+import com.bugsnag.android.internal.BackgroundTaskService
+import com.bugsnag.android.internal.ImmutableConfig
+import com.bugsnag.android.internal.convertToImmutableConfig
+import com.bugsnag.android.internal.dag.ValueProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+/**
+ * Verifies that the in-memory index of stored events is kept in sync with the errors directory.
+ */
+class EventStoreIndexTest {
+
+    private lateinit var storageDir: File
+    private lateinit var errorDir: File
+
+    @Before
+    fun setUp() {
+        storageDir = Files.createTempDirectory("tmp").toFile()
+        errorDir = File(storageDir, "bugsnag/errors")
+        errorDir.mkdirs()
+    }
+
+    @After
+    fun tearDown() {
+        storageDir.deleteRecursively()
+    }
+
+    @Test
+    fun indexBuiltFromExistingFiles() {
+        val launchCrash = File(errorDir, "1504255147933_${API_KEY}_android_my-uuid-123_startupcrash.json")
+        val regular = File(errorDir, "1504255147934_${API_KEY}_c_my-uuid-456_.json")
+        val empty = File(errorDir, "1504255147935_${API_KEY}_c_my-uuid-789_.json")
+        launchCrash.writeText("{}")
+        regular.writeText("{}")
+        empty.writeText("")
+
+        val eventStore = createEventStore(createConfig())
+        val storedFiles = eventStore.findStoredFiles()
+        assertEquals(setOf(launchCrash, regular), storedFiles.toSet())
+        assertFalse("empty files are deleted when indexing", empty.exists())
+
+        val launchInfo = requireNotNull(eventStore.getStoredFileInfo(launchCrash))
+        assertTrue(launchInfo.isLaunchCrashReport)
+        assertEquals(1504255147933, launchInfo.timestamp)
+        assertEquals(setOf(ErrorType.ANDROID), launchInfo.errorTypes)
+        assertEquals(2L, launchInfo.size)
+
+        val regularInfo = requireNotNull(eventStore.getStoredFileInfo(regular))
+        assertFalse(regularInfo.isLaunchCrashReport)
+        assertEquals(setOf(ErrorType.C), regularInfo.errorTypes)
+        assertEquals(launchCrash, eventStore.findLaunchCrashReport(storedFiles))
+    }
+
+    @Test
+    fun indexUpdatedOnWriteAndDelete() {
+        val eventStore = createEventStore(createConfig())
+        assertTrue(eventStore.isEmpty())
+
+        val file = File(requireNotNull(eventStore.write(generateEvent())))
+        assertFalse(eventStore.isEmpty())
+        val info = requireNotNull(eventStore.getStoredFileInfo(file))
+        assertEquals(file.length(), info.size)
+
+        eventStore.deleteStoredFiles(setOf(file))
+        assertNull(eventStore.getStoredFileInfo(file))
+        assertTrue(eventStore.isEmpty())
+    }
+
+    @Test
+    fun oldestIndexedFileDiscarded() {
+        val oldest = File(errorDir, "1000_${API_KEY}_android_my-uuid-123_.json")
+        oldest.writeText("{}")
+
+        val config = generateConfiguration().apply {
+            maxPersistedEvents = 2
+            persistenceDirectory = storageDir
+        }
+        val eventStore = createEventStore(convertToImmutableConfig(config))
+        val first = eventStore.write(generateEvent())
+        val second = eventStore.write(generateEvent())
+        assertNotNull(first)
+        assertNotNull(second)
+
+        assertFalse(oldest.exists())
+        assertNull(eventStore.getStoredFileInfo(oldest))
+        assertEquals(2, requireNotNull(errorDir.list()).size)
+        assertEquals(2, eventStore.findStoredFiles().size)
+    }
+
+    @Test
+    fun externalFileAddedToIndex() {
+        val eventStore = createEventStore(createConfig())
+        assertTrue(eventStore.isEmpty())
+
+        // the index has already been built, so the moved file must be added to it
+        val filename = "1504255147933_${API_KEY}_c_my-uuid-123_.json"
+        val reportFile = File(storageDir, filename)
+        reportFile.writeText("{}")
+        assertTrue(eventStore.moveIntoStore(reportFile))
+
+        val storedFile = File(errorDir, filename)
+        assertFalse(reportFile.exists())
+        assertEquals(listOf(storedFile), eventStore.findStoredFiles())
+        assertEquals(setOf(ErrorType.C), eventStore.getStoredFileInfo(storedFile)?.errorTypes)
+    }
+
+    private fun createConfig(): ImmutableConfig {
+        val config = generateConfiguration().apply {
+            persistenceDirectory = storageDir
+        }
+        return convertToImmutableConfig(config)
+    }
+
+    private fun createEventStore(config: ImmutableConfig): EventStore {
+        return EventStore(
+            config,
+            NoopLogger,
+            Notifier(),
+            BackgroundTaskService(),
+            ValueProvider(
+                object : Delegate {
+                    override fun onErrorIOFailure(
+                        exception: Exception?,
+                        errorFile: File?,
+                        context: String?
+                    ) {
+                    }
+                }
+            ),
+            CallbackState()
+        )
+    }
+
+    private companion object {
+        const val API_KEY = "0000111122223333aaaabbbbcccc9999"
+    }
+}
@@ -0,0 +1,75 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+
+class FlushCoalescerTest {
+
+    private val queue = ArrayDeque<Runnable>()
+    private val executor = Executor { queue.add(it) }
+
+    @Test
+    fun requestsWhileQueuedAreCoalesced() {
+        var flushes = 0
+        val coalescer = FlushCoalescer(executor, Runnable { flushes++ })
+
+        repeat(5) { coalescer.requestFlush() }
+        assertEquals(1, queue.size)
+        assertEquals(4L, coalescer.coalescedCount)
+
+        queue.removeFirst().run()
+        assertEquals(1, flushes)
+        assertEquals(0, queue.size)
+    }
+
+    @Test
+    fun requestsWhileRunningCauseOneFollowUp() {
+        lateinit var coalescer: FlushCoalescer
+        var flushes = 0
+        coalescer = FlushCoalescer(
+            executor,
+            Runnable {
+                if (++flushes == 1) {
+                    repeat(3) { coalescer.requestFlush() }
+                }
+            }
+        )
+
+        coalescer.requestFlush()
+        queue.removeFirst().run()
+        assertEquals(1, flushes)
+        assertEquals(1, queue.size)
+        assertEquals(2L, coalescer.coalescedCount)
+
+        queue.removeFirst().run()
+        assertEquals(2, flushes)
+        assertEquals(0, queue.size)
+
+        // once idle, the next request is submitted again
+        coalescer.requestFlush()
+        assertEquals(1, queue.size)
+    }
+
+    @Test
+    fun rejectedRequestIsNotCoalesced() {
+        var reject = true
+        val coalescer = FlushCoalescer(
+            Executor {
+                if (reject) throw RejectedExecutionException()
+                queue.add(it)
+            },
+            Runnable {}
+        )
+
+        assertThrows(RejectedExecutionException::class.java) {
+            coalescer.requestFlush()
+        }
+        reject = false
+        coalescer.requestFlush()
+        assertEquals(1, queue.size)
+        assertEquals(0L, coalescer.coalescedCount)
+    }
+}
@@ -0,0 +1,64 @@
+package com.bugsnag.android
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.StringWriter
+import java.nio.file.Files
+
+/**
+ * Verifies that files of pre-encoded JSON are written identically whether they are copied
+ * directly into the underlying byte stream or decoded as characters.
+ */
+class JsonStreamSpliceTest {
+
+    private lateinit var file: File
+
+    @Before
+    fun setUp() {
+        file = Files.createTempFile("splice", ".json").toFile()
+        file.writeText("HEADER{\"name\":\"café 😀\",\"count\":2}")
+    }
+
+    @After
+    fun tearDown() {
+        file.delete()
+    }
+
+    @Test
+    fun fileCopiedIntoByteStream() {
+        val baos = ByteArrayOutputStream()
+        val writer = baos.bufferedWriter()
+        JsonStream(writer, baos).use { stream ->
+            writeArray(stream)
+        }
+        assertEquals(EXPECTED, baos.toString("UTF-8"))
+    }
+
+    @Test
+    fun fileDecodedIntoWriter() {
+        val writer = StringWriter()
+        JsonStream(writer).use { stream ->
+            writeArray(stream)
+        }
+        assertEquals(EXPECTED, writer.toString())
+    }
+
+    private fun writeArray(stream: JsonStream) {
+        stream.beginArray()
+        stream.value("first")
+        stream.value(file, HEADER_LENGTH)
+        stream.beginObject().name("last").value(true).endObject()
+        stream.value(file, HEADER_LENGTH)
+        stream.endArray()
+    }
+
+    private companion object {
+        const val HEADER_LENGTH = 6L
+        const val JSON = "{\"name\":\"café 😀\",\"count\":2}"
+        const val EXPECTED = "[\"first\",$JSON,{\"last\":true},$JSON]"
+    }
+}
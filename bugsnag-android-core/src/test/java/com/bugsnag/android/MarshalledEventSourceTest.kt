@@ -0,0 +1,93 @@
+package com.bugsnag.android
+
+import com.bugsnag.android.BugsnagTestUtils.generateEvent
+import com.bugsnag.android.internal.JsonHelper
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+/**
+ * Verifies that the breadcrumbs and threads of stored events are only decoded when they are
+ * accessed, and are serialized unchanged when they are not.
+ */
+class MarshalledEventSourceTest {
+
+    private lateinit var eventFile: File
+
+    @Before
+    fun setUp() {
+        val event = generateEvent()
+        event.breadcrumbs.add(
+            Breadcrumb(
+                "Hello",
+                BreadcrumbType.NAVIGATION,
+                mutableMapOf<String, Any>("password" to "hunter2", "screen" to "home"),
+                0L,
+                NoopLogger
+            )
+        )
+        eventFile = Files.createTempFile("event", ".json").toFile()
+        eventFile.writer().use { JsonStream(it).use(event::toStream) }
+    }
+
+    @After
+    fun tearDown() {
+        eventFile.delete()
+    }
+
+    @Test
+    fun untouchedSectionsNotDecoded() {
+        val event = MarshalledEventSource(eventFile, "api-key", NoopLogger).invoke()
+        assertNotNull((event.impl.threads as DecodeOnAccessList<*>).undecodedItems)
+        assertNotNull((event.impl.breadcrumbs as DecodeOnAccessList<*>).undecodedItems)
+        assertTrue(event.threads.size > 0)
+        assertEquals("RuntimeException", event.errors[0].errorClass)
+
+        val expected = JsonHelper.deserialize(eventFile.readBytes())
+        val json = serialize(event)
+        assertEquals(expected["threads"], json["threads"])
+        assertEquals(expected["breadcrumbs"], json["breadcrumbs"])
+        assertNotNull((event.impl.threads as DecodeOnAccessList<*>).undecodedItems)
+    }
+
+    @Test
+    fun accessedSectionsDecoded() {
+        val event = MarshalledEventSource(eventFile, "api-key", NoopLogger).invoke()
+        assertEquals("Hello", event.breadcrumbs.single().message)
+        assertTrue(event.threads.isNotEmpty())
+        event.threads.first().name = "renamed"
+        assertNull((event.impl.threads as DecodeOnAccessList<*>).undecodedItems)
+        assertNull((event.impl.breadcrumbs as DecodeOnAccessList<*>).undecodedItems)
+
+        val expected = JsonHelper.deserialize(eventFile.readBytes())
+        @Suppress("UNCHECKED_CAST")
+        val threads = expected["threads"] as List<MutableMap<String, Any?>>
+        threads.first()["name"] = "renamed"
+        assertEquals(threads, serialize(event)["threads"])
+    }
+
+    @Test
+    fun undecodedBreadcrumbMetadataRedacted() {
+        val event = MarshalledEventSource(eventFile, "api-key", NoopLogger).invoke()
+        val breadcrumbs = serialize(event)["breadcrumbs"] as List<*>
+        val metadata = (breadcrumbs.single() as Map<*, *>)["metaData"] as Map<*, *>
+        assertEquals("[REDACTED]", metadata["password"])
+        assertEquals("home", metadata["screen"])
+    }
+
+    private fun serialize(event: Event): Map<String, Any?> {
+        val file = Files.createTempFile("event", ".json").toFile()
+        try {
+            file.writer().use { JsonStream(it).use(event::toStream) }
+            return JsonHelper.deserialize(file.readBytes())
+        } finally {
+            file.delete()
+        }
+    }
+}
@@ -17,7 +17,7 @@ internal class MetadataConcurrentModificationTest {
         repeat(100) { count ->
             assertNotNull(metadata.toMap())
             executor.execute {
-                metadata.store["$count"] = mutableMapOf<String, Any>(Pair("$count", count))
+                metadata.addMetadata("$count", "$count", count)
             }
         }
     }
@@ -0,0 +1,101 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+/**
+ * Verifies that copies of [Metadata] share unmodified sections, but are isolated from any
+ * changes made to the original or the copy.
+ */
+class MetadataCopyTest {
+
+    @Test
+    fun copySharesSections() {
+        val orig = Metadata()
+        orig.addMetadata("custom", "foo", "bar")
+        orig.addMetadata("extra", "count", 1)
+
+        val copy = orig.copy()
+        assertSame(orig.store["custom"], copy.store["custom"])
+        assertSame(orig.store["extra"], copy.store["extra"])
+    }
+
+    @Test
+    fun writesOnlyCopyModifiedSection() {
+        val orig = Metadata()
+        orig.addMetadata("custom", "foo", "bar")
+        orig.addMetadata("extra", "count", 1)
+
+        val copy = orig.copy()
+        copy.addMetadata("custom", "foo", "baz")
+        copy.clearMetadata("extra", "count")
+
+        assertEquals("bar", orig.getMetadata("custom", "foo"))
+        assertEquals(1, orig.getMetadata("extra", "count"))
+        assertEquals("baz", copy.getMetadata("custom", "foo"))
+        assertNull(copy.getMetadata("extra"))
+
+        orig.addMetadata("other", "key", true)
+        assertNull(copy.getMetadata("other"))
+        assertSame(orig.store["custom"], orig.copy().store["custom"])
+    }
+
+    @Test
+    fun trimDoesNotModifyOriginal() {
+        val orig = Metadata()
+        orig.addMetadata("custom", "foo", "a".repeat(60))
+        orig.addMetadata("extra", "count", 1)
+
+        val copy = orig.copy()
+        val metrics = copy.trimMetadataStringsTo(5)
+        assertEquals(1, metrics.itemsTrimmed)
+        assertEquals(55, metrics.dataTrimmed)
+
+        assertEquals("a".repeat(60), orig.getMetadata("custom", "foo"))
+        assertEquals("aaaaa***<55> CHARS TRUNCATED***", copy.getMetadata("custom", "foo"))
+        assertSame(orig.store["extra"], copy.store["extra"])
+    }
+
+    @Test
+    fun mergeSharesDistinctSections() {
+        val base = Metadata()
+        base.addMetadata("custom", "foo", "bar")
+        val overrides = Metadata()
+        overrides.addMetadata("extra", "count", 1)
+        overrides.addMetadata("custom", "foo", "baz")
+
+        val merged = Metadata.merge(base, overrides)
+        assertSame(overrides.store["extra"], merged.store["extra"])
+        assertEquals("baz", merged.getMetadata("custom", "foo"))
+        assertEquals("bar", base.getMetadata("custom", "foo"))
+    }
+
+    @Test
+    fun getSectionWritesThrough() {
+        val orig = Metadata()
+        orig.addMetadata("custom", "foo", "bar")
+        val copy = orig.copy()
+
+        // callbacks may modify the returned section, which must only affect this metadata
+        val section = orig.getMetadata("custom") as MutableMap<String, Any>
+        section["foo"] = "baz"
+        section["extra"] = true
+        assertEquals(mapOf("foo" to "baz", "extra" to true), section)
+        assertEquals("baz", orig.getMetadata("custom", "foo"))
+        assertEquals(true, orig.getMetadata("custom", "extra"))
+        assertEquals(mapOf("foo" to "bar"), copy.getMetadata("custom"))
+
+        section.remove("foo")
+        assertNull(orig.getMetadata("custom", "foo"))
+
+        // later writes are visible through the view
+        orig.addMetadata("custom", "count", 1)
+        assertEquals(1, section["count"])
+
+        section.clear()
+        assertNull(orig.getMetadata("custom"))
+        assertEquals(mapOf("foo" to "bar"), copy.getMetadata("custom"))
+    }
+}
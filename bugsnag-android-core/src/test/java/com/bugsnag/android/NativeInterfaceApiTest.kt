@@ -4,6 +4,7 @@ import android.content.Context
 import com.bugsnag.android.BugsnagTestUtils.generateAppWithState
 import com.bugsnag.android.BugsnagTestUtils.generateDeviceWithState
 import com.bugsnag.android.internal.ImmutableConfig
+import com.bugsnag.android.internal.JsonHelper
 import org.junit.Assert.assertArrayEquals
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNotNull
@@ -239,12 +240,26 @@ internal class NativeInterfaceApiTest {
     @Test
     fun deliverReport() {
         NativeInterface.deliverReport(
-            null, "{}".toByteArray(), "{}".toByteArray(),
+            null, "{}".toByteArray(), null,
             "", false
         )
         verify(eventStore, times(1)).enqueueContentForDelivery(eq("{}"), any())
     }
 
+    @Test
+    fun deliverReportWithStaticData() {
+        NativeInterface.deliverReport(
+            null, """{"app":{"id":"a"}}""".toByteArray(), """{"app":{"type":"android"}}""".toByteArray(),
+            "", false
+        )
+        val captor = ArgumentCaptor.forClass(JsonStream.Streamable::class.java)
+        verify(eventStore, times(1)).enqueueContentForDelivery(captor.capture(), any())
+        assertEquals(
+            """{"app":{"id":"a","type":"android"}}""",
+            String(JsonHelper.serialize(captor.value))
+        )
+    }
+
     @Test
     fun notifyJVMStackTraceCall() {
         NativeInterface.notify(
@@ -0,0 +1,73 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.util.regex.Pattern
+
+class RedactedKeyMatcherTest {
+
+    private val patterns = setOf(
+        Pattern.compile(".*password.*", Pattern.CASE_INSENSITIVE),
+        Pattern.compile(".*Secret.*"),
+        Pattern.compile("token"),
+        Pattern.compile("API_KEY", Pattern.CASE_INSENSITIVE),
+        Pattern.compile("auth-[0-9]+"),
+        Pattern.compile(".*\\.cookie", Pattern.CASE_INSENSITIVE or Pattern.UNICODE_CASE)
+    )
+
+    private val keys = listOf(
+        "password",
+        "user_PassWord_hash",
+        "pass\nword",
+        "\npassword",
+        "password\r",
+        "api_\u212Aey",
+        "secret",
+        "mySecretValue",
+        "token",
+        "tokens",
+        "TOKEN",
+        "api_key",
+        "Api_Key",
+        "auth-123",
+        "auth-",
+        "session.COOKIE",
+        "session.cookie\n",
+        "",
+        "unrelated"
+    )
+
+    @Test
+    fun matchesSameKeysAsPatterns() {
+        val matcher = RedactedKeyMatcher.forPatterns(patterns)
+        keys.forEach { key ->
+            val expected = patterns.any { it.matcher(key).matches() }
+            assertEquals("Unexpected verdict for '$key'", expected, matcher.isRedacted(key))
+
+            // the cached verdict should agree
+            assertEquals("Unexpected verdict for '$key'", expected, matcher.isRedacted(key))
+        }
+    }
+
+    @Test
+    fun longKeysNotCached() {
+        val matcher = RedactedKeyMatcher.forPatterns(patterns)
+        val key = "a".repeat(200) + "PASSWORD"
+        assertEquals(true, matcher.isRedacted(key))
+        assertFalse(matcher.isRedacted("a".repeat(200)))
+    }
+
+    @Test
+    fun emptyPatterns() {
+        val matcher = RedactedKeyMatcher.forPatterns(emptySet())
+        assertFalse(matcher.isRedacted("password"))
+    }
+
+    @Test
+    fun matcherReusedForEqualPatterns() {
+        val matcher = RedactedKeyMatcher.forPatterns(patterns)
+        assertSame(matcher, RedactedKeyMatcher.forPatterns(patterns.toSet()))
+    }
+}
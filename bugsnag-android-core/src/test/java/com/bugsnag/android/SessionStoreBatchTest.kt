@@ -0,0 +1,112 @@
+package com.bugsnag.android
+
+import com.bugsnag.android.BugsnagTestUtils.generateSession
+import com.bugsnag.android.FileStore.Delegate
+import com.bugsnag.android.internal.JsonHelper
+import com.bugsnag.android.internal.dag.ValueProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+/**
+ * Verifies that stored sessions are grouped into batches which can be sent in a single request.
+ */
+class SessionStoreBatchTest {
+
+    private lateinit var storageDir: File
+    private lateinit var sessionStore: SessionStore
+
+    @Before
+    fun setUp() {
+        storageDir = Files.createTempDirectory("tmp").toFile()
+        sessionStore = SessionStore(
+            storageDir,
+            128,
+            "BUGSNAG_API_KEY",
+            NoopLogger,
+            ValueProvider(
+                object : Delegate {
+                    override fun onErrorIOFailure(
+                        exception: Exception?,
+                        errorFile: File?,
+                        context: String?
+                    ) {
+                    }
+                }
+            )
+        )
+    }
+
+    @After
+    fun tearDown() {
+        storageDir.deleteRecursively()
+    }
+
+    @Test
+    fun sessionsBatchedBySize() {
+        repeat(5) {
+            sessionStore.write(generateSession())
+        }
+
+        val batches = sessionStore.createSessionBatches(
+            sessionStore.findStoredFiles(),
+            2,
+            Notifier()
+        )
+        assertEquals(listOf(2, 2, 1), batches.map { it.files.size })
+        assertNull(batches.last().payload)
+
+        val payload = requireNotNull(batches.first().payload)
+        val json = JsonHelper.deserialize(payload.toByteArray())
+        assertEquals(2, (json["sessions"] as List<*>).size)
+        assertNotNull(json["notifier"])
+    }
+
+    @Test
+    fun sessionsBatchedByApiKey() {
+        repeat(2) {
+            sessionStore.write(generateSession().apply { apiKey = API_KEY })
+            sessionStore.write(generateSession().apply { apiKey = OTHER_API_KEY })
+        }
+
+        val batches = sessionStore.createSessionBatches(
+            sessionStore.findStoredFiles(),
+            10,
+            Notifier()
+        )
+        assertEquals(listOf(2, 2), batches.map { it.files.size })
+        assertEquals(
+            setOf(API_KEY, OTHER_API_KEY),
+            batches.map { requireNotNull(it.payload).apiKey }.toSet()
+        )
+    }
+
+    @Test
+    fun legacySessionsNotBatched() {
+        // written before the store indexes its directory
+        val sessionDir = File(storageDir, "sessions").apply { mkdirs() }
+        File(sessionDir, "1504255147933d06e6168-1c10-4727-80d8-627a5111775b.json")
+            .writeText("{\"id\":\"legacy\"}")
+        repeat(2) {
+            sessionStore.write(generateSession())
+        }
+
+        val batches = sessionStore.createSessionBatches(
+            sessionStore.findStoredFiles(),
+            10,
+            Notifier()
+        )
+        assertEquals(listOf(1, 2), batches.map { it.files.size }.sorted())
+        assertNull(batches.single { it.files.size == 1 }.payload)
+    }
+
+    private companion object {
+        const val API_KEY = "5d1ec5bd39a74caa1267142706a7fb21"
+        const val OTHER_API_KEY = "0000111122223333aaaabbbbcccc9999"
+    }
+}
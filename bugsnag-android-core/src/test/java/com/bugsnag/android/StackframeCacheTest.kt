@@ -0,0 +1,50 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class StackframeCacheTest {
+
+    @Test
+    fun descriptorsShared() {
+        val cache = StackframeCache.forProjectPackages(listOf("com.example"))
+        val first = cache.descriptorFor(StackTraceElement("com.example.Foo", "bar", "Foo.kt", 10))
+        val second = cache.descriptorFor(StackTraceElement("com.example.Foo", "bar", "Foo.kt", 10))
+        assertSame(first, second)
+        assertEquals("com.example.Foo.bar", first.method)
+        assertEquals("Foo.kt", first.file)
+        assertEquals(10, first.lineNumber)
+        assertEquals(true, first.inProject)
+    }
+
+    @Test
+    fun descriptorDefaults() {
+        val cache = StackframeCache.forProjectPackages(listOf("com.example"))
+        val descriptor = cache.descriptorFor(StackTraceElement("", "run_func", null, 5))
+        assertEquals("run_func", descriptor.method)
+        assertEquals("Unknown", descriptor.file)
+        assertNull(descriptor.inProject)
+    }
+
+    @Test
+    fun cacheReusedForSamePackages() {
+        val cache = StackframeCache.forProjectPackages(listOf("com.example", "com.foo"))
+        assertSame(cache, StackframeCache.forProjectPackages(setOf("com.foo", "com.example")))
+        assertNotSame(cache, StackframeCache.forProjectPackages(setOf("com.example")))
+    }
+
+    @Test
+    fun modifiedStackframesNotShared() {
+        val elements = arrayOf(StackTraceElement("com.example.Foo", "bar", "Foo.kt", 10))
+        val first = Stacktrace(elements, listOf("com.example"), NoopLogger).trace.single()
+        val second = Stacktrace(elements, listOf("com.example"), NoopLogger).trace.single()
+        first.method = "renamed"
+        first.inProject = false
+
+        assertEquals("com.example.Foo.bar", second.method)
+        assertEquals(true, second.inProject)
+    }
+}
@@ -1,6 +1,7 @@
 package com.bugsnag.android
 
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
 import org.junit.Test
 
 class StacktraceTest {
@@ -31,4 +32,22 @@ class StacktraceTest {
         assertEquals(1, stacktrace.trace.first().lineNumber)
         assertEquals(200, stacktrace.trace.last().lineNumber)
     }
+
+    @Test
+    fun stacktraceElementsConvertedOnce() {
+        val trace = arrayOf(
+            StackTraceElement("com.example.Foo", "bar", "Foo.kt", 10),
+            StackTraceElement("", "run_func", null, 5)
+        )
+
+        val stacktrace = Stacktrace(trace, listOf("com.example"), NoopLogger)
+        val frames = stacktrace.trace
+        assertSame(frames, stacktrace.trace)
+        assertEquals("com.example.Foo.bar", frames[0].method)
+        assertEquals(true, frames[0].inProject)
+        assertEquals("Unknown", frames[1].file)
+
+        frames.removeAt(1)
+        assertEquals(1, stacktrace.trace.size)
+    }
 }
@@ -0,0 +1,77 @@
+package com.bugsnag.android.internal
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+internal class BackgroundTaskPriorityTest {
+
+    private val service = BackgroundTaskService()
+    private val blocker = CountDownLatch(1)
+
+    @After
+    fun tearDown() {
+        blocker.countDown()
+        service.shutdown()
+    }
+
+    @Test
+    fun higherPriorityTasksRunFirst() {
+        val started = CountDownLatch(1)
+        service.submitTask(TaskType.ERROR_REQUEST) {
+            started.countDown()
+            blocker.await()
+        }
+        started.await(1, TimeUnit.SECONDS)
+
+        val order = Collections.synchronizedList(ArrayList<String>())
+        service.submitTask(TaskType.ERROR_REQUEST, TaskPriority.LOW, Runnable { order.add("low1") })
+        service.submitTask(TaskType.ERROR_REQUEST, Runnable { order.add("normal1") })
+        service.submitTask(TaskType.ERROR_REQUEST, TaskPriority.LOW, Runnable { order.add("low2") })
+        service.submitTask(TaskType.ERROR_REQUEST, TaskPriority.HIGH, Runnable { order.add("high") })
+        val last = service.submitTask(TaskType.ERROR_REQUEST, Runnable { order.add("normal2") })
+
+        blocker.countDown()
+        last.get(1, TimeUnit.SECONDS)
+        service.submitTask(TaskType.ERROR_REQUEST, TaskPriority.LOW, Runnable {})
+            .get(1, TimeUnit.SECONDS)
+        assertEquals(listOf("high", "normal1", "normal2", "low1", "low2"), order)
+    }
+
+    @Test
+    fun metricsRecorded() {
+        val started = CountDownLatch(1)
+        service.submitTask(TaskType.IO) {
+            started.countDown()
+            blocker.await()
+        }
+        started.await(1, TimeUnit.SECONDS)
+
+        // the queue holds 128 tasks while the first one is running
+        repeat(128) {
+            service.submitTask(TaskType.IO, TaskPriority.LOW, Runnable {})
+        }
+        assertThrows(RejectedExecutionException::class.java) {
+            service.submitTask(TaskType.IO, Runnable {})
+        }
+
+        val waiting = service.getTaskMetrics(TaskType.IO)!!
+        assertEquals(128, waiting.queueDepth)
+        assertEquals(129L, waiting.submittedCount)
+        assertEquals(1L, waiting.rejectedCount)
+
+        // shutdown waits for the queued tasks to finish
+        blocker.countDown()
+        service.shutdown()
+
+        val done = service.getTaskMetrics(TaskType.IO)!!
+        assertEquals(0, done.queueDepth)
+        assertEquals(129L, done.submittedCount)
+        assertEquals(129L, done.completedCount)
+    }
+}
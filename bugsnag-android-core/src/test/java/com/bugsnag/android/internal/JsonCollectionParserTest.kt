@@ -0,0 +1,144 @@
+package com.bugsnag.android.internal
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+
+internal class JsonCollectionParserTest {
+
+    @Test
+    fun parsesValues() {
+        val json = """{"a": [1, -2, 1.5, -2e3, 9999999999999999999, true, false, null], "b": {}}"""
+        assertEquals(
+            mapOf(
+                "a" to listOf(1L, -2L, 1.5, -2000.0, 9999999999999999999.0, true, false, null),
+                "b" to emptyMap<String, Any?>()
+            ),
+            parse(json)
+        )
+    }
+
+    @Test
+    fun parsesLongLimits() {
+        val json = """[${Long.MAX_VALUE}, ${Long.MIN_VALUE}, 123456789012345678, -0]"""
+        assertEquals(listOf(Long.MAX_VALUE, Long.MIN_VALUE, 123456789012345678L, 0L), parse(json))
+    }
+
+    @Test
+    fun parsesEscapedAndUnicodeStrings() {
+        val json = """["plain", "tab\there", "quote\"d", "café", "café", "😀 smile", ""]"""
+        assertEquals(
+            listOf("plain", "tab\there", "quote\"d", "café", "café", "😀 smile", ""),
+            parse(json)
+        )
+    }
+
+    @Test
+    fun stringsSpanningReads() {
+        val ascii = "x".repeat(20_000)
+        val mixed = "abc\\n".repeat(3_000) + "é".repeat(3_000)
+        val json = """{"ascii": "$ascii", "mixed": "$mixed"}"""
+
+        val result = JsonCollectionParser(TrickleInputStream(json.toByteArray())).parse()
+        assertEquals(
+            mapOf(
+                "ascii" to ascii,
+                "mixed" to "abc\n".repeat(3_000) + "é".repeat(3_000)
+            ),
+            result
+        )
+    }
+
+    @Test
+    fun keysShared() {
+        val first = parse("""{"lineNumber": 1}""") as Map<*, *>
+        val second = parse("""{"lineNumber": 2}""") as Map<*, *>
+        assertSame(first.keys.single(), second.keys.single())
+    }
+
+    @Test
+    fun reportsErrorPosition() {
+        val exc = assertThrows(JsonCollectionParser.JsonParseException::class.java) {
+            parse("""{"a": tru}""")
+        }
+        assertEquals("Expected 'true' at position 10", exc.message)
+    }
+
+    @Test
+    fun rejectsTrailingContent() {
+        assertThrows(JsonCollectionParser.JsonParseException::class.java) {
+            parse("""{"a": 1} x""")
+        }
+    }
+
+    @Test
+    fun mergesWhileStreaming() {
+        val json = """{"app": {"id": "a", "versions": [1, 2]}, "device": "x", "n": 1.5,
+            |"threads": [{"name": "café", "frames": [{}, {"x": null}]}], "user": {"id": [1]}}""".trimMargin()
+        val staticData = mapOf(
+            "app" to mapOf("versions" to listOf(3L), "type" to "android"),
+            "device" to mapOf("id" to "d"),
+            "user" to mapOf("id" to mapOf("email" to "e")),
+            "metaData" to mapOf("k" to listOf(null, true))
+        )
+        assertEquals(
+            """{"app":{"id":"a","versions":[1,2,3],"type":"android"},"device":{"id":"d"},"n":1.5,""" +
+                """"threads":[{"name":"café","frames":[{},{}]}],"user":{"id":{"email":"e"}},""" +
+                """"metaData":{"k":[null,true]}}""",
+            merge(json, staticData)
+        )
+    }
+
+    @Test
+    fun mergeMatchesDeserializedMerge() {
+        val json = """{"a": {"b": [1, {"c": "d"}], "e": 1e3}, "f": [], "g": "\u00e9\n"}"""
+        val staticData = mapOf("a" to mapOf("b" to listOf("x"), "e" to 2L), "f" to listOf(4L))
+
+        @Suppress("UNCHECKED_CAST")
+        val expected = parse(json) as MutableMap<String, Any?>
+        ((expected["a"] as MutableMap<String, Any?>)["b"] as MutableList<Any?>).add("x")
+        (expected["a"] as MutableMap<String, Any?>)["e"] = 2L
+        (expected["f"] as MutableList<Any?>).add(4L)
+
+        assertEquals(String(JsonHelper.serialize(expected)), merge(json, staticData))
+    }
+
+    @Test
+    fun mergeRejectsInvalidDocuments() {
+        assertThrows(JsonCollectionParser.JsonParseException::class.java) {
+            merge("[1]", emptyMap())
+        }
+        assertThrows(JsonCollectionParser.JsonParseException::class.java) {
+            merge("""{"a": [1}""", emptyMap())
+        }
+        assertThrows(JsonCollectionParser.JsonParseException::class.java) {
+            merge("""{"a": 1} x""", emptyMap())
+        }
+    }
+
+    private fun merge(json: String, staticData: Map<String, Any?>) =
+        String(JsonHelper.serialize(JsonHelper.merge(json.toByteArray(), staticData)))
+
+    private fun parse(json: String) =
+        JsonCollectionParser(ByteArrayInputStream(json.toByteArray())).parse()
+
+    /**
+     * Returns at most a few bytes from each read, so that every value spans several reads
+     */
+    private class TrickleInputStream(private val data: ByteArray) : InputStream() {
+        private var pos = 0
+
+        override fun read(): Int = if (pos < data.size) data[pos++].toInt() and 0xFF else -1
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            if (pos >= data.size) return -1
+            val count = minOf(len, 7, data.size - pos)
+            System.arraycopy(data, pos, b, off, count)
+            pos += count
+            return count
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.bugsnag.android.internal
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ProjectPackageMatcherTest {
+
+    private val classNames = listOf(
+        "com.example.Foo",
+        "com.example.sub.Bar",
+        "com.examples.Baz",
+        "com.exampl",
+        "com.foo.Bar",
+        "com.foobar.Baz",
+        "org.example.Foo",
+        "android.os.Looper",
+        "",
+        "z"
+    )
+
+    @Test
+    fun matchesSameClassesAsPrefixScan() {
+        val packageSets = listOf(
+            emptyList(),
+            listOf("com.example"),
+            listOf("com.example", "com.example.sub", "com.foo"),
+            listOf("com.foo", "com.examples", "org"),
+            listOf("com.foo.Bar", "com.exampl"),
+            listOf("")
+        )
+
+        packageSets.forEach { packages ->
+            val matcher = ProjectPackageMatcher(packages)
+            classNames.forEach { className ->
+                val expected = packages.any { className.startsWith(it) }
+                assertEquals(
+                    "Unexpected result for '$className' with $packages",
+                    expected,
+                    matcher.isInProject(className)
+                )
+            }
+        }
+    }
+
+    @Test
+    fun manyPackages() {
+        val matcher = ProjectPackageMatcher((0 until 100).map { "com.example.module$it" })
+        assertTrue(matcher.isInProject("com.example.module0.Foo"))
+        assertTrue(matcher.isInProject("com.example.module99.Foo"))
+        assertTrue(matcher.isInProject("com.example.module5.Foo"))
+        assertFalse(matcher.isInProject("com.example.Foo"))
+        assertFalse(matcher.isInProject("com.example.modul"))
+    }
+
+    @Test
+    fun inProjectValue() {
+        val matcher = ProjectPackageMatcher(setOf("com.example"))
+        assertEquals(true, matcher.inProject("com.example.Foo"))
+        assertNull(matcher.inProject("org.example.Foo"))
+    }
+}
@@ -4,11 +4,13 @@ import static com.bugsnag.android.ClientHooksKt.generateConfig;
 
 import com.bugsnag.android.internal.ImmutableConfig;
 import com.bugsnag.android.internal.ImmutableConfigKt;
+import com.bugsnag.android.internal.JsonHelper;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
 
 public class EventHooks {
 
@@ -20,8 +22,12 @@ public class EventHooks {
     }
 
     public static EventPayload generateEvent() {
+        return generateEvent(generateConfig());
+    }
+
+    public static EventPayload generateEvent(Configuration config) {
         Throwable exc = new RuntimeException();
-        ImmutableConfig cfg = convert(generateConfig());
+        ImmutableConfig cfg = convert(config);
         Event event = new Event(
                 exc,
                 cfg,
@@ -33,6 +39,14 @@ public class EventHooks {
         return new EventPayload("api-key", event, null, new Notifier(), cfg);
     }
 
+    public static Map<String, Object> deserialize(byte[] json) {
+        return JsonHelper.INSTANCE.deserialize(json);
+    }
+
+    public static byte[] mergeStaticData(byte[] json, Map<String, Object> staticData) {
+        return JsonHelper.INSTANCE.serialize(JsonHelper.INSTANCE.merge(json, staticData));
+    }
+
     static ImmutableConfig convert(Configuration config) {
         try {
             config.setPersistenceDirectory(File.createTempFile("tmp", null));
@@ -0,0 +1,37 @@
+package com.bugsnag.android.benchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.bugsnag.android.EventHooks
+import com.bugsnag.android.JsonStream
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.ByteArrayOutputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Benchmarks the cost of gzip compressing an event payload before delivery.
+ */
+@RunWith(AndroidJUnit4::class)
+class DeliveryCompressionBenchmarkTest {
+
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    /**
+     * Serializes an event payload to JSON and compresses it with gzip
+     */
+    @Test
+    fun compressEventPayload() {
+        val payload = EventHooks.generateEvent()
+
+        benchmarkRule.measureRepeated {
+            val buffer = ByteArrayOutputStream()
+            JsonStream(GZIPOutputStream(buffer).bufferedWriter()).use { stream ->
+                payload?.toStream(stream)
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.bugsnag.android.benchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.bugsnag.android.EventHooks
+import com.bugsnag.android.generateConfig
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Benchmarks the performance of parsing stored event payloads from JSON.
+ */
+@RunWith(AndroidJUnit4::class)
+class JsonParserBenchmarkTest {
+
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    /**
+     * Parses a typical event payload
+     */
+    @Test
+    fun parseEventPayload() {
+        val json = requireNotNull(EventHooks.generateEvent()).toByteArray()
+
+        benchmarkRule.measureRepeated {
+            EventHooks.deserialize(json)
+        }
+    }
+
+    /**
+     * Parses an event payload with a large amount of metadata, including non-ASCII and
+     * escaped strings
+     */
+    @Test
+    fun parseLargeEventPayload() {
+        val config = generateConfig().apply {
+            repeat(SECTION_COUNT) { section ->
+                addMetadata(
+                    "section$section",
+                    (0 until KEYS_PER_SECTION).associate {
+                        "key_$it" to "value $it: \"quoted\", café, ${"x".repeat(it)}"
+                    }
+                )
+            }
+        }
+        val json = requireNotNull(EventHooks.generateEvent(config)).toByteArray()
+
+        benchmarkRule.measureRepeated {
+            EventHooks.deserialize(json)
+        }
+    }
+
+    /**
+     * Merges NDK static data into a large event payload, as done when delivering a native crash
+     */
+    @Test
+    fun mergeStaticDataIntoLargeEventPayload() {
+        val config = generateConfig().apply {
+            repeat(SECTION_COUNT) { section ->
+                addMetadata(
+                    "section$section",
+                    (0 until KEYS_PER_SECTION).associate { "key_$it" to "value $it" }
+                )
+            }
+        }
+        val json = requireNotNull(EventHooks.generateEvent(config)).toByteArray()
+        val staticData = mapOf(
+            "app" to mapOf("type" to "android", "versionCode" to 1L),
+            "device" to mapOf("cpuAbi" to listOf("arm64-v8a")),
+            "metaData" to mapOf("app" to mapOf("activeScreen" to "MainActivity"))
+        )
+
+        benchmarkRule.measureRepeated {
+            EventHooks.mergeStaticData(json, staticData)
+        }
+    }
+
+    private companion object {
+        const val SECTION_COUNT = 10
+        const val KEYS_PER_SECTION = 100
+    }
+}
@@ -0,0 +1,46 @@
+package com.bugsnag.android.benchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.bugsnag.android.internal.ProjectPackageMatcher
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Benchmarks classifying the frames of a typical stacktrace as in-project for different
+ * numbers of configured projectPackages.
+ */
+@RunWith(AndroidJUnit4::class)
+class ProjectPackageBenchmarkTest {
+
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    @Test
+    fun classifyFramesOnePackage() {
+        classifyFrames(1)
+    }
+
+    @Test
+    fun classifyFramesTenPackages() {
+        classifyFrames(10)
+    }
+
+    @Test
+    fun classifyFramesHundredPackages() {
+        classifyFrames(100)
+    }
+
+    private fun classifyFrames(packageCount: Int) {
+        val packages = (0 until packageCount).map { "com.example.module$it" }
+        val matcher = ProjectPackageMatcher(packages)
+        val classNames = Thread.currentThread().stackTrace.map { it.className } +
+            packages.map { "$it.MainActivity" }
+
+        benchmarkRule.measureRepeated {
+            classNames.forEach { matcher.isInProject(it) }
+        }
+    }
+}
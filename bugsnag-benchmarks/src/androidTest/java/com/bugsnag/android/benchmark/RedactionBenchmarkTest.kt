@@ -0,0 +1,92 @@
+package com.bugsnag.android.benchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.bugsnag.android.Configuration
+import com.bugsnag.android.EventHooks
+import com.bugsnag.android.JsonStream
+import com.bugsnag.android.generateConfig
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.ByteArrayOutputStream
+import java.io.PrintWriter
+import java.util.regex.Pattern
+
+/**
+ * Benchmarks the cost of checking metadata keys against redactedKeys when serializing events.
+ */
+@RunWith(AndroidJUnit4::class)
+class RedactionBenchmarkTest {
+
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    /**
+     * Serializes an event with lots of metadata, using the default redactedKeys
+     */
+    @Test
+    fun serializeDefaultRedactedKeys() {
+        val config = generateConfig().apply { addLargeMetadata() }
+        serializeEvent(config)
+    }
+
+    /**
+     * Serializes an event with lots of metadata, using redactedKeys which all have the
+     * common `.*literal.*` form
+     */
+    @Test
+    fun serializeLiteralRedactedKeys() {
+        val config = generateConfig().apply {
+            redactedKeys = (0 until PATTERN_COUNT).mapTo(HashSet()) {
+                Pattern.compile(".*secret$it.*", Pattern.CASE_INSENSITIVE)
+            }
+            addLargeMetadata()
+        }
+        serializeEvent(config)
+    }
+
+    /**
+     * Serializes an event with lots of metadata, using redactedKeys which have to be matched
+     * as regular expressions
+     */
+    @Test
+    fun serializeRegexRedactedKeys() {
+        val config = generateConfig().apply {
+            redactedKeys = (0 until PATTERN_COUNT).mapTo(HashSet()) {
+                Pattern.compile("(secret|token)_$it[a-z]*")
+            }
+            addLargeMetadata()
+        }
+        serializeEvent(config)
+    }
+
+    private fun serializeEvent(config: Configuration) {
+        val payload = EventHooks.generateEvent(config)
+
+        benchmarkRule.measureRepeated {
+            val stream = benchmarkRule.scope.runWithTimingDisabled {
+                JsonStream(PrintWriter(ByteArrayOutputStream()).buffered())
+            }
+            stream.use {
+                payload?.toStream(stream)
+            }
+        }
+    }
+
+    private fun Configuration.addLargeMetadata() {
+        repeat(SECTION_COUNT) { section ->
+            addMetadata(
+                "section$section",
+                (0 until KEYS_PER_SECTION).associate { "key_$it" to "value $it" }
+            )
+        }
+    }
+
+    private companion object {
+        const val PATTERN_COUNT = 20
+        const val SECTION_COUNT = 10
+        const val KEYS_PER_SECTION = 100
+    }
+}
@@ -35,7 +35,7 @@ class BugsnagExitInfoPlugin @JvmOverloads constructor(
 
         val traceEventEnhancer = TraceEventEnhancer(
             client.logger,
-            client.immutableConfig.projectPackages
+            client.immutableConfig.projectPackageMatcher
         )
 
         val exitInfoPluginStore = ExitInfoPluginStore(client.immutableConfig)
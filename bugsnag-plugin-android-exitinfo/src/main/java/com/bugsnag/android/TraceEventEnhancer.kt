@@ -3,11 +3,12 @@ package com.bugsnag.android
 import android.app.ApplicationExitInfo
 import android.os.Build
 import androidx.annotation.RequiresApi
+import com.bugsnag.android.internal.ProjectPackageMatcher
 import com.bugsnag.android.Thread as BugsnagThread
 
 internal class TraceEventEnhancer(
     private val logger: Logger,
-    private val projectPackages: Collection<String>,
+    private val projectPackages: ProjectPackageMatcher,
 ) : (Event, ApplicationExitInfo) -> Unit {
     @RequiresApi(Build.VERSION_CODES.R)
     override fun invoke(event: Event, exitInfo: ApplicationExitInfo) {
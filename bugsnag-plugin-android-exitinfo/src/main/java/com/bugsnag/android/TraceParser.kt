@@ -1,12 +1,13 @@
 package com.bugsnag.android
 
 import androidx.annotation.VisibleForTesting
+import com.bugsnag.android.internal.ProjectPackageMatcher
 import java.io.InputStream
 import com.bugsnag.android.Thread as BugsnagThread
 
 internal class TraceParser(
     private val logger: Logger,
-    private val projectPackages: Collection<String>,
+    private val projectPackages: ProjectPackageMatcher,
 ) {
 
     /**
@@ -105,7 +106,7 @@ internal class TraceParser(
             method,
             file,
             lineNumber,
-            projectPackages.any { methodToClassName(method).startsWith(it) }.takeIf { it },
+            projectPackages.inProject(methodToClassName(method)),
         ).apply {
             type = ErrorType.ANDROID
         }
@@ -2,6 +2,7 @@ package com.bugsnag.android
 
 import android.app.ApplicationExitInfo
 import com.bugsnag.android.internal.ImmutableConfig
+import com.bugsnag.android.internal.ProjectPackageMatcher
 import org.junit.Assert.assertEquals
 import org.junit.Test
 import org.mockito.Mockito.mock
@@ -10,7 +11,7 @@ import com.bugsnag.android.Thread as BugsnagThread
 
 class TraceEventEnhancerTest {
     private val mockLogger = mock(Logger::class.java)
-    private val eventEnhancer = TraceEventEnhancer(mockLogger, emptySet())
+    private val eventEnhancer = TraceEventEnhancer(mockLogger, ProjectPackageMatcher(emptySet()))
 
     @Test
     fun testEventEnhancer() {
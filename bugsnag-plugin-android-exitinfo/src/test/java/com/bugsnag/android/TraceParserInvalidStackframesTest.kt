@@ -1,5 +1,6 @@
 package com.bugsnag.android
 
+import com.bugsnag.android.internal.ProjectPackageMatcher
 import org.junit.Assert.assertNull
 import org.junit.Test
 import org.junit.runner.RunWith
@@ -34,7 +35,8 @@ class TraceParserInvalidStackframesTest {
         )
     }
 
-    private val traceParser = TraceParser(Mockito.mock(Logger::class.java), emptySet())
+    private val traceParser =
+        TraceParser(Mockito.mock(Logger::class.java), ProjectPackageMatcher(emptySet()))
 
     @Parameterized.Parameter
     lateinit var stackFrame: String
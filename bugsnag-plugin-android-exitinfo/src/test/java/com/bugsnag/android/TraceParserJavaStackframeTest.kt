@@ -1,5 +1,6 @@
 package com.bugsnag.android
 
+import com.bugsnag.android.internal.ProjectPackageMatcher
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNotNull
 import org.junit.Assert.assertNull
@@ -38,7 +39,8 @@ class TraceParserJavaStackframeTest {
             )
     }
 
-    private val traceParser = TraceParser(mock(Logger::class.java), emptySet())
+    private val traceParser =
+        TraceParser(mock(Logger::class.java), ProjectPackageMatcher(emptySet()))
 
     @Parameter
     lateinit var stackFrame: Pair<String, Stackframe>
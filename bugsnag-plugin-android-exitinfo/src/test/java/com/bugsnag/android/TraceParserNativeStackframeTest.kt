@@ -1,5 +1,6 @@
 package com.bugsnag.android
 
+import com.bugsnag.android.internal.ProjectPackageMatcher
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNotNull
 import org.junit.Assert.assertNull
@@ -61,7 +62,8 @@ class TraceParserNativeStackframeTest {
         }
     }
 
-    private val traceParser = TraceParser(Mockito.mock(Logger::class.java), emptySet())
+    private val traceParser =
+        TraceParser(Mockito.mock(Logger::class.java), ProjectPackageMatcher(emptySet()))
 
     @Parameterized.Parameter
     lateinit var stackFrame: Pair<String, Stackframe>
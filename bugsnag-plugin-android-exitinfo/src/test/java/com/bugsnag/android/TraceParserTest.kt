@@ -1,5 +1,6 @@
 package com.bugsnag.android
 
+import com.bugsnag.android.internal.ProjectPackageMatcher
 import org.junit.Assert.assertEquals
 import org.junit.Test
 import org.mockito.Mockito.mock
@@ -105,7 +106,7 @@ class TraceParserTest {
 
     @Test
     fun testParseAnr() {
-        val traceParser = TraceParser(mockLogger, setOf("com.bugsnag"))
+        val traceParser = TraceParser(mockLogger, ProjectPackageMatcher(setOf("com.bugsnag")))
         val threads = mutableListOf<Thread>()
         traceParser.parse(this::class.java.getResourceAsStream("/emulator-exit-anr-trace")!!) {
             threads.add(it)
@@ -0,0 +1,46 @@
+package com.bugsnag.android.ndk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+internal class NativeStateBufferTest {
+
+    @Test
+    fun recordsAreCommittedToHeader() {
+        val stateBuffer = NativeStateBuffer(64)
+        assertTrue(stateBuffer.isEmpty)
+
+        assertTrue(stateBuffer.addHandledEvent())
+        assertFalse(stateBuffer.isEmpty)
+        val buffer = stateBuffer.buffer
+        assertEquals(5, buffer.getInt(0))
+        assertEquals(5, buffer.getInt(8))
+        assertEquals(2.toByte(), buffer.get(12))
+
+        assertTrue(stateBuffer.addBreadcrumb("n", 3, "ts", mapOf("a" to true, "b" to null)))
+        val length = buffer.getInt(13)
+        assertEquals(5 + length, buffer.getInt(0))
+        assertEquals(3.toByte(), buffer.get(18))
+        // only values which can be sent to the native layer are counted
+        assertEquals(1, buffer.getInt(32))
+
+        // a drain interrupted by a crash leaves its claimed length in the header
+        buffer.putInt(4, 5)
+        stateBuffer.reset()
+        assertTrue(stateBuffer.isEmpty)
+        assertEquals(0, buffer.getInt(0))
+        assertEquals(0, buffer.getInt(4))
+    }
+
+    @Test
+    fun recordsWhichDoNotFitAreNotWritten() {
+        val stateBuffer = NativeStateBuffer(64)
+        assertTrue(stateBuffer.addUnhandledEvent())
+        assertFalse(stateBuffer.addBreadcrumb("x".repeat(100), 1, "ts", emptyMap()))
+
+        assertEquals(13, stateBuffer.buffer.position())
+        assertEquals(5, stateBuffer.buffer.getInt(0))
+    }
+}
@@ -23,7 +23,9 @@ import com.bugsnag.android.internal.BackgroundTaskService
 import com.bugsnag.android.internal.StateObserver
 import com.bugsnag.android.internal.TaskType
 import java.io.File
+import java.nio.ByteBuffer
 import java.util.UUID
+import java.util.concurrent.RejectedExecutionException
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.locks.ReentrantLock
 import kotlin.concurrent.withLock
@@ -38,6 +40,15 @@ class NativeBridge(private val bgTaskService: BackgroundTaskService) : StateObse
     private val reportDirectory: File = NativeInterface.getNativeReportPath()
     private val logger = NativeInterface.getLogger()
 
+    /**
+     * Breadcrumbs and handled/unhandled counts are batched in [stateBuffer] and drained into
+     * the native layer together, rather than each making its own JNI call. Any other change is
+     * sent directly, after draining the buffer so that changes are applied in order.
+     */
+    private val stateBuffer = NativeStateBuffer()
+    private val stateBufferLock = ReentrantLock()
+    private var stateDrainScheduled = false
+
     private val is32bit: Boolean
         get() {
             val abis = NativeInterface.getCpuAbi()
@@ -55,6 +66,7 @@ class NativeBridge(private val bgTaskService: BackgroundTaskService) : StateObse
         is32bit: Boolean,
         threadSendPolicy: Int,
         maxBreadcrumbs: Int,
+        journalPath: String?,
     )
 
     external fun startedSession(
@@ -74,6 +86,9 @@ class NativeBridge(private val bgTaskService: BackgroundTaskService) : StateObse
 
     private external fun addBreadcrumb(name: String, type: Int, timestamp: String, metadata: Any)
     private external fun synchronizeState()
+    private external fun installStateBuffer(buffer: ByteBuffer)
+    private external fun drainStateBuffer()
+    private external fun restoreEventJournal(journalPath: String, reportingDirectory: String): Boolean
     external fun reportOutOfMemory(oom: OutOfMemoryError)
     external fun addMetadataString(tab: String, key: String, value: String)
     external fun addMetadataDouble(tab: String, key: String, value: Double)
@@ -108,7 +123,9 @@ class NativeBridge(private val bgTaskService: BackgroundTaskService) : StateObse
 
     override fun onStateChange(event: StateEvent) {
         if (isInvalidMessage(event)) return
+        if (bufferStateChange(event)) return
 
+        flushStateBuffer()
         when (event) {
             is Install -> handleInstallMessage(event)
             is DeliverPending -> deliverPendingReports()
@@ -180,6 +197,66 @@ class NativeBridge(private val bgTaskService: BackgroundTaskService) : StateObse
         }
     }
 
+    /**
+     * Adds [event] to the [stateBuffer] if it can be batched, returning `false` if it must be
+     * sent directly instead.
+     */
+    private fun bufferStateChange(event: StateEvent): Boolean {
+        if (event !is AddBreadcrumb && event != NotifyHandled && event != NotifyUnhandled) {
+            return false
+        }
+
+        stateBufferLock.withLock {
+            if (!writeStateChange(event)) {
+                // the buffer is full, changes too large for an empty buffer are sent directly
+                if (stateBuffer.isEmpty) return false
+                drainStateBufferLocked()
+                if (!writeStateChange(event)) return false
+            }
+
+            if (!stateDrainScheduled) {
+                stateDrainScheduled = true
+                try {
+                    bgTaskService.submitTask(TaskType.DEFAULT, this::flushStateBuffer)
+                } catch (exc: RejectedExecutionException) {
+                    // the buffer is drained by the next direct change or at crash time
+                    stateDrainScheduled = false
+                }
+            }
+            return true
+        }
+    }
+
+    private fun writeStateChange(event: StateEvent): Boolean = when (event) {
+        is AddBreadcrumb -> stateBuffer.addBreadcrumb(
+            event.message,
+            event.type.toNativeValue(),
+            event.timestamp,
+            event.metadata
+        )
+
+        NotifyHandled -> stateBuffer.addHandledEvent()
+        NotifyUnhandled -> stateBuffer.addUnhandledEvent()
+        else -> false
+    }
+
+    /**
+     * Applies any batched state changes to the native layer
+     */
+    private fun flushStateBuffer() {
+        stateBufferLock.withLock {
+            stateDrainScheduled = false
+            if (!stateBuffer.isEmpty) {
+                drainStateBufferLocked()
+            }
+        }
+    }
+
+    private fun drainStateBufferLocked() {
+        drainStateBuffer()
+        stateBuffer.reset()
+    }
+
     private fun deliverPendingReports() {
         val discardScanner = ReportDiscardScanner(logger)
         reportDirectory.listFiles()?.forEach { reportFile ->
@@ -207,6 +284,13 @@ class NativeBridge(private val bgTaskService: BackgroundTaskService) : StateObse
             if (installed.get()) {
                 logger.w("Received duplicate setup message with arg: $arg")
             } else {
+                // a crash journaled by the previous launch is converted to a report before it
+                // is replaced, even if journaling has since been disabled
+                val journalFile = File(reportDirectory.parentFile, JOURNAL_FILE_NAME)
+                if (journalFile.exists()) {
+                    restoreEventJournal(journalFile.absolutePath, reportDirectory.absolutePath)
+                }
+
                 install(
                     arg.apiKey,
                     reportDirectory.absolutePath,
@@ -217,8 +301,10 @@ class NativeBridge(private val bgTaskService: BackgroundTaskService) : StateObse
                     Build.VERSION.SDK_INT,
                     is32bit,
                     arg.sendThreads.ordinal,
-                    arg.maxBreadcrumbs
+                    arg.maxBreadcrumbs,
+                    if (arg.journalNativeCrashes) journalFile.absolutePath else null
                 )
+                installStateBuffer(stateBuffer.buffer)
                 installed.set(true)
             }
         }
@@ -252,4 +338,12 @@ class NativeBridge(private val bgTaskService: BackgroundTaskService) : StateObse
         BreadcrumbType.STATE -> 6
         BreadcrumbType.USER -> 7
     }
+
+    private companion object {
+        /**
+         * The memory-mapped journal of the next native crash report, which is kept outside of
+         * [reportDirectory] as it is not a report itself
+         */
+        const val JOURNAL_FILE_NAME = "native_event.journal"
+    }
 }
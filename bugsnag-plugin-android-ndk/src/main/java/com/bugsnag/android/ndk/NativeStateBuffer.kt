@@ -0,0 +1,135 @@
+package com.bugsnag.android.ndk
+
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * A direct buffer of state changes encoded for the native layer (`state_buffer.c`), so that
+ * frequent changes can be applied to the native event in batches instead of each crossing JNI.
+ *
+ * The buffer starts with a header holding the length of the complete records that follow it, and
+ * the length of those records the native layer has already claimed while draining them.
+ * The header is only updated once a record is complete, so that the native layer can safely
+ * read the buffer while handling a crash. This class is not thread safe.
+ */
+internal class NativeStateBuffer(capacity: Int = DEFAULT_CAPACITY) {
+
+    val buffer: ByteBuffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder())
+
+    init {
+        reset()
+    }
+
+    val isEmpty: Boolean
+        get() = buffer.position() == HEADER_SIZE
+
+    /**
+     * Encodes a breadcrumb, returning `false` if there is not enough space left in the buffer
+     */
+    fun addBreadcrumb(name: String, type: Int, timestamp: String, metadata: Map<String, Any?>) =
+        writeRecord(OP_ADD_BREADCRUMB) {
+            put(type.toByte())
+            putString(name)
+            putString(timestamp)
+
+            val countPosition = position()
+            putInt(0)
+            var count = 0
+            metadata.forEach { (key, value) ->
+                if (putMetadataValue(key, OpaqueValue.makeSafe(value))) {
+                    count++
+                }
+            }
+            putInt(countPosition, count)
+        }
+
+    fun addHandledEvent() = writeRecord(OP_ADD_HANDLED_EVENT) {}
+
+    fun addUnhandledEvent() = writeRecord(OP_ADD_UNHANDLED_EVENT) {}
+
+    /**
+     * Discards the records in the buffer, once they have been drained by the native layer
+     */
+    fun reset() {
+        buffer.putInt(0, 0)
+        buffer.putInt(CLAIMED_OFFSET, 0)
+        buffer.position(HEADER_SIZE)
+    }
+
+    private inline fun writeRecord(op: Byte, fields: ByteBuffer.() -> Unit): Boolean {
+        val start = buffer.position()
+        return try {
+            buffer.putInt(0)
+            buffer.put(op)
+            buffer.fields()
+            buffer.putInt(start, buffer.position() - start)
+            buffer.putInt(0, buffer.position() - HEADER_SIZE)
+            true
+        } catch (exc: BufferOverflowException) {
+            buffer.position(start)
+            false
+        }
+    }
+
+    private fun ByteBuffer.putMetadataValue(key: String, value: Any?): Boolean {
+        when (value) {
+            is Boolean -> {
+                putString(key)
+                put(VALUE_BOOL)
+                put(if (value) 1.toByte() else 0.toByte())
+            }
+
+            is Number -> {
+                putString(key)
+                put(VALUE_NUMBER)
+                putDouble(value.toDouble())
+            }
+
+            is String -> {
+                putString(key)
+                put(VALUE_STRING)
+                putString(value)
+            }
+
+            is OpaqueValue -> {
+                putString(key)
+                put(VALUE_OPAQUE)
+                putString(value.json)
+            }
+
+            else -> return false
+        }
+        return true
+    }
+
+    private fun ByteBuffer.putString(value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        putInt(bytes.size)
+        put(bytes)
+        put(0.toByte())
+    }
+
+    private companion object {
+        const val DEFAULT_CAPACITY = 64 * 1024
+
+        /**
+         * Matches `BSG_STATE_BUFFER_HEADER_SIZE`
+         */
+        const val HEADER_SIZE = 8
+
+        /**
+         * Matches `BSG_STATE_BUFFER_CLAIMED_OFFSET`
+         */
+        const val CLAIMED_OFFSET = 4
+
+        const val OP_ADD_BREADCRUMB: Byte = 1
+        const val OP_ADD_HANDLED_EVENT: Byte = 2
+        const val OP_ADD_UNHANDLED_EVENT: Byte = 3
+
+        const val VALUE_BOOL: Byte = 0
+        const val VALUE_NUMBER: Byte = 1
+        const val VALUE_STRING: Byte = 2
+        const val VALUE_OPAQUE: Byte = 3
+    }
+}
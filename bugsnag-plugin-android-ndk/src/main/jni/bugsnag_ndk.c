@@ -8,6 +8,7 @@
 #include <utils/memory.h>
 
 #include "event.h"
+#include "event_journal.h"
 #include "featureflags.h"
 #include "handlers/cpp_handler.h"
 #include "handlers/signal_handler.h"
@@ -15,6 +16,7 @@
 #include "jni_cache.h"
 #include "metadata.h"
 #include "safejni.h"
+#include "state_buffer.h"
 #include "utils/java_stacktrace.h"
 #include "utils/serializer.h"
 #include "utils/string.h"
@@ -153,13 +155,26 @@ static void JNI_NativeBridge_install(JNIEnv *env, jobject _this,
                                      jint consecutive_launch_crashes,
                                      jboolean auto_detect_ndk_crashes,
                                      jint _api_level, jboolean is32bit,
-                                     jint send_threads, jint max_breadcrumbs) {
+                                     jint send_threads, jint max_breadcrumbs,
+                                     jstring _journal_path) {
 
   if (!bsg_jni_cache_init(env)) {
     BUGSNAG_LOG("Could not init JNI jni_cache.");
   }
 
-  bsg_environment *bugsnag_env = calloc(1, sizeof(bsg_environment));
+  bsg_environment *bugsnag_env = NULL;
+  const char *journal_path = bsg_safe_get_string_utf_chars(env, _journal_path);
+  if (journal_path != NULL) {
+    bugsnag_env = bsg_event_journal_open(journal_path, max_breadcrumbs);
+    bsg_safe_release_string_utf_chars(env, _journal_path, journal_path);
+    if (bugsnag_env == NULL) {
+      BUGSNAG_LOG("Could not map the event journal, falling back to memory");
+    }
+  }
+
+  if (bugsnag_env == NULL) {
+    bugsnag_env = calloc(1, sizeof(bsg_environment));
+  }
   if (bugsnag_env == NULL) {
     BUGSNAG_LOG("Failed to allocate memory for bsg_environment");
     return;
@@ -173,9 +188,12 @@ static void JNI_NativeBridge_install(JNIEnv *env, jobject _this,
   bugsnag_env->send_threads = send_threads;
   bugsnag_env->handling_crash = ATOMIC_VAR_INIT(false);
 
-  bugsnag_env->next_event.max_crumb_count = max_breadcrumbs;
-  bugsnag_env->next_event.breadcrumbs =
-      calloc(max_breadcrumbs, sizeof(bugsnag_breadcrumb));
+  // the breadcrumbs are already mapped if the env is held by the journal
+  if (bugsnag_env->next_event.breadcrumbs == NULL) {
+    bugsnag_env->next_event.max_crumb_count = max_breadcrumbs;
+    bugsnag_env->next_event.breadcrumbs =
+        calloc(max_breadcrumbs, sizeof(bugsnag_breadcrumb));
+  }
 
   if (bugsnag_env->next_event.breadcrumbs == NULL) {
     goto error;
@@ -239,6 +257,8 @@ static void JNI_NativeBridge_install(JNIEnv *env, jobject _this,
   // clear the feature flag fields
   bugsnag_env->next_event.feature_flag_count = 0;
   bugsnag_env->next_event.feature_flags = NULL;
+  bugsnag_env->next_event.feature_flag_index = NULL;
+  bugsnag_env->next_event.feature_flag_index_capacity = 0;
 
   atomic_init(&bugsnag_env->static_json_data, NULL);
 
@@ -248,7 +268,24 @@ static void JNI_NativeBridge_install(JNIEnv *env, jobject _this,
   return;
 
 error:
-  free(bugsnag_env);
+  if (!bsg_event_journal_close(bugsnag_env)) {
+    free(bugsnag_env);
+  }
+}
+
+static jboolean JNI_NativeBridge_restoreEventJournal(JNIEnv *env,
+                                                     jobject _this,
+                                                     jstring _journal_path,
+                                                     jstring _event_path) {
+  jboolean restored = false;
+  const char *journal_path = bsg_safe_get_string_utf_chars(env, _journal_path);
+  const char *event_path = bsg_safe_get_string_utf_chars(env, _event_path);
+  if (journal_path != NULL && event_path != NULL) {
+    restored = bsg_event_journal_restore(journal_path, event_path);
+  }
+  bsg_safe_release_string_utf_chars(env, _journal_path, journal_path);
+  bsg_safe_release_string_utf_chars(env, _event_path, event_path);
+  return restored;
 }
 
 static void JNI_NativeBridge_addHandledEvent(JNIEnv *env, jobject _this) {
@@ -334,36 +371,7 @@ static void JNI_NativeBridge_addBreadcrumb(JNIEnv *env, jobject _this,
     bsg_strncpy(crumb->name, name, sizeof(crumb->name));
     bsg_strncpy(crumb->timestamp, timestamp, sizeof(crumb->timestamp));
 
-    // the values of crumb_type are defined in
-    // NativeBridge.BreadcrumbType.toNativeValue()
-    switch (crumb_type) {
-    case 0:
-      crumb->type = BSG_CRUMB_ERROR;
-      break;
-    case 1:
-      crumb->type = BSG_CRUMB_LOG;
-      break;
-    case 2:
-      crumb->type = BSG_CRUMB_MANUAL;
-      break;
-    case 3:
-      crumb->type = BSG_CRUMB_NAVIGATION;
-      break;
-    case 4:
-      crumb->type = BSG_CRUMB_PROCESS;
-      break;
-    case 5:
-      crumb->type = BSG_CRUMB_REQUEST;
-      break;
-    case 6:
-      crumb->type = BSG_CRUMB_STATE;
-      break;
-    case 7:
-      crumb->type = BSG_CRUMB_USER;
-      break;
-    default:
-      crumb->type = BSG_CRUMB_MANUAL;
-    }
+    crumb->type = bsg_breadcrumb_type_from_native_value(crumb_type);
 
     bsg_populate_crumb_metadata(env, crumb, metadata);
     bsg_environment *bsg_env = request_env_write_lock();
@@ -380,6 +388,34 @@ static void JNI_NativeBridge_addBreadcrumb(JNIEnv *env, jobject _this,
   bsg_safe_release_string_utf_chars(env, timestamp_, timestamp);
 }
 
+static void JNI_NativeBridge_installStateBuffer(JNIEnv *env, jobject _this,
+                                                jobject buffer) {
+  uint8_t *address = (*env)->GetDirectBufferAddress(env, buffer);
+  jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+  if (address == NULL || capacity <= BSG_STATE_BUFFER_HEADER_SIZE) {
+    BUGSNAG_LOG("installStateBuffer failed: not a direct buffer.");
+    return;
+  }
+
+  bsg_environment *bsg_env = request_env_write_lock();
+  if (bsg_env == NULL) {
+    return;
+  }
+  // the buffer is kept reachable by NativeBridge for the life of the process
+  bsg_env->state_buffer = address;
+  bsg_env->state_buffer_size = (size_t)capacity;
+  release_env_write_lock();
+}
+
+static void JNI_NativeBridge_drainStateBuffer(JNIEnv *env, jobject _this) {
+  bsg_environment *bsg_env = request_env_write_lock();
+  if (bsg_env == NULL) {
+    return;
+  }
+  bsg_state_buffer_drain(bsg_env, false);
+  release_env_write_lock();
+}
+
 static void JNI_NativeBridge_updateAppVersion(JNIEnv *env, jobject _this,
                                               jstring new_value) {
   char *value = (char *)bsg_safe_get_string_utf_chars(env, new_value);
@@ -984,6 +1020,11 @@ static void JNI_NativeBridge_reportOutOfMemory(JNIEnv *env, jobject thiz,
     return;
   }
 
+  // apply any state changes which were batched but not yet drained, these are
+  // the breadcrumbs immediately preceding the OOM. The drain does not allocate,
+  // as there may be no memory left to allocate from.
+  bsg_state_buffer_drain(bsg_env, true);
+
   bugsnag_event *event = &bsg_env->next_event;
 
   // Mark as unhandled error (OOM is always unhandled)
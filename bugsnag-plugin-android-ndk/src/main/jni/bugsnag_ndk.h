@@ -6,6 +6,7 @@
 
 #include <stdatomic.h>
 #include <stdbool.h>
+#include <stdint.h>
 
 #include "event.h"
 #include "include/bugsnag.h"
@@ -82,6 +83,14 @@ typedef struct {
    */
   const char *_Atomic static_json_data;
 
+  /**
+   * The direct ByteBuffer that NativeBridge batches state changes into, which
+   * are applied to next_event when drained (including at crash time). NULL
+   * until installed.
+   */
+  uint8_t *state_buffer;
+  size_t state_buffer_size;
+
 } bsg_environment;
 
 /**
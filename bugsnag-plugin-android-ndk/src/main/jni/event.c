@@ -8,6 +8,28 @@
 static void bsg_clear_metadata_value(bsg_metadata_value *value);
 static void bsg_free_opaque_metadata(bugsnag_metadata *metadata);
 
+/*
+ * The number of slots in the hash table used to find duplicates in
+ * bsg_metadata_compact, which is kept at most half full
+ */
+#define METADATA_KEY_SLOTS (BUGSNAG_METADATA_MAX * 2)
+
+static uint32_t hash_metadata_key(const bsg_metadata_value *const value) {
+  // FNV-1a of the section and name, including the section terminator to
+  // separate them
+  uint32_t hash = 2166136261u;
+  const unsigned char *c = (const unsigned char *)value->section;
+  do {
+    hash ^= *c;
+    hash *= 16777619u;
+  } while (*c++ != 0);
+  for (c = (const unsigned char *)value->name; *c != 0; c++) {
+    hash ^= *c;
+    hash *= 16777619u;
+  }
+  return hash;
+}
+
 /**
  * Compact the given metadata array by removing all duplicate entries and NONE
  * values. This will retain the order of the values. After this function
@@ -18,28 +40,38 @@ static void bsg_free_opaque_metadata(bugsnag_metadata *metadata);
  */
 static bool bsg_metadata_compact(bugsnag_metadata *const metadata) {
   int toRemove = 0;
+  // open-addressed table of the indexes (+1, so that 0 is empty) of the keys
+  // we have already seen, so that finding duplicates is O(n) rather than O(n^2)
+  int16_t seen[METADATA_KEY_SLOTS];
+  memset(seen, 0, sizeof(seen));
 
   // first mark any duplicates as NONE, and count up all the empty (NONE) values
-  // we find scan the array backwards to make retaining order simple
+  // we find scan the array backwards so that the last value for each key is
+  // the one retained, and to make retaining order simple
   for (int primaryIndex = metadata->value_count - 1; primaryIndex >= 0;
        primaryIndex--) {
-    if (metadata->values[primaryIndex].type == BSG_METADATA_NONE_VALUE) {
+    bsg_metadata_value *value = &(metadata->values[primaryIndex]);
+    if (value->type == BSG_METADATA_NONE_VALUE) {
       toRemove++;
       continue;
     }
 
-    const char *section = metadata->values[primaryIndex].section;
-    const char *name = metadata->values[primaryIndex].name;
-
-    for (int searchIndex = primaryIndex - 1; searchIndex >= 0; searchIndex--) {
-      bsg_metadata_value *value = &(metadata->values[searchIndex]);
-      if (strcmp(value->section, section) == 0 &&
-          strcmp(value->name, name) == 0) {
-
-        // this will be picked up by our primaryIndex search on a future
-        // iteration
-        bsg_clear_metadata_value(value);
+    size_t slot = hash_metadata_key(value) % METADATA_KEY_SLOTS;
+    while (seen[slot] != 0) {
+      const bsg_metadata_value *retained = &(metadata->values[seen[slot] - 1]);
+      if (strcmp(retained->section, value->section) == 0 &&
+          strcmp(retained->name, value->name) == 0) {
+        break;
       }
+      slot = (slot + 1) % METADATA_KEY_SLOTS;
+    }
+
+    if (seen[slot] != 0) {
+      // a later value has the same key, so this one is a duplicate
+      bsg_clear_metadata_value(value);
+      toRemove++;
+    } else {
+      seen[slot] = (int16_t)(primaryIndex + 1);
     }
   }
 
@@ -136,12 +168,14 @@ static int allocate_metadata_index(bugsnag_metadata *metadata,
 }
 
 void bsg_clear_metadata_value(bsg_metadata_value *value) {
-  if (value->type == BSG_METADATA_OPAQUE_VALUE &&
-      value->opaque_value_size > 0) {
-    bsg_free(value->opaque_value);
+  if (value->type == BSG_METADATA_OPAQUE_VALUE) {
+    if (value->opaque_value_owned) {
+      bsg_free(value->opaque_value);
+    }
 
     value->opaque_value = NULL;
     value->opaque_value_size = 0;
+    value->opaque_value_owned = false;
   }
 
   value->type = BSG_METADATA_NONE_VALUE;
@@ -201,6 +235,19 @@ void bsg_add_metadata_value_opaque(bugsnag_metadata *metadata,
     metadata->values[index].opaque_value = duplicate;
     metadata->values[index].type = BSG_METADATA_OPAQUE_VALUE;
     metadata->values[index].opaque_value_size = bsg_strlen(json);
+    metadata->values[index].opaque_value_owned = true;
+  }
+}
+
+void bsg_add_metadata_value_opaque_ref(bugsnag_metadata *metadata,
+                                       const char *section, const char *name,
+                                       const char *json, size_t json_size) {
+  int index = allocate_metadata_index(metadata, section, name);
+  if (index >= 0) {
+    metadata->values[index].opaque_value = (void *)json;
+    metadata->values[index].type = BSG_METADATA_OPAQUE_VALUE;
+    metadata->values[index].opaque_value_size = json_size;
+    metadata->values[index].opaque_value_owned = false;
   }
 }
 
@@ -366,6 +413,12 @@ void bugsnag_event_set_user(void *event_ptr, const char *id, const char *email,
 }
 
 void bsg_event_add_breadcrumb(bugsnag_event *event, bugsnag_breadcrumb *crumb) {
+  memcpy(bsg_event_reserve_breadcrumb(event), crumb,
+         sizeof(bugsnag_breadcrumb));
+}
+
+static bugsnag_breadcrumb *reserve_breadcrumb(bugsnag_event *event,
+                                              bool release_metadata) {
   int crumb_index;
   if (event->crumb_count < event->max_crumb_count) {
     crumb_index = event->crumb_count;
@@ -376,8 +429,20 @@ void bsg_event_add_breadcrumb(bugsnag_event *event, bugsnag_breadcrumb *crumb) {
         (event->crumb_first_index + 1) % event->max_crumb_count;
   }
 
-  bsg_free_opaque_metadata(&(event->breadcrumbs[crumb_index].metadata));
-  memcpy(&event->breadcrumbs[crumb_index], crumb, sizeof(bugsnag_breadcrumb));
+  bugsnag_breadcrumb *crumb = &event->breadcrumbs[crumb_index];
+  if (release_metadata) {
+    bsg_free_opaque_metadata(&crumb->metadata);
+  }
+  memset(crumb, 0, sizeof(bugsnag_breadcrumb));
+  return crumb;
+}
+
+bugsnag_breadcrumb *bsg_event_reserve_breadcrumb(bugsnag_event *event) {
+  return reserve_breadcrumb(event, true);
+}
+
+bugsnag_breadcrumb *bsg_event_reserve_crash_breadcrumb(bugsnag_event *event) {
+  return reserve_breadcrumb(event, false);
 }
 
 bool bsg_event_has_session(const bugsnag_event *event) {
@@ -3,6 +3,7 @@
 
 #include "bsg_unwind.h"
 #include "include/event.h"
+#include "utils/build.h"
 #include <stdbool.h>
 #include <sys/types.h>
 #ifndef BUGSNAG_METADATA_MAX
@@ -144,6 +145,12 @@ typedef struct {
    * Length of the opaque_value cached here for performance
    */
   size_t opaque_value_size;
+
+  /**
+   * true if opaque_value was allocated for this value and must be freed when
+   * it is cleared, false if it refers to memory owned elsewhere
+   */
+  bool opaque_value_owned;
 } bsg_metadata_value;
 
 typedef struct {
@@ -254,6 +261,19 @@ typedef struct {
    */
   bsg_feature_flag *feature_flags;
 
+  /**
+   * Open-addressed hash table of indexes into feature_flags, used to find flags
+   * by name. Each slot is either an index or -1 when empty. This is only ever
+   * used when modifying the feature flags, and is NULL until the first flag is
+   * set (or if it could not be allocated).
+   */
+  int32_t *feature_flag_index;
+
+  /**
+   * The number of slots in feature_flag_index, always a power of 2.
+   */
+  size_t feature_flag_index_capacity;
+
   /**
    * Counters to count how many times a callback was set.
    * There are actually less than 10 callbacks, but leave room for expansion.
@@ -273,6 +293,18 @@ typedef struct {
 } bugsnag_event;
 
 void bsg_event_add_breadcrumb(bugsnag_event *event, bugsnag_breadcrumb *crumb);
+/**
+ * Make room for a new breadcrumb in the event, evicting the oldest if it is
+ * full, and return the cleared slot to be filled in place.
+ */
+bugsnag_breadcrumb *bsg_event_reserve_breadcrumb(bugsnag_event *event);
+/**
+ * Make room for a new breadcrumb while handling a crash. This is the same as
+ * bsg_event_reserve_breadcrumb, except that any opaque metadata of an evicted
+ * breadcrumb is abandoned rather than freed.
+ */
+bugsnag_breadcrumb *bsg_event_reserve_crash_breadcrumb(bugsnag_event *event)
+    __asyncsafe;
 void bsg_event_start_session(bugsnag_event *event, const char *session_id,
                              const char *started_at, int handled_count,
                              int unhandled_count);
@@ -289,6 +321,14 @@ void bsg_add_metadata_value_bool(bugsnag_metadata *metadata,
 void bsg_add_metadata_value_opaque(bugsnag_metadata *metadata,
                                    const char *section, const char *name,
                                    const char *json);
+/**
+ * Add an OPAQUE value which refers to `json` rather than copying it. This does
+ * not allocate, so can be used while handling a crash, but `json` must remain
+ * valid until the metadata is written.
+ */
+void bsg_add_metadata_value_opaque_ref(bugsnag_metadata *metadata,
+                                       const char *section, const char *name,
+                                       const char *json, size_t json_size);
 
 /*********************************
  * (end) NDK-SPECIFIC BITS
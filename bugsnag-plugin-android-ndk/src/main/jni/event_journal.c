@@ -0,0 +1,522 @@
+#include "event_journal.h"
+
+#include <errno.h>
+#include <fcntl.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/file.h>
+#include <sys/mman.h>
+#include <sys/statfs.h>
+#include <unistd.h>
+
+#include "utils/serializer/buffered_writer.h"
+#include "utils/serializer/event_writer.h"
+#include "utils/string.h"
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/*
+ * The journal file is laid out as:
+ *
+ *   bsg_journal_header
+ *   bsg_environment              (at env_offset)
+ *   bugsnag_breadcrumb[max]      (at crumbs_offset)
+ *   appendix                     (at appendix_offset, written by commit)
+ *
+ * Everything before the appendix is mapped, and is the live state of the
+ * process. Pointers within it are only meaningful to the process which wrote
+ * them, so when a crash occurs the values they refer to are appended in a fixed
+ * order (see write_appendix) as an int32 length followed by that many bytes. A
+ * length of -1 is a NULL value.
+ */
+#define BSG_JOURNAL_MAGIC "BSGJRNL"
+#define BSG_JOURNAL_VERSION 1
+#define BSG_JOURNAL_ALIGNMENT 64
+#define BSG_JOURNAL_NULL_VALUE (-1)
+#define BSG_JOURNAL_MAX_APPENDIX_SIZE (64 * 1024 * 1024)
+
+#define BSG_JOURNAL_STATE_LIVE 0
+#define BSG_JOURNAL_STATE_CRASHED 1
+
+typedef struct {
+  char magic[8];
+  int32_t journal_version;
+  int32_t event_version;
+  int32_t state;
+  int32_t max_crumb_count;
+  uint32_t env_size;
+  uint32_t crumb_size;
+  uint64_t env_offset;
+  uint64_t crumbs_offset;
+  uint64_t appendix_offset;
+  uint64_t appendix_size;
+} bsg_journal_header;
+
+static struct {
+  int fd;
+  void *mapping;
+  size_t mapping_size;
+  bsg_environment *env;
+} bsg_journal = {.fd = -1};
+
+static uint64_t align_to(uint64_t value, uint64_t alignment) {
+  return (value + alignment - 1) / alignment * alignment;
+}
+
+static void init_header(bsg_journal_header *header, int32_t max_crumb_count) {
+  memset(header, 0, sizeof(bsg_journal_header));
+  memcpy(header->magic, BSG_JOURNAL_MAGIC, sizeof(BSG_JOURNAL_MAGIC));
+  header->journal_version = BSG_JOURNAL_VERSION;
+  header->event_version = BUGSNAG_EVENT_VERSION;
+  header->state = BSG_JOURNAL_STATE_LIVE;
+  header->max_crumb_count = max_crumb_count;
+  header->env_size = sizeof(bsg_environment);
+  header->crumb_size = sizeof(bugsnag_breadcrumb);
+  header->env_offset =
+      align_to(sizeof(bsg_journal_header), BSG_JOURNAL_ALIGNMENT);
+  header->crumbs_offset = align_to(
+      header->env_offset + sizeof(bsg_environment), BSG_JOURNAL_ALIGNMENT);
+  header->appendix_offset =
+      align_to(header->crumbs_offset +
+                   (uint64_t)max_crumb_count * sizeof(bugsnag_breadcrumb),
+               (uint64_t)sysconf(_SC_PAGESIZE));
+}
+
+static bool is_valid_header(const bsg_journal_header *header) {
+  if (header->max_crumb_count < 0) {
+    return false;
+  }
+
+  bsg_journal_header expected;
+  init_header(&expected, header->max_crumb_count);
+  return memcmp(header->magic, expected.magic, sizeof(expected.magic)) == 0 &&
+         header->journal_version == expected.journal_version &&
+         header->event_version == expected.event_version &&
+         header->env_size == expected.env_size &&
+         header->crumb_size == expected.crumb_size &&
+         header->env_offset == expected.env_offset &&
+         header->crumbs_offset == expected.crumbs_offset &&
+         header->appendix_offset == expected.appendix_offset;
+}
+
+/*
+ * Pages of the journal are only allocated on disk when they are first written
+ * through the mapping, which raises SIGBUS if they cannot be allocated. The
+ * journal is only used when there is plenty of space to spare.
+ */
+static bool has_space_for_journal(int fd, uint64_t size) {
+  struct statfs stats;
+  if (fstatfs(fd, &stats) != 0) {
+    return false;
+  }
+  return (uint64_t)stats.f_bavail * stats.f_bsize >= size * 2;
+}
+
+bsg_environment *bsg_event_journal_open(const char *path, int max_crumb_count) {
+  if (bsg_journal.mapping != NULL || max_crumb_count < 0) {
+    return NULL;
+  }
+
+  int fd = open(path, O_RDWR | O_CREAT | O_CLOEXEC, 0600);
+  if (fd < 0) {
+    return NULL;
+  }
+
+  bsg_journal_header header;
+  init_header(&header, max_crumb_count);
+  const size_t size = (size_t)header.appendix_offset;
+
+  // the lock is held until the fd is closed, or the process dies
+  if (flock(fd, LOCK_EX | LOCK_NB) != 0 || !has_space_for_journal(fd, size) ||
+      ftruncate(fd, 0) != 0 || ftruncate(fd, (off_t)size) != 0) {
+    goto fail;
+  }
+
+  void *mapping =
+      mmap(NULL, size, PROT_READ | PROT_WRITE, MAP_SHARED, fd, (off_t)0);
+  if (mapping == MAP_FAILED) {
+    goto fail;
+  }
+
+  memcpy(mapping, &header, sizeof(header));
+  bsg_environment *env =
+      (bsg_environment *)((uint8_t *)mapping + header.env_offset);
+  env->next_event.max_crumb_count = max_crumb_count;
+  env->next_event.breadcrumbs =
+      (bugsnag_breadcrumb *)((uint8_t *)mapping + header.crumbs_offset);
+
+  bsg_journal.fd = fd;
+  bsg_journal.mapping = mapping;
+  bsg_journal.mapping_size = size;
+  bsg_journal.env = env;
+  return env;
+
+fail:
+  close(fd);
+  return NULL;
+}
+
+bool bsg_event_journal_close(bsg_environment *env) {
+  if (env == NULL || env != bsg_journal.env) {
+    return false;
+  }
+
+  munmap(bsg_journal.mapping, bsg_journal.mapping_size);
+  close(bsg_journal.fd);
+  bsg_journal.fd = -1;
+  bsg_journal.mapping = NULL;
+  bsg_journal.mapping_size = 0;
+  bsg_journal.env = NULL;
+  return true;
+}
+
+static bool write_value(bsg_buffered_writer *writer, const void *value,
+                        size_t length) {
+  const int32_t prefix =
+      value == NULL ? BSG_JOURNAL_NULL_VALUE : (int32_t)length;
+  return writer->write(writer, &prefix, sizeof(prefix)) &&
+         (value == NULL || writer->write(writer, value, length));
+}
+
+static bool write_string(bsg_buffered_writer *writer, const char *value) {
+  return write_value(writer, value, value == NULL ? 0 : bsg_strlen(value));
+}
+
+static bool write_opaque_values(bsg_buffered_writer *writer,
+                                const bugsnag_metadata *metadata) {
+  for (int i = 0; i < metadata->value_count; i++) {
+    const bsg_metadata_value *value = &metadata->values[i];
+    if (value->type == BSG_METADATA_OPAQUE_VALUE &&
+        !write_value(writer, value->opaque_value, value->opaque_value_size)) {
+      return false;
+    }
+  }
+  return true;
+}
+
+/*
+ * The appendix holds (in order) the static data, the opaque metadata values of
+ * the event and of every breadcrumb slot, and the name & variant of each
+ * feature flag. read_appendix must match this order.
+ */
+static bool write_appendix(bsg_buffered_writer *writer, bsg_environment *env) {
+  bugsnag_event *event = &env->next_event;
+  if (!write_string(writer, env->static_json_data) ||
+      !write_opaque_values(writer, &event->metadata)) {
+    return false;
+  }
+
+  for (int i = 0; i < event->max_crumb_count; i++) {
+    if (!write_opaque_values(writer, &event->breadcrumbs[i].metadata)) {
+      return false;
+    }
+  }
+
+  for (size_t i = 0; i < event->feature_flag_count; i++) {
+    if (!write_string(writer, event->feature_flags[i].name) ||
+        !write_string(writer, event->feature_flags[i].variant)) {
+      return false;
+    }
+  }
+
+  return writer->flush(writer);
+}
+
+bool bsg_event_journal_commit(bsg_environment *env) {
+  if (env == NULL || env != bsg_journal.env) {
+    return false;
+  }
+
+  bsg_journal_header *header = bsg_journal.mapping;
+  bsg_buffered_writer writer;
+  if (lseek(bsg_journal.fd, (off_t)header->appendix_offset, SEEK_SET) < 0 ||
+      !bsg_buffered_writer_open_fd(&writer, bsg_journal.fd) ||
+      !write_appendix(&writer, env)) {
+    return false;
+  }
+
+  const off_t end = lseek(bsg_journal.fd, 0, SEEK_CUR);
+  if (end < 0) {
+    return false;
+  }
+
+  header->appendix_size = (uint64_t)end - header->appendix_offset;
+  header->state = BSG_JOURNAL_STATE_CRASHED;
+
+  // the journal is restored even if this fails, as the kernel still writes
+  // the mapped pages back once the process is gone
+  msync(bsg_journal.mapping, bsg_journal.mapping_size, MS_SYNC);
+  return true;
+}
+
+static bool read_fully(int fd, uint64_t offset, void *dst, size_t size) {
+  if (lseek(fd, (off_t)offset, SEEK_SET) < 0) {
+    return false;
+  }
+
+  uint8_t *pos = dst;
+  while (size > 0) {
+    ssize_t count = read(fd, pos, size);
+    if (count < 0 && errno == EINTR) {
+      continue;
+    }
+    if (count <= 0) {
+      return false;
+    }
+    pos += count;
+    size -= count;
+  }
+  return true;
+}
+
+typedef struct {
+  const uint8_t *pos;
+  const uint8_t *end;
+} bsg_appendix_reader;
+
+static bool read_value(bsg_appendix_reader *reader, char **dst) {
+  int32_t length;
+  if ((size_t)(reader->end - reader->pos) < sizeof(length)) {
+    return false;
+  }
+  memcpy(&length, reader->pos, sizeof(length));
+  reader->pos += sizeof(length);
+
+  if (length == BSG_JOURNAL_NULL_VALUE) {
+    *dst = NULL;
+    return true;
+  }
+  if (length < 0 || (size_t)(reader->end - reader->pos) < (size_t)length) {
+    return false;
+  }
+
+  char *value = malloc((size_t)length + 1);
+  if (value == NULL) {
+    return false;
+  }
+  memcpy(value, reader->pos, length);
+  value[length] = '\0';
+  reader->pos += length;
+  *dst = value;
+  return true;
+}
+
+static bool read_opaque_values(bsg_appendix_reader *reader,
+                               bugsnag_metadata *metadata) {
+  for (int i = 0; i < metadata->value_count; i++) {
+    bsg_metadata_value *value = &metadata->values[i];
+    if (value->type != BSG_METADATA_OPAQUE_VALUE) {
+      continue;
+    }
+
+    char *json;
+    if (!read_value(reader, &json)) {
+      return false;
+    }
+    if (json == NULL) {
+      value->type = BSG_METADATA_NONE_VALUE;
+    } else {
+      value->opaque_value = json;
+      value->opaque_value_size = strlen(json);
+      value->opaque_value_owned = true;
+    }
+  }
+  return true;
+}
+
+static bool read_appendix(bsg_appendix_reader *reader, bsg_environment *env,
+                          size_t feature_flag_count) {
+  bugsnag_event *event = &env->next_event;
+  char *static_json_data;
+  if (!read_value(reader, &static_json_data)) {
+    return false;
+  }
+  env->static_json_data = static_json_data;
+
+  if (!read_opaque_values(reader, &event->metadata)) {
+    return false;
+  }
+  for (int i = 0; i < event->max_crumb_count; i++) {
+    if (!read_opaque_values(reader, &event->breadcrumbs[i].metadata)) {
+      return false;
+    }
+  }
+
+  if (feature_flag_count == 0) {
+    return true;
+  }
+  // every flag takes at least two length prefixes
+  if (feature_flag_count > (size_t)(reader->end - reader->pos) / 8) {
+    return false;
+  }
+  event->feature_flags = calloc(feature_flag_count, sizeof(bsg_feature_flag));
+  if (event->feature_flags == NULL) {
+    return false;
+  }
+  for (size_t i = 0; i < feature_flag_count; i++) {
+    bsg_feature_flag *flag = &event->feature_flags[i];
+    event->feature_flag_count = i + 1;
+    if (!read_value(reader, &flag->name) ||
+        !read_value(reader, &flag->variant) || flag->name == NULL) {
+      return false;
+    }
+  }
+  return true;
+}
+
+static void clamp_metadata(bugsnag_metadata *metadata) {
+  if (metadata->value_count < 0) {
+    metadata->value_count = 0;
+  } else if (metadata->value_count > BUGSNAG_METADATA_MAX) {
+    metadata->value_count = BUGSNAG_METADATA_MAX;
+  }
+  for (int i = 0; i < metadata->value_count; i++) {
+    metadata->values[i].opaque_value = NULL;
+    metadata->values[i].opaque_value_size = 0;
+    metadata->values[i].opaque_value_owned = false;
+  }
+}
+
+/*
+ * Replace every pointer in the restored environment, which all refer to the
+ * crashed process, and make sure that the counts are in range.
+ */
+static void prepare_restored_env(bsg_environment *env,
+                                 bugsnag_breadcrumb *crumbs,
+                                 int max_crumb_count, const char *event_path) {
+  bugsnag_event *event = &env->next_event;
+  env->event_path = (char *)event_path;
+  env->static_json_data = NULL;
+  env->state_buffer = NULL;
+  env->state_buffer_size = 0;
+
+  event->breadcrumbs = crumbs;
+  event->max_crumb_count = max_crumb_count;
+  if (event->crumb_count < 0 || event->crumb_count > max_crumb_count) {
+    event->crumb_count = 0;
+  }
+  if (event->crumb_first_index < 0 ||
+      event->crumb_first_index >= max_crumb_count) {
+    event->crumb_first_index = 0;
+  }
+  if (event->thread_count < 0 || event->thread_count > BUGSNAG_THREADS_MAX) {
+    event->thread_count = 0;
+  }
+  if (event->error.frame_count < 0 ||
+      event->error.frame_count > BUGSNAG_FRAMES_MAX) {
+    event->error.frame_count = 0;
+  }
+  event->feature_flags = NULL;
+  event->feature_flag_count = 0;
+  event->feature_flag_index = NULL;
+  event->feature_flag_index_capacity = 0;
+
+  clamp_metadata(&event->metadata);
+  for (int i = 0; i < max_crumb_count; i++) {
+    clamp_metadata(&crumbs[i].metadata);
+  }
+}
+
+static void free_opaque_values(bugsnag_metadata *metadata) {
+  for (int i = 0; i < metadata->value_count; i++) {
+    if (metadata->values[i].type == BSG_METADATA_OPAQUE_VALUE) {
+      free(metadata->values[i].opaque_value);
+    }
+  }
+}
+
+static void free_restored_env(bsg_environment *env) {
+  bugsnag_event *event = &env->next_event;
+  free((void *)env->static_json_data);
+  free_opaque_values(&event->metadata);
+  for (int i = 0; i < event->max_crumb_count; i++) {
+    free_opaque_values(&event->breadcrumbs[i].metadata);
+  }
+  for (size_t i = 0; i < event->feature_flag_count; i++) {
+    free(event->feature_flags[i].name);
+    free(event->feature_flags[i].variant);
+  }
+  free(event->feature_flags);
+}
+
+static bool write_restored_event(bsg_environment *env,
+                                 bugsnag_breadcrumb *crumbs,
+                                 const uint8_t *appendix,
+                                 const bsg_journal_header *header,
+                                 const char *event_path) {
+  const size_t feature_flag_count = env->next_event.feature_flag_count;
+  prepare_restored_env(env, crumbs, header->max_crumb_count, event_path);
+
+  bsg_appendix_reader reader = {
+      .pos = appendix,
+      .end = appendix + header->appendix_size,
+  };
+  bool written = false;
+  if (read_appendix(&reader, env, feature_flag_count)) {
+    written = bsg_event_write(env);
+  }
+  free_restored_env(env);
+  return written;
+}
+
+static bool restore_event(int fd, const bsg_journal_header *header,
+                          const char *event_path) {
+  if (header->appendix_size > BSG_JOURNAL_MAX_APPENDIX_SIZE) {
+    return false;
+  }
+
+  const int max_crumb_count = header->max_crumb_count;
+  const size_t appendix_size = (size_t)header->appendix_size;
+  bsg_environment *env = calloc(1, sizeof(bsg_environment));
+  bugsnag_breadcrumb *crumbs = calloc(
+      max_crumb_count > 0 ? max_crumb_count : 1, sizeof(bugsnag_breadcrumb));
+  uint8_t *appendix = malloc(appendix_size > 0 ? appendix_size : 1);
+
+  bool written = false;
+  if (env != NULL && crumbs != NULL && appendix != NULL &&
+      read_fully(fd, header->env_offset, env, sizeof(bsg_environment)) &&
+      read_fully(fd, header->crumbs_offset, crumbs,
+                 (size_t)max_crumb_count * sizeof(bugsnag_breadcrumb)) &&
+      read_fully(fd, header->appendix_offset, appendix, appendix_size)) {
+    written = write_restored_event(env, crumbs, appendix, header, event_path);
+  }
+
+  free(appendix);
+  free(crumbs);
+  free(env);
+  return written;
+}
+
+bool bsg_event_journal_restore(const char *path, const char *event_path) {
+  int fd = open(path, O_RDWR | O_CLOEXEC);
+  if (fd < 0) {
+    return false;
+  }
+
+  if (flock(fd, LOCK_EX | LOCK_NB) != 0) {
+    // the journal belongs to another process which is still running
+    close(fd);
+    return false;
+  }
+
+  bool restored = false;
+  bsg_journal_header header;
+  if (read_fully(fd, 0, &header, sizeof(header)) &&
+      is_valid_header(&header) &&
+      header.state == BSG_JOURNAL_STATE_CRASHED) {
+    restored = restore_event(fd, &header, event_path);
+    if (!restored) {
+      BUGSNAG_LOG("Failed to restore the native crash report from %s", path);
+    }
+  }
+
+  unlink(path);
+  close(fd);
+  return restored;
+}
+
+#ifdef __cplusplus
+}
+#endif
@@ -0,0 +1,55 @@
+#ifndef BUGSNAG_ANDROID_EVENT_JOURNAL_H
+#define BUGSNAG_ANDROID_EVENT_JOURNAL_H
+
+#include "bugsnag_ndk.h"
+#include "utils/build.h"
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/**
+ * Map a new event journal at `path`, holding the bsg_environment (including
+ * next_event) and the breadcrumbs of next_event. As the environment lives in
+ * the file, the journal is always current and only needs to be completed by
+ * bsg_event_journal_commit when a crash occurs.
+ *
+ * The journal is locked for the life of the process. Any existing journal at
+ * `path` is replaced, so it should be restored beforehand.
+ *
+ * @param path the path of the journal file
+ * @param max_crumb_count the number of breadcrumbs to reserve space for
+ * @return the zeroed environment, or NULL if the journal could not be mapped
+ */
+bsg_environment *bsg_event_journal_open(const char *path, int max_crumb_count);
+
+/**
+ * Unmap and unlock the journal holding `env`.
+ *
+ * @return false if `env` is not held by the journal
+ */
+bool bsg_event_journal_close(bsg_environment *env);
+
+/**
+ * Complete the journal after a fatal crash, appending any values which
+ * next_event refers to outside of the journal (opaque metadata, feature flags
+ * and static data), marking the journal as crashed and syncing it to disk.
+ *
+ * @return false if `env` is not held by the journal or could not be written
+ */
+bool bsg_event_journal_commit(bsg_environment *env) __asyncsafe;
+
+/**
+ * Convert a journal left by a crash in a previous launch into a JSON event
+ * file in `event_path`, as written by bsg_event_write. The journal is deleted
+ * unless it is locked by another process.
+ *
+ * @return true if an event file was written
+ */
+bool bsg_event_journal_restore(const char *path, const char *event_path);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif // BUGSNAG_ANDROID_EVENT_JOURNAL_H
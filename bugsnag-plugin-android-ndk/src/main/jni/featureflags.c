@@ -13,26 +13,99 @@ extern "C" {
  * Implementation notes:
  *
  * We store Feature Flags in a dynamically allocated array, maintaining the
- * insertion order. Modifying an existing entry causes a reinsertion
- * (moving it to the end of the array).
+ * insertion order. Modifying an existing entry replaces its variant in-place.
+ * This array is all that is read when a crash is reported.
  *
- * Searches are linear, but the impact should be negligible up to tens of
- * thousands of entries.
+ * Flags are found by name using an open-addressed (linear probing) hash table
+ * of indexes into the array, kept at no more than 3/4 full and doubled in size
+ * as required. This keeps setting a flag O(1) regardless of how many flags
+ * there are. If the table cannot be allocated we fall back to a linear search.
  *
- * This provides a reasonable compromise between speed and size, since the array
- * is no larger than the number of feature flags (not counting malloc padding)
- * and is unlikely to be modified often.
- *
- * We resize the array using 'realloc' and 'memmove' to try and keep the
- * overhead reasonable.
+ * Clearing a flag compacts the array using 'memmove', and so rebuilds the
+ * table. This is O(n), but clearing individual flags is expected to be rare.
  */
 
 #define INDEX_NOT_FOUND (-1)
+#define EMPTY_SLOT (-1)
+#define MIN_INDEX_CAPACITY 16
 
 bsg_seqlock_t bsg_feature_flag_lock;
 
+static uint32_t hash_flag_name(const char *name) {
+  // FNV-1a
+  uint32_t hash = 2166136261u;
+  for (const unsigned char *c = (const unsigned char *)name; *c != 0; c++) {
+    hash ^= *c;
+    hash *= 16777619u;
+  }
+  return hash;
+}
+
+/*
+ * Return the slot in the index which holds the flag with the given name, or
+ * the empty slot it should be inserted into.
+ */
+static size_t find_slot(const bugsnag_event *const event,
+                        const char *const name) {
+  const size_t mask = event->feature_flag_index_capacity - 1;
+  size_t slot = hash_flag_name(name) & mask;
+  // the index is never full, so there is always an empty slot to stop at
+  while (event->feature_flag_index[slot] != EMPTY_SLOT &&
+         strcmp(event->feature_flags[event->feature_flag_index[slot]].name,
+                name) != 0) {
+    slot = (slot + 1) & mask;
+  }
+  return slot;
+}
+
+static void free_index(bugsnag_event *const event) {
+  free(event->feature_flag_index);
+  event->feature_flag_index = NULL;
+  event->feature_flag_index_capacity = 0;
+}
+
+static void rebuild_index(bugsnag_event *const event, const size_t capacity) {
+  int32_t *index = malloc(capacity * sizeof(int32_t));
+  free_index(event);
+  if (index == NULL) {
+    return;
+  }
+
+  // every byte 0xff makes every slot EMPTY_SLOT
+  memset(index, 0xff, capacity * sizeof(int32_t));
+  event->feature_flag_index = index;
+  event->feature_flag_index_capacity = capacity;
+  for (size_t i = 0; i < event->feature_flag_count; i++) {
+    index[find_slot(event, event->feature_flags[i].name)] = (int32_t)i;
+  }
+}
+
+/*
+ * Ensure there is an index with room for flag_count flags, growing it if
+ * required.
+ */
+static void reserve_index(bugsnag_event *const event, const size_t flag_count) {
+  size_t capacity = event->feature_flag_index_capacity;
+  if (event->feature_flag_index != NULL && flag_count * 4 <= capacity * 3) {
+    return;
+  }
+
+  if (capacity < MIN_INDEX_CAPACITY) {
+    capacity = MIN_INDEX_CAPACITY;
+  }
+  while (flag_count * 4 > capacity * 3) {
+    capacity *= 2;
+  }
+  rebuild_index(event, capacity);
+}
+
 static int index_of_flag_named(const bugsnag_event *const event,
                                const char *const name) {
+  if (event->feature_flag_index != NULL) {
+    // EMPTY_SLOT is also INDEX_NOT_FOUND
+    return event->feature_flag_index[find_slot(event, name)];
+  }
+
   for (int i = 0; i < event->feature_flag_count; i++) {
     if (strcmp(event->feature_flags[i].name, name) == 0) {
       return i;
@@ -63,24 +136,25 @@ static void set_flag_variant(bsg_feature_flag *const flag,
   }
 }
 
-static void insert_new(bugsnag_event *const event, const char *const name,
+static bool insert_new(bugsnag_event *const event, const char *const name,
                        const char *const variant) {
   bsg_feature_flag *new_flags =
       realloc(event->feature_flags, (event->feature_flag_count + 1) *
                                         sizeof(event->feature_flags[0]));
   if (!new_flags) {
-    return;
+    return false;
   }
   event->feature_flags = new_flags;
 
   bsg_feature_flag *flag = &new_flags[event->feature_flag_count];
   flag->name = strdup(name);
   if (flag->name == NULL) {
-    return;
+    return false;
   }
   set_flag_variant(flag, variant);
 
   event->feature_flag_count++;
+  return true;
 }
 
 static void modify_at_index(bugsnag_event *const event, const int index,
@@ -93,9 +167,13 @@ static void modify_at_index(bugsnag_event *const event, const int index,
 void bsg_set_feature_flag(bugsnag_event *event, const char *const name,
                           const char *const variant) {
   bsg_seqlock_acquire_write(&bsg_feature_flag_lock);
+  reserve_index(event, event->feature_flag_count + 1);
   const int index = index_of_flag_named(event, name);
   if (index == INDEX_NOT_FOUND) {
-    insert_new(event, name, variant);
+    if (insert_new(event, name, variant) && event->feature_flag_index != NULL) {
+      event->feature_flag_index[find_slot(event, name)] =
+          (int32_t)(event->feature_flag_count - 1);
+    }
   } else {
     modify_at_index(event, index, variant);
   }
@@ -110,6 +188,10 @@ void bsg_clear_feature_flag(bugsnag_event *const event,
     free_flag_contents(&event->feature_flags[index]);
     remove_at_index_and_compact(event, index);
     event->feature_flag_count--;
+    if (event->feature_flag_index != NULL) {
+      // the following flags have all moved, so their indexes are all stale
+      rebuild_index(event, event->feature_flag_index_capacity);
+    }
   }
   bsg_seqlock_release_write(&bsg_feature_flag_lock);
 }
@@ -118,9 +200,12 @@ void bsg_free_feature_flags(bugsnag_event *const event) {
   bsg_seqlock_acquire_write(&bsg_feature_flag_lock);
   const size_t old_flag_count = event->feature_flag_count;
   bsg_feature_flag *old_flags = event->feature_flags;
+  int32_t *old_index = event->feature_flag_index;
 
   event->feature_flag_count = 0;
   event->feature_flags = NULL;
+  event->feature_flag_index = NULL;
+  event->feature_flag_index_capacity = 0;
   bsg_seqlock_release_write(&bsg_feature_flag_lock);
 
   // we release the actual memory outside of the lock
@@ -129,6 +214,7 @@ void bsg_free_feature_flags(bugsnag_event *const event) {
   }
 
   free(old_flags);
+  free(old_index);
 }
 
 #ifdef __cplusplus
@@ -76,7 +76,7 @@ void bsg_handle_cpp_terminate() {
 
   if (bsg_run_on_error()) {
     bsg_increment_unhandled_count(&bsg_global_env->next_event);
-    bsg_serialize_event_to_file(bsg_global_env);
+    bsg_serialize_crash_to_file(bsg_global_env);
     bsg_serialize_last_run_info_to_file(bsg_global_env);
   }
 
@@ -0,0 +1,248 @@
+#include "state_buffer.h"
+
+#include <stdatomic.h>
+#include <string.h>
+
+#include "event.h"
+#include "utils/string.h"
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/*
+ * The buffer is written by NativeStateBuffer in native byte order. The header
+ * holds the int32 length of the complete records which follow it, and the
+ * int32 length of the records which have already been claimed by a drain (so
+ * that a crash during a drain does not apply them again). Each record is:
+ *
+ *   int32 record length (including this field), uint8 op, op fields
+ *
+ * Strings are an int32 byte length followed by that many bytes of UTF-8 and a
+ * NUL terminator, so that they can be used in place.
+ */
+#define BSG_STATE_RECORD_HEADER_SIZE 5
+
+#define BSG_STATE_OP_ADD_BREADCRUMB 1
+#define BSG_STATE_OP_ADD_HANDLED_EVENT 2
+#define BSG_STATE_OP_ADD_UNHANDLED_EVENT 3
+
+#define BSG_STATE_VALUE_BOOL 0
+#define BSG_STATE_VALUE_NUMBER 1
+#define BSG_STATE_VALUE_STRING 2
+#define BSG_STATE_VALUE_OPAQUE 3
+
+typedef struct {
+  const uint8_t *pos;
+  const uint8_t *end;
+} bsg_state_reader;
+
+static bool read_bytes(bsg_state_reader *reader, void *dst, size_t size) {
+  if ((size_t)(reader->end - reader->pos) < size) {
+    return false;
+  }
+  memcpy(dst, reader->pos, size);
+  reader->pos += size;
+  return true;
+}
+
+static bool read_string(bsg_state_reader *reader, const char **dst,
+                        size_t *length) {
+  int32_t size;
+  if (!read_bytes(reader, &size, sizeof(size)) || size < 0 ||
+      (size_t)(reader->end - reader->pos) <= (size_t)size ||
+      reader->pos[size] != '\0') {
+    return false;
+  }
+  *dst = (const char *)reader->pos;
+  *length = (size_t)size;
+  reader->pos += size + 1;
+  return true;
+}
+
+bugsnag_breadcrumb_type bsg_breadcrumb_type_from_native_value(int value) {
+  switch (value) {
+  case 0:
+    return BSG_CRUMB_ERROR;
+  case 1:
+    return BSG_CRUMB_LOG;
+  case 2:
+    return BSG_CRUMB_MANUAL;
+  case 3:
+    return BSG_CRUMB_NAVIGATION;
+  case 4:
+    return BSG_CRUMB_PROCESS;
+  case 5:
+    return BSG_CRUMB_REQUEST;
+  case 6:
+    return BSG_CRUMB_STATE;
+  case 7:
+    return BSG_CRUMB_USER;
+  default:
+    return BSG_CRUMB_MANUAL;
+  }
+}
+
+static bool read_metadata_value(bsg_state_reader *reader,
+                                bugsnag_metadata *metadata, bool crashing) {
+  const char *name;
+  size_t name_length;
+  uint8_t type;
+  if (!read_string(reader, &name, &name_length) ||
+      !read_bytes(reader, &type, sizeof(type))) {
+    return false;
+  }
+
+  switch (type) {
+  case BSG_STATE_VALUE_BOOL: {
+    uint8_t value;
+    if (!read_bytes(reader, &value, sizeof(value))) {
+      return false;
+    }
+    bsg_add_metadata_value_bool(metadata, "metaData", name, value != 0);
+    return true;
+  }
+  case BSG_STATE_VALUE_NUMBER: {
+    double value;
+    if (!read_bytes(reader, &value, sizeof(value))) {
+      return false;
+    }
+    bsg_add_metadata_value_double(metadata, "metaData", name, value);
+    return true;
+  }
+  case BSG_STATE_VALUE_STRING:
+  case BSG_STATE_VALUE_OPAQUE: {
+    const char *value;
+    size_t length;
+    if (!read_string(reader, &value, &length)) {
+      return false;
+    }
+    if (type == BSG_STATE_VALUE_STRING) {
+      bsg_add_metadata_value_str(metadata, "metaData", name, value);
+    } else if (crashing) {
+      bsg_add_metadata_value_opaque_ref(metadata, "metaData", name, value,
+                                        length);
+    } else {
+      bsg_add_metadata_value_opaque(metadata, "metaData", name, value);
+    }
+    return true;
+  }
+  default:
+    return false;
+  }
+}
+
+static bool apply_breadcrumb(bsg_state_reader *reader, bugsnag_event *event,
+                             bool crashing) {
+  uint8_t type;
+  const char *name;
+  const char *timestamp;
+  size_t length;
+  int32_t value_count;
+  if (!read_bytes(reader, &type, sizeof(type)) ||
+      !read_string(reader, &name, &length) ||
+      !read_string(reader, &timestamp, &length) ||
+      !read_bytes(reader, &value_count, sizeof(value_count))) {
+    return false;
+  }
+
+  // the evicted breadcrumb's opaque values cannot be freed in a signal handler
+  bugsnag_breadcrumb *crumb = crashing
+                                  ? bsg_event_reserve_crash_breadcrumb(event)
+                                  : bsg_event_reserve_breadcrumb(event);
+  crumb->type = bsg_breadcrumb_type_from_native_value(type);
+  bsg_strncpy(crumb->name, name, sizeof(crumb->name));
+  bsg_strncpy(crumb->timestamp, timestamp, sizeof(crumb->timestamp));
+
+  for (int32_t i = 0; i < value_count; i++) {
+    if (!read_metadata_value(reader, &crumb->metadata, crashing)) {
+      return false;
+    }
+  }
+  return true;
+}
+
+static void write_header_field(uint8_t *buffer, size_t offset, int32_t value) {
+  memcpy(buffer + offset, &value, sizeof(value));
+  // make sure the header is updated before anything that follows it, in case
+  // a crash interrupts this drain
+  atomic_thread_fence(memory_order_seq_cst);
+}
+
+void bsg_state_buffer_drain(bsg_environment *env, bool crashing) {
+  uint8_t *buffer = env->state_buffer;
+  if (buffer == NULL) {
+    return;
+  }
+
+  int32_t used;
+  int32_t claimed;
+  memcpy(&used, buffer, sizeof(used));
+  memcpy(&claimed, buffer + BSG_STATE_BUFFER_CLAIMED_OFFSET, sizeof(claimed));
+  if (used <= 0 ||
+      (size_t)used > env->state_buffer_size - BSG_STATE_BUFFER_HEADER_SIZE) {
+    return;
+  }
+  if (claimed < 0 || claimed > used) {
+    claimed = 0;
+  }
+
+  const uint8_t *start = buffer + BSG_STATE_BUFFER_HEADER_SIZE;
+  const uint8_t *pos = start + claimed;
+  const uint8_t *end = start + used;
+  bugsnag_event *event = &env->next_event;
+
+  while (end - pos >= BSG_STATE_RECORD_HEADER_SIZE) {
+    int32_t record_length;
+    uint8_t op;
+    memcpy(&record_length, pos, sizeof(record_length));
+    if (record_length < BSG_STATE_RECORD_HEADER_SIZE ||
+        record_length > end - pos) {
+      break;
+    }
+    memcpy(&op, pos + sizeof(int32_t), sizeof(op));
+
+    if (!crashing) {
+      // claim the record before applying it, so that a crash while it is being
+      // applied will not apply it a second time
+      write_header_field(buffer, BSG_STATE_BUFFER_CLAIMED_OFFSET,
+                         (int32_t)(pos + record_length - start));
+    }
+
+    bsg_state_reader reader = {
+        .pos = pos + BSG_STATE_RECORD_HEADER_SIZE,
+        .end = pos + record_length,
+    };
+    switch (op) {
+    case BSG_STATE_OP_ADD_BREADCRUMB:
+      apply_breadcrumb(&reader, event, crashing);
+      break;
+    case BSG_STATE_OP_ADD_HANDLED_EVENT:
+      if (bsg_event_has_session(event)) {
+        event->handled_events++;
+      }
+      break;
+    case BSG_STATE_OP_ADD_UNHANDLED_EVENT:
+      if (bsg_event_has_session(event)) {
+        event->unhandled_events++;
+      }
+      break;
+    default:
+      // unknown records are skipped
+      break;
+    }
+    pos += record_length;
+  }
+
+  if (!crashing) {
+    // the records are left in place while crashing as opaque values refer to
+    // them. The length is cleared first, so there is never anything left to
+    // apply if this is interrupted
+    write_header_field(buffer, 0, 0);
+    write_header_field(buffer, BSG_STATE_BUFFER_CLAIMED_OFFSET, 0);
+  }
+}
+
+#ifdef __cplusplus
+}
+#endif
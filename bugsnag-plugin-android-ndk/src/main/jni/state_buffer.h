@@ -0,0 +1,45 @@
+#ifndef BUGSNAG_ANDROID_STATE_BUFFER_H
+#define BUGSNAG_ANDROID_STATE_BUFFER_H
+
+#include "bugsnag_ndk.h"
+#include "utils/build.h"
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/**
+ * The size of the header at the start of the state buffer, which holds the
+ * number of bytes of complete records following it, and the number of those
+ * bytes already claimed by a drain.
+ */
+#define BSG_STATE_BUFFER_HEADER_SIZE 8
+
+/**
+ * The offset in the header of the number of bytes of records already claimed
+ * by a drain
+ */
+#define BSG_STATE_BUFFER_CLAIMED_OFFSET 4
+
+/**
+ * Convert a breadcrumb type from the value used by
+ * NativeBridge.BreadcrumbType.toNativeValue()
+ */
+bugsnag_breadcrumb_type bsg_breadcrumb_type_from_native_value(int value);
+
+/**
+ * Apply any state changes batched in `env->state_buffer` by NativeStateBuffer
+ * to `env->next_event`, and mark the buffer as empty. Outside of a crash the
+ * env write lock must be held.
+ *
+ * @param env the environment holding the buffer
+ * @param crashing true if a crash is being handled, in which case no memory is
+ * allocated or freed and opaque values refer directly to the buffer
+ */
+void bsg_state_buffer_drain(bsg_environment *env, bool crashing) __asyncsafe;
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif // BUGSNAG_ANDROID_STATE_BUFFER_H
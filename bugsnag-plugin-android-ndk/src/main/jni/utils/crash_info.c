@@ -1,4 +1,5 @@
 #include "crash_info.h"
+#include "../state_buffer.h"
 #include <time.h>
 
 #ifdef __cplusplus
@@ -8,6 +9,9 @@ extern "C" {
 void bsg_populate_event_as(bsg_environment *env) {
   static time_t now;
 
+  // apply any state changes which were batched but not yet drained
+  bsg_state_buffer_drain(env, true);
+
   env->next_event.device.time = time(&now);
   // Convert to milliseconds:
   env->next_event.app.duration =
@@ -1,4 +1,5 @@
 #include "serializer.h"
+#include "../event_journal.h"
 #include "serializer/event_writer.h"
 
 bool bsg_serialize_last_run_info_to_file(bsg_environment *env) {
@@ -8,3 +9,7 @@ bool bsg_serialize_last_run_info_to_file(bsg_environment *env) {
 bool bsg_serialize_event_to_file(bsg_environment *env) {
   return bsg_event_write(env);
 }
+
+bool bsg_serialize_crash_to_file(bsg_environment *env) {
+  return bsg_event_journal_commit(env) || bsg_event_write(env);
+}
@@ -10,6 +10,13 @@ char *bsg_serialize_event_to_json_string(bugsnag_event *event);
 
 bool bsg_serialize_event_to_file(bsg_environment *env) __asyncsafe;
 
+/**
+ * Persists the event for a fatal crash. If the environment is held by an event
+ * journal then the journal is completed, to be converted to JSON on the next
+ * launch. Otherwise (or if that fails) the event is written as JSON.
+ */
+bool bsg_serialize_crash_to_file(bsg_environment *env) __asyncsafe;
+
 /**
  * Serializes the LastRunInfo to the file. This persists information about
  * why the current launch crashed, for use on future launch.
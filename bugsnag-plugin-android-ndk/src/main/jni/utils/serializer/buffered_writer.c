@@ -118,6 +118,20 @@ bool bsg_buffered_writer_open(struct bsg_buffered_writer *writer,
     goto fail;
   }
 
+  return bsg_buffered_writer_open_fd(writer, fd);
+
+fail:
+  if (fd > 0) {
+    close(fd);
+  }
+  return false;
+}
+
+bool bsg_buffered_writer_open_fd(struct bsg_buffered_writer *writer, int fd) {
+  if (fd < 0) {
+    return false;
+  }
+
   writer->fd = fd;
   writer->pos = 0;
   writer->write = bsg_buffered_writer_write;
@@ -127,10 +141,4 @@ bool bsg_buffered_writer_open(struct bsg_buffered_writer *writer,
   writer->dispose = bsg_buffered_writer_close;
 
   return true;
-
-fail:
-  if (fd > 0) {
-    close(fd);
-  }
-  return false;
 }
\ No newline at end of file
@@ -87,6 +87,15 @@ typedef struct bsg_buffered_writer {
 bool bsg_buffered_writer_open(struct bsg_buffered_writer *writer,
                               const char *path);
 
+/**
+ * Create a new buffered writer for a file which is already open, writing from
+ * its current offset. Disposing of the writer closes the file.
+ *
+ * @param fd The file descriptor to write to.
+ * @return true on success.
+ */
+bool bsg_buffered_writer_open_fd(struct bsg_buffered_writer *writer, int fd);
+
 #ifdef __cplusplus
 }
 #endif
@@ -4,6 +4,8 @@
 #include "string.h"
 
 #include <dlfcn.h>
+#include <sys/mman.h>
+#include <unistd.h>
 #include <unwindstack/LocalUnwinder.h>
 #include <unwindstack/Maps.h>
 #include <unwindstack/MemoryLocal.h>
@@ -13,13 +15,24 @@
 
 // unwinder intended for a potentially terminating context
 static unwindstack::Unwinder *crash_time_unwinder;
+// the maps used by crash_time_unwinder - these are updated in-place by
+// bsg_unwinder_refresh so that the unwinder is never replaced
+static unwindstack::LocalUpdatableMaps *crash_time_maps;
+// the DexFiles are only referenced (not owned) by crash_time_unwinder
+static std::shared_ptr<unwindstack::DexFiles> crash_time_dexfiles;
 // soft lock for using the crash time unwinder - if active, return without
 // attempting to unwind. This isn't a "real" lock to avoid deadlocking in the
 // event of a crash while handling an ANR or the reverse.
 static std::atomic_bool unwinding_crash_stack = ATOMIC_VAR_INIT(false);
 // soft lock for refreshing the symbol tables - if active, bsg_unwinder_refresh
-// will refresh without doing any work avoiding possible reentrancy problems
+// will return without doing any work avoiding possible reentrancy problems
 static std::atomic_bool refreshing_unwinder = ATOMIC_VAR_INIT(false);
+// the number of refreshes requested since the maps were last reparsed, any
+// requests made during a refresh are handled by a single extra reparse
+static std::atomic_int pending_refreshes = ATOMIC_VAR_INIT(0);
+// the thread currently reparsing crash_time_maps (or 0), which holds the maps
+// lock and so cannot unwind its own crash stack
+static std::atomic<pid_t> refreshing_thread = ATOMIC_VAR_INIT(0);
 
 // Thread-safe, reusable unwinder - uses thread-specific memory caches
 static unwindstack::LocalUnwinder *current_time_unwinder;
@@ -65,16 +78,19 @@ void bsg_unwinder_init() {
   }
   attempted_init = true;
 
-  auto crash_time_maps = new unwindstack::LocalUpdatableMaps();
-  if (crash_time_maps->Parse()) {
+  auto maps = new unwindstack::LocalUpdatableMaps();
+  if (maps->Parse()) {
     std::shared_ptr<unwindstack::Memory> crash_time_memory(
         new unwindstack::MemoryLocal);
     crash_time_unwinder = new unwindstack::Unwinder(
-        BUGSNAG_FRAMES_MAX, crash_time_maps,
-        unwindstack::Regs::CreateFromLocal(), crash_time_memory);
+        BUGSNAG_FRAMES_MAX, maps, unwindstack::Regs::CreateFromLocal(),
+        crash_time_memory);
     auto arch = unwindstack::Regs::CurrentArch();
-    auto dexfiles_ptr = unwindstack::CreateDexFiles(arch, crash_time_memory);
-    crash_time_unwinder->SetDexFiles(dexfiles_ptr.get());
+    crash_time_dexfiles = unwindstack::CreateDexFiles(arch, crash_time_memory);
+    crash_time_unwinder->SetDexFiles(crash_time_dexfiles.get());
+    crash_time_maps = maps;
+  } else {
+    delete maps;
   }
 
   current_time_unwinder = new unwindstack::LocalUnwinder();
@@ -126,50 +142,64 @@ static void populate_code_identifier(const unwindstack::FrameData &frame,
   }
 }
 
+/**
+ * Read and cache the BuildID of each library mapped into the process, so that
+ * populate_code_identifier does not need to read them while handling a crash.
+ * MapInfo caches the BuildID, and Reparse keeps the MapInfo of any mapping
+ * which has not changed, so only newly mapped libraries are read here.
+ */
+static void cache_build_ids(unwindstack::Maps *maps) {
+  for (const auto &map_info : *maps) {
+    if ((map_info->flags() & PROT_EXEC) == 0 ||
+        (map_info->flags() & unwindstack::MAPS_FLAGS_DEVICE_MAP) != 0 ||
+        map_info->name().empty() || map_info->name()[0] == '[') {
+      continue;
+    }
+    map_info->GetBuildID();
+  }
+}
+
 void bsg_unwinder_refresh(void) {
-  bool expected = false;
-  if (!std::atomic_compare_exchange_strong(&refreshing_unwinder, &expected,
-                                           true)) {
+  if (crash_time_maps == nullptr) {
     return;
   }
 
-  auto crash_time_maps = new unwindstack::LocalUpdatableMaps();
-  if (crash_time_maps->Parse()) {
-    std::shared_ptr<unwindstack::Memory> crash_time_memory(
-        new unwindstack::MemoryLocal);
-    auto new_uwinder = new unwindstack::Unwinder(
-        BUGSNAG_FRAMES_MAX, crash_time_maps,
-        unwindstack::Regs::CreateFromLocal(), crash_time_memory);
-    auto arch = unwindstack::Regs::CurrentArch();
-    auto dexfiles_ptr = unwindstack::CreateDexFiles(arch, crash_time_memory);
-    new_uwinder->SetDexFiles(dexfiles_ptr.get());
-
-    auto old_unwinder = crash_time_unwinder;
-    crash_time_unwinder = new_uwinder;
+  std::atomic_fetch_add(&pending_refreshes, 1);
+  while (std::atomic_load(&pending_refreshes) > 0) {
+    bool expected = false;
+    if (!std::atomic_compare_exchange_strong(&refreshing_unwinder, &expected,
+                                             true)) {
+      // the thread already refreshing will reparse again for this request
+      return;
+    }
 
-    // don't destroy an unwinder that is currently in use
-    if (!std::atomic_load(&unwinding_crash_stack)) {
-      delete old_unwinder->GetMaps();
-      delete old_unwinder;
+    std::atomic_store(&refreshing_thread, gettid());
+    while (std::atomic_exchange(&pending_refreshes, 0) > 0) {
+      // Reparse only creates MapInfo objects for mappings that have changed,
+      // keeping the Elf and BuildID already loaded for every other library
+      crash_time_maps->Reparse();
+      cache_build_ids(crash_time_maps);
     }
+    std::atomic_store(&refreshing_thread, 0);
+    std::atomic_store(&refreshing_unwinder, false);
   }
-
-  std::atomic_store(&refreshing_unwinder, false);
 }
 
 ssize_t bsg_unwind_crash_stack(bugsnag_stackframe stack[BUGSNAG_FRAMES_MAX],
                                siginfo_t *info, void *user_context) {
 
-  // we always check unwinding_crash_stack and set *before* attempting to
-  // retrieve the crash unwinder to avoid picking up an unwinder that is about
-  // to be destroyed by bsg_unwinder_refresh
+  // we always check and set unwinding_crash_stack *before* attempting to
+  // retrieve the crash unwinder, as the unwinder is not reentrant
   bool expected = false;
   if (!std::atomic_compare_exchange_strong(&unwinding_crash_stack, &expected,
                                            true)) {
     return 0;
   }
   auto local_unwinder = crash_time_unwinder;
-  if (local_unwinder == nullptr) {
+  // the maps are locked while being reparsed, so a crash during a refresh
+  // cannot be unwound by the refreshing thread without deadlocking
+  if (local_unwinder == nullptr ||
+      std::atomic_load(&refreshing_thread) == gettid()) {
     unwinding_crash_stack = false;
     return 0;
   }
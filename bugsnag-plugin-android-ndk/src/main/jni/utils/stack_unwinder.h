@@ -15,7 +15,9 @@ void bsg_unwinder_init(void);
 
 /**
  * Refresh the stack unwinder. This can be called to force a refresh of any
- * cached data within the unwinder.
+ * cached data within the unwinder. Only mappings which have changed since the
+ * last refresh are reloaded, and calls made while another thread is refreshing
+ * are folded into a single extra refresh by that thread.
  */
 void bsg_unwinder_refresh(void);
 
@@ -20,6 +20,7 @@ SUITE(suite_event_app_mutators);
 SUITE(suite_event_device_mutators);
 SUITE(suite_struct_to_file);
 SUITE(suite_feature_flags);
+SUITE(suite_event_journal);
 
 GREATEST_MAIN_DEFS();
 
@@ -112,3 +113,8 @@ JNIEXPORT jint JNICALL Java_com_bugsnag_android_ndk_NativeFeatureFlagsTest_run(
     JNIEnv *env, jobject thiz) {
   return run_test_suite(suite_feature_flags);
 }
+
+JNIEXPORT jint JNICALL Java_com_bugsnag_android_ndk_NativeEventJournalTest_run(
+    JNIEnv *env, jobject thiz) {
+  return run_test_suite(suite_event_journal);
+}
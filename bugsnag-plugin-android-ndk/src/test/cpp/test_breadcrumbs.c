@@ -1,5 +1,6 @@
 #include <event.h>
 #include <greatest/greatest.h>
+#include <state_buffer.h>
 #include <time.h>
 
 bugsnag_breadcrumb *init_breadcrumb(const char *name, const char *message, bugsnag_breadcrumb_type type) {
@@ -82,7 +83,201 @@ TEST test_add_breadcrumbs_over_max(void) {
   PASS();
 }
 
+static uint8_t *put_bytes(uint8_t *pos, const void *src, size_t size) {
+  memcpy(pos, src, size);
+  return pos + size;
+}
+
+static uint8_t *put_string(uint8_t *pos, const char *str) {
+  int32_t length = (int32_t)strlen(str);
+  pos = put_bytes(pos, &length, sizeof(length));
+  return put_bytes(pos, str, length + 1);
+}
+
+/**
+ * Writes a record in the same layout as NativeStateBuffer.kt
+ */
+static uint8_t *put_record(uint8_t *pos, uint8_t op, const uint8_t *fields,
+                           size_t fields_size) {
+  int32_t length = (int32_t)(sizeof(int32_t) + sizeof(op) + fields_size);
+  pos = put_bytes(pos, &length, sizeof(length));
+  pos = put_bytes(pos, &op, sizeof(op));
+  if (fields_size > 0) {
+    pos = put_bytes(pos, fields, fields_size);
+  }
+  return pos;
+}
+
+TEST test_drain_state_buffer(void) {
+  bsg_environment *env = calloc(1, sizeof(bsg_environment));
+  env->next_event.max_crumb_count = 50;
+  env->next_event.breadcrumbs =
+      calloc(env->next_event.max_crumb_count, sizeof(bugsnag_breadcrumb));
+  strcpy(env->next_event.session_id, "session");
+  env->state_buffer_size = 1024;
+  env->state_buffer = calloc(1, env->state_buffer_size);
+
+  uint8_t fields[256];
+  uint8_t *field = fields;
+  uint8_t crumb_type = 3; // navigation
+  int32_t value_count = 2;
+  uint8_t bool_type = 0;
+  uint8_t bool_value = 1;
+  uint8_t string_type = 2;
+  field = put_bytes(field, &crumb_type, sizeof(crumb_type));
+  field = put_string(field, "Opened settings");
+  field = put_string(field, "2018-08-29T21:41:39Z");
+  field = put_bytes(field, &value_count, sizeof(value_count));
+  field = put_string(field, "visible");
+  field = put_bytes(field, &bool_type, sizeof(bool_type));
+  field = put_bytes(field, &bool_value, sizeof(bool_value));
+  field = put_string(field, "screen");
+  field = put_bytes(field, &string_type, sizeof(string_type));
+  field = put_string(field, "SettingsActivity");
+
+  uint8_t *start = env->state_buffer + BSG_STATE_BUFFER_HEADER_SIZE;
+  uint8_t *pos = put_record(start, 1, fields, field - fields);
+  pos = put_record(pos, 2, NULL, 0);
+  pos = put_record(pos, 2, NULL, 0);
+  pos = put_record(pos, 3, NULL, 0);
+  int32_t used = (int32_t)(pos - start);
+  memcpy(env->state_buffer, &used, sizeof(used));
+
+  bsg_state_buffer_drain(env, false);
+
+  ASSERT_EQ(1, env->next_event.crumb_count);
+  bugsnag_breadcrumb *crumb = &env->next_event.breadcrumbs[0];
+  ASSERT_STR_EQ("Opened settings", crumb->name);
+  ASSERT_STR_EQ("2018-08-29T21:41:39Z", crumb->timestamp);
+  ASSERT_EQ(BSG_CRUMB_NAVIGATION, crumb->type);
+  ASSERT_EQ(2, crumb->metadata.value_count);
+  ASSERT_STR_EQ("visible", crumb->metadata.values[0].name);
+  ASSERT_EQ(true, crumb->metadata.values[0].bool_value);
+  ASSERT_STR_EQ("screen", crumb->metadata.values[1].name);
+  ASSERT_STR_EQ("SettingsActivity", crumb->metadata.values[1].char_value);
+  ASSERT_EQ(2, env->next_event.handled_events);
+  ASSERT_EQ(1, env->next_event.unhandled_events);
+
+  // the buffer is emptied, so draining again changes nothing
+  memcpy(&used, env->state_buffer, sizeof(used));
+  ASSERT_EQ(0, used);
+  int32_t claimed;
+  memcpy(&claimed, env->state_buffer + BSG_STATE_BUFFER_CLAIMED_OFFSET,
+         sizeof(claimed));
+  ASSERT_EQ(0, claimed);
+  bsg_state_buffer_drain(env, false);
+  ASSERT_EQ(1, env->next_event.crumb_count);
+  ASSERT_EQ(2, env->next_event.handled_events);
+
+  free(env->state_buffer);
+  free(env->next_event.breadcrumbs);
+  free(env);
+  PASS();
+}
+
+TEST test_drain_state_buffer_ignores_truncated_records(void) {
+  bsg_environment *env = calloc(1, sizeof(bsg_environment));
+  strcpy(env->next_event.session_id, "session");
+  env->state_buffer_size = 64;
+  env->state_buffer = calloc(1, env->state_buffer_size);
+
+  uint8_t *start = env->state_buffer + BSG_STATE_BUFFER_HEADER_SIZE;
+  uint8_t *pos = put_record(start, 2, NULL, 0);
+  // a record claiming to be longer than the used part of the buffer
+  int32_t length = 40;
+  pos = put_bytes(pos, &length, sizeof(length));
+  int32_t used = (int32_t)(pos - start);
+  memcpy(env->state_buffer, &used, sizeof(used));
+
+  bsg_state_buffer_drain(env, false);
+  ASSERT_EQ(1, env->next_event.handled_events);
+
+  free(env->state_buffer);
+  free(env);
+  PASS();
+}
+
+TEST test_crash_drain_skips_claimed_records(void) {
+  bsg_environment *env = calloc(1, sizeof(bsg_environment));
+  strcpy(env->next_event.session_id, "session");
+  env->state_buffer_size = 64;
+  env->state_buffer = calloc(1, env->state_buffer_size);
+
+  uint8_t *start = env->state_buffer + BSG_STATE_BUFFER_HEADER_SIZE;
+  uint8_t *pos = put_record(start, 2, NULL, 0);
+  pos = put_record(pos, 2, NULL, 0);
+  // a drain interrupted by a crash after claiming the first two records
+  int32_t claimed = (int32_t)(pos - start);
+  pos = put_record(pos, 3, NULL, 0);
+  int32_t used = (int32_t)(pos - start);
+  memcpy(env->state_buffer, &used, sizeof(used));
+  memcpy(env->state_buffer + BSG_STATE_BUFFER_CLAIMED_OFFSET, &claimed,
+         sizeof(claimed));
+
+  bsg_state_buffer_drain(env, true);
+  ASSERT_EQ(0, env->next_event.handled_events);
+  ASSERT_EQ(1, env->next_event.unhandled_events);
+
+  free(env->state_buffer);
+  free(env);
+  PASS();
+}
+
+TEST test_crash_drain_wraps_breadcrumbs_without_freeing(void) {
+  bsg_environment *env = calloc(1, sizeof(bsg_environment));
+  env->next_event.max_crumb_count = 2;
+  env->next_event.breadcrumbs =
+      calloc(env->next_event.max_crumb_count, sizeof(bugsnag_breadcrumb));
+  env->state_buffer_size = 1024;
+  env->state_buffer = calloc(1, env->state_buffer_size);
+
+  // more breadcrumbs than the event can hold, each with an opaque value that
+  // refers into the buffer, so that the ring wraps over them during the drain
+  uint8_t *start = env->state_buffer + BSG_STATE_BUFFER_HEADER_SIZE;
+  uint8_t *pos = start;
+  for (int i = 0; i < 5; i++) {
+    uint8_t fields[128];
+    uint8_t *field = fields;
+    uint8_t crumb_type = 6; // state
+    int32_t value_count = 1;
+    uint8_t opaque_type = 3;
+    char name[16];
+    sprintf(name, "crumb %d", i);
+    field = put_bytes(field, &crumb_type, sizeof(crumb_type));
+    field = put_string(field, name);
+    field = put_string(field, "2018-08-29T21:41:39Z");
+    field = put_bytes(field, &value_count, sizeof(value_count));
+    field = put_string(field, "list");
+    field = put_bytes(field, &opaque_type, sizeof(opaque_type));
+    field = put_string(field, "[1,2,3]");
+    pos = put_record(pos, 1, fields, field - fields);
+  }
+  int32_t used = (int32_t)(pos - start);
+  memcpy(env->state_buffer, &used, sizeof(used));
+
+  bsg_state_buffer_drain(env, true);
+
+  ASSERT_EQ(2, env->next_event.crumb_count);
+  ASSERT_EQ(1, env->next_event.crumb_first_index);
+  ASSERT_STR_EQ("crumb 4", env->next_event.breadcrumbs[0].name);
+  ASSERT_STR_EQ("crumb 3", env->next_event.breadcrumbs[1].name);
+  bsg_metadata_value *value = &env->next_event.breadcrumbs[0].metadata.values[0];
+  ASSERT_EQ(BSG_METADATA_OPAQUE_VALUE, value->type);
+  ASSERT_FALSE(value->opaque_value_owned);
+  ASSERT((uint8_t *)value->opaque_value > start &&
+         (uint8_t *)value->opaque_value < pos);
+
+  free(env->state_buffer);
+  free(env->next_event.breadcrumbs);
+  free(env);
+  PASS();
+}
+
 SUITE(suite_breadcrumbs) {
   RUN_TEST(test_add_breadcrumb);
   RUN_TEST(test_add_breadcrumbs_over_max);
+  RUN_TEST(test_drain_state_buffer);
+  RUN_TEST(test_drain_state_buffer_ignores_truncated_records);
+  RUN_TEST(test_crash_drain_skips_claimed_records);
+  RUN_TEST(test_crash_drain_wraps_breadcrumbs_without_freeing);
 }
@@ -363,6 +363,23 @@ TEST test_event_metadata(void) {
     PASS();
 }
 
+TEST test_event_metadata_compaction(void) {
+    bugsnag_event *event = init_event();
+    bugsnag_event_add_metadata_string(event, "str", "first", "retained");
+    // overflow the metadata with duplicates, forcing it to be compacted
+    for (int i = 0; i <= BUGSNAG_METADATA_MAX * 2; i++) {
+        bugsnag_event_add_metadata_double(event, "double", "dup", i);
+    }
+    bugsnag_event_add_metadata_string(event, "str", "last", "added");
+
+    ASSERT(event->metadata.value_count < BUGSNAG_METADATA_MAX);
+    ASSERT_STR_EQ("retained", bugsnag_event_get_metadata_string(event, "str", "first"));
+    ASSERT_EQ(BSG_METADATA_NUMBER_VALUE, bugsnag_event_has_metadata(event, "double", "dup"));
+    ASSERT_STR_EQ("added", bugsnag_event_get_metadata_string(event, "str", "last"));
+    free(event);
+    PASS();
+}
+
 TEST test_event_stacktrace(void) {
     bugsnag_event *event = init_event();
 
@@ -396,6 +413,7 @@ SUITE(suite_event_mutators) {
     RUN_TEST(test_error_message);
     RUN_TEST(test_error_type);
     RUN_TEST(test_event_metadata);
+    RUN_TEST(test_event_metadata_compaction);
     RUN_TEST(test_event_stacktrace);
 }
 
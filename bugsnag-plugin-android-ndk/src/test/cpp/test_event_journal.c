@@ -0,0 +1,171 @@
+#include <dirent.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/stat.h>
+#include <unistd.h>
+
+#include "parson/parson.h"
+#include <greatest/greatest.h>
+
+#include <event_journal.h>
+#include <featureflags.h>
+#include <utils/string.h>
+
+#include "test_bsg_event.h"
+
+#ifndef JOURNAL_TEST_DIR
+#define JOURNAL_TEST_DIR "/data/data/com.bugsnag.android.ndk.test/cache/"
+#endif
+
+#define JOURNAL_TEST_FILE JOURNAL_TEST_DIR "next_event.journal"
+#define JOURNAL_TEST_EVENT_DIR JOURNAL_TEST_DIR "journal_events"
+
+/*
+ * Parse and delete the first (and only) event file written to
+ * JOURNAL_TEST_EVENT_DIR
+ */
+static JSON_Value *read_event_file(void) {
+  JSON_Value *event = NULL;
+  DIR *dir = opendir(JOURNAL_TEST_EVENT_DIR);
+  if (dir == NULL) {
+    return NULL;
+  }
+
+  struct dirent *entry;
+  while (event == NULL && (entry = readdir(dir)) != NULL) {
+    if (strstr(entry->d_name, ".json") == NULL) {
+      continue;
+    }
+    char path[512];
+    snprintf(path, sizeof(path), "%s/%s", JOURNAL_TEST_EVENT_DIR,
+             entry->d_name);
+    event = json_parse_file(path);
+    unlink(path);
+  }
+  closedir(dir);
+  return event;
+}
+
+/*
+ * Release the values that the journaled event refers to, without modifying the
+ * journal itself
+ */
+static void free_heap_values(bugsnag_event *event) {
+  for (int i = 0; i < event->metadata.value_count; i++) {
+    if (event->metadata.values[i].type == BSG_METADATA_OPAQUE_VALUE) {
+      free(event->metadata.values[i].opaque_value);
+    }
+  }
+  for (int i = 0; i < event->max_crumb_count; i++) {
+    bugsnag_metadata *metadata = &event->breadcrumbs[i].metadata;
+    for (int j = 0; j < metadata->value_count; j++) {
+      if (metadata->values[j].type == BSG_METADATA_OPAQUE_VALUE) {
+        free(metadata->values[j].opaque_value);
+      }
+    }
+  }
+  for (size_t i = 0; i < event->feature_flag_count; i++) {
+    free(event->feature_flags[i].name);
+    free(event->feature_flags[i].variant);
+  }
+  free(event->feature_flags);
+  free(event->feature_flag_index);
+}
+
+TEST test_journal_restores_crashed_event(void) {
+  mkdir(JOURNAL_TEST_EVENT_DIR, 0700);
+  unlink(JOURNAL_TEST_FILE);
+
+  bsg_environment *env = bsg_event_journal_open(JOURNAL_TEST_FILE, 5);
+  ASSERT(env != NULL);
+  bugsnag_event *event = &env->next_event;
+  ASSERT_EQ(5, event->max_crumb_count);
+  ASSERT(event->breadcrumbs != NULL);
+
+  // the journal cannot be opened twice
+  ASSERT_EQ(NULL, bsg_event_journal_open(JOURNAL_TEST_FILE, 5));
+
+  bugsnag_breadcrumb *crumbs = event->breadcrumbs;
+  bugsnag_event *source = init_event();
+  memcpy(event, source, sizeof(bugsnag_event));
+  free(source);
+  event->breadcrumbs = crumbs;
+  event->max_crumb_count = 5;
+
+  bsg_strncpy(env->event_uuid, "journal-uuid", sizeof(env->event_uuid));
+  env->static_json_data = "{\"config\":{\"journal\":true}}";
+  bsg_add_metadata_value_opaque(&event->metadata, "custom", "list", "[1,2,3]");
+
+  bugsnag_breadcrumb *crumb = bsg_event_reserve_breadcrumb(event);
+  bsg_strncpy(crumb->name, "journaled crumb", sizeof(crumb->name));
+  bsg_strncpy(crumb->timestamp, "2024-01-01T00:00:00Z",
+              sizeof(crumb->timestamp));
+  crumb->type = BSG_CRUMB_STATE;
+  bsg_add_metadata_value_opaque(&crumb->metadata, "metaData", "nested",
+                                "{\"a\":true}");
+  bsg_set_feature_flag(event, "journal_flag", "on");
+
+  ASSERT(bsg_event_journal_commit(env));
+  free_heap_values(event);
+  ASSERT(bsg_event_journal_close(env));
+
+  ASSERT(bsg_event_journal_restore(JOURNAL_TEST_FILE, JOURNAL_TEST_EVENT_DIR));
+  // the journal is deleted once it has been restored
+  ASSERT_EQ(-1, access(JOURNAL_TEST_FILE, F_OK));
+
+  JSON_Value *root = read_event_file();
+  ASSERT(root != NULL);
+  JSON_Object *json = json_value_get_object(root);
+  ASSERT_STR_EQ("Foo", json_object_get_string(json, "context"));
+  ASSERT_EQ(3, json_array_get_count(
+                   json_object_dotget_array(json, "metaData.custom.list")));
+
+  JSON_Array *crumbs_json = json_object_get_array(json, "breadcrumbs");
+  ASSERT_EQ(1, json_array_get_count(crumbs_json));
+  JSON_Object *crumb_json = json_array_get_object(crumbs_json, 0);
+  ASSERT_STR_EQ("journaled crumb", json_object_get_string(crumb_json, "name"));
+  ASSERT_EQ(1, json_object_dotget_boolean(crumb_json, "metaData.nested.a"));
+
+  JSON_Array *flags_json = json_object_get_array(json, "featureFlags");
+  ASSERT_EQ(1, json_array_get_count(flags_json));
+  JSON_Object *flag_json = json_array_get_object(flags_json, 0);
+  ASSERT_STR_EQ("journal_flag",
+                json_object_get_string(flag_json, "featureFlag"));
+  ASSERT_STR_EQ("on", json_object_get_string(flag_json, "variant"));
+
+  ASSERT_EQ(1, json_object_dotget_boolean(json, "usage.config.journal"));
+
+  json_value_free(root);
+  PASS();
+}
+
+TEST test_journal_without_crash_is_discarded(void) {
+  mkdir(JOURNAL_TEST_EVENT_DIR, 0700);
+  unlink(JOURNAL_TEST_FILE);
+
+  bsg_environment *env = bsg_event_journal_open(JOURNAL_TEST_FILE, 5);
+  ASSERT(env != NULL);
+  bsg_strncpy(env->next_event.context, "not crashed",
+              sizeof(env->next_event.context));
+  ASSERT(bsg_event_journal_close(env));
+
+  ASSERT_FALSE(
+      bsg_event_journal_restore(JOURNAL_TEST_FILE, JOURNAL_TEST_EVENT_DIR));
+  ASSERT_EQ(-1, access(JOURNAL_TEST_FILE, F_OK));
+  ASSERT_EQ(NULL, read_event_file());
+  PASS();
+}
+
+TEST test_journal_only_holds_its_own_env(void) {
+  bsg_environment *env = calloc(1, sizeof(bsg_environment));
+  ASSERT_FALSE(bsg_event_journal_commit(env));
+  ASSERT_FALSE(bsg_event_journal_close(env));
+  free(env);
+  PASS();
+}
+
+SUITE(suite_event_journal) {
+  RUN_TEST(test_journal_restores_crashed_event);
+  RUN_TEST(test_journal_without_crash_is_discarded);
+  RUN_TEST(test_journal_only_holds_its_own_env);
+}
@@ -1,3 +1,4 @@
+#include <stdio.h>
 #include <greatest/greatest.h>
 #include <featureflags.h>
 
@@ -52,7 +53,46 @@ TEST test_clear_feature_flag(void) {
   PASS();
 }
 
+TEST test_many_feature_flags(void) {
+  bugsnag_event *event = calloc(1, sizeof(bugsnag_event));
+  char name[32];
+
+  for (int i = 0; i < 1000; i++) {
+    snprintf(name, sizeof(name), "flag_%d", i);
+    bsg_set_feature_flag(event, name, NULL);
+  }
+  for (int i = 0; i < 1000; i += 2) {
+    snprintf(name, sizeof(name), "flag_%d", i);
+    bsg_set_feature_flag(event, name, "even");
+  }
+  for (int i = 0; i < 1000; i += 3) {
+    snprintf(name, sizeof(name), "flag_%d", i);
+    bsg_clear_feature_flag(event, name);
+  }
+
+  ASSERT_EQ(666, event->feature_flag_count);
+  ASSERT_STR_EQ("flag_1", event->feature_flags[0].name);
+  ASSERT_EQ(NULL, event->feature_flags[0].variant);
+  ASSERT_STR_EQ("flag_2", event->feature_flags[1].name);
+  ASSERT_STR_EQ("even", event->feature_flags[1].variant);
+  ASSERT_STR_EQ("flag_998", event->feature_flags[665].name);
+  ASSERT_STR_EQ("even", event->feature_flags[665].variant);
+
+  // flags are still found after being moved by a clear
+  bsg_set_feature_flag(event, "flag_998", "updated");
+  ASSERT_EQ(666, event->feature_flag_count);
+  ASSERT_STR_EQ("updated", event->feature_flags[665].variant);
+
+  bsg_free_feature_flags(event);
+  ASSERT_EQ(0, event->feature_flag_count);
+  ASSERT_EQ(NULL, event->feature_flag_index);
+  free(event);
+
+  PASS();
+}
+
 SUITE (suite_feature_flags) {
   RUN_TEST(test_set_feature_flag);
   RUN_TEST(test_clear_feature_flag);
+  RUN_TEST(test_many_feature_flags);
 }
\ No newline at end of file
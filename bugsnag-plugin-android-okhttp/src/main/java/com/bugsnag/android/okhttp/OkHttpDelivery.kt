@@ -11,9 +11,13 @@ import okhttp3.Headers
 import okhttp3.OkHttpClient
 import okhttp3.Request
 import okhttp3.RequestBody.Companion.toRequestBody
+import java.io.ByteArrayOutputStream
 import java.io.IOException
+import java.security.MessageDigest
+import java.util.zip.GZIPOutputStream
 
 private const val BUGSNAG_INTEGRITY_HEADER = "Bugsnag-Integrity"
+private const val CONTENT_ENCODING_HEADER = "Content-Encoding"
 
 class OkHttpDelivery @JvmOverloads constructor(
     private val client: OkHttpClient = OkHttpClient.Builder().build(),
@@ -22,19 +26,11 @@ class OkHttpDelivery @JvmOverloads constructor(
     override fun deliver(payload: Session, deliveryParams: DeliveryParams): DeliveryStatus {
         TrafficStats.setThreadStatsTag(1)
         try {
-            val requestBody = payload.toByteArray().toRequestBody()
-            val integrityHeader = payload.integrityToken
-
-            val requestBuilder = Request.Builder()
-                .url(deliveryParams.endpoint)
-                .headers(deliveryParams.toHeaders())
-                .post(requestBody)
-
-            if (integrityHeader != null) {
-                requestBuilder.header(BUGSNAG_INTEGRITY_HEADER, integrityHeader)
+            val request = buildRequest(payload.toByteArray(), deliveryParams) {
+                payload.integrityToken
             }
 
-            val call = client.newCall(requestBuilder.build())
+            val call = client.newCall(request)
             val response = call.execute()
 
             return DeliveryStatus.forHttpResponseCode(response.code)
@@ -46,19 +42,10 @@ class OkHttpDelivery @JvmOverloads constructor(
     override fun deliver(payload: EventPayload, deliveryParams: DeliveryParams): DeliveryStatus {
         TrafficStats.setThreadStatsTag(1)
         try {
-            val requestBody = payload.trimToSize().toByteArray().toRequestBody()
-            val integrityHeader = payload.integrityToken
-
-            val requestBuilder = Request.Builder()
-                .url(deliveryParams.endpoint)
-                .headers(deliveryParams.toHeaders())
-                .post(requestBody)
-
-            if (integrityHeader != null) {
-                requestBuilder.header(BUGSNAG_INTEGRITY_HEADER, integrityHeader)
-            }
+            val json = payload.trimToSize().toByteArray()
+            val request = buildRequest(json, deliveryParams) { payload.integrityToken }
 
-            val call = client.newCall(requestBuilder.build())
+            val call = client.newCall(request)
 
             val response = call.execute()
             return DeliveryStatus.forHttpResponseCode(response.code)
@@ -79,6 +66,56 @@ class OkHttpDelivery @JvmOverloads constructor(
         }
     }
 
+    /**
+     * Build the request for an encoded payload. When [DeliveryParams.compressPayloads] is set
+     * the payload is sent gzip compressed, and the integrity header is calculated from the
+     * compressed bytes so that it matches the body that is actually sent. Otherwise the
+     * payload's own [integrityToken] is used.
+     */
+    private inline fun buildRequest(
+        json: ByteArray,
+        deliveryParams: DeliveryParams,
+        integrityToken: () -> String?
+    ): Request {
+        val body: ByteArray
+        val integrityHeader: String?
+        if (deliveryParams.compressPayloads) {
+            body = gzip(json)
+            integrityHeader = computeIntegrityHeader(body)
+        } else {
+            body = json
+            integrityHeader = integrityToken()
+        }
+
+        val requestBuilder = Request.Builder()
+            .url(deliveryParams.endpoint)
+            .headers(deliveryParams.toHeaders())
+            .post(body.toRequestBody())
+
+        if (deliveryParams.compressPayloads) {
+            requestBuilder.header(CONTENT_ENCODING_HEADER, "gzip")
+        }
+
+        if (integrityHeader != null) {
+            requestBuilder.header(BUGSNAG_INTEGRITY_HEADER, integrityHeader)
+        }
+
+        return requestBuilder.build()
+    }
+
+    private fun gzip(json: ByteArray): ByteArray {
+        val buffer = ByteArrayOutputStream()
+        GZIPOutputStream(buffer).use { it.write(json) }
+        return buffer.toByteArray()
+    }
+
+    private fun computeIntegrityHeader(body: ByteArray): String? {
+        return runCatching {
+            val digest = MessageDigest.getInstance("SHA-1").digest(body)
+            digest.joinToString(separator = "", prefix = "sha1 ") { "%02x".format(it) }
+        }.getOrNull()
+    }
+
     private fun DeliveryParams.toHeaders(): Headers {
         return Headers.Builder().run {
             headers.forEach { (name, value) ->
@@ -0,0 +1,91 @@
+package com.bugsnag.android
+
+import com.bugsnag.android.okhttp.OkHttpDelivery
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import java.security.MessageDigest
+import java.util.zip.GZIPInputStream
+
+class OkHttpDeliveryTest {
+
+    private lateinit var server: MockWebServer
+    private val delivery = OkHttpDelivery()
+
+    @Before
+    fun setUp() {
+        server = MockWebServer().apply {
+            enqueue(MockResponse().setResponseCode(202))
+            start()
+        }
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    @Test
+    fun sessionIsSentUncompressedByDefault() {
+        val session = BugsnagTestUtils.generateSession()
+        val status = delivery.deliver(session, deliveryParams(compressPayloads = false))
+        assertEquals(DeliveryStatus.DELIVERED, status)
+
+        val request = server.takeRequest()
+        assertNull(request.getHeader("Content-Encoding"))
+        assertArrayEquals(session.toByteArray(), request.body.readByteArray())
+    }
+
+    @Test
+    fun sessionIsCompressedWhenEnabled() {
+        val session = BugsnagTestUtils.generateSession()
+        val status = delivery.deliver(session, deliveryParams(compressPayloads = true))
+        assertEquals(DeliveryStatus.DELIVERED, status)
+
+        val request = server.takeRequest()
+        val body = assertCompressed(request)
+        assertArrayEquals(session.toByteArray(), gunzip(body))
+    }
+
+    @Test
+    fun eventIsCompressedWhenEnabled() {
+        val config = BugsnagTestUtils.generateImmutableConfig()
+        val payload = BugsnagTestUtils.generateEventPayload(config)
+        val status = delivery.deliver(payload, deliveryParams(compressPayloads = true))
+        assertEquals(DeliveryStatus.DELIVERED, status)
+
+        val request = server.takeRequest()
+        val body = assertCompressed(request)
+        assertArrayEquals(payload.toByteArray(), gunzip(body))
+    }
+
+    private fun deliveryParams(compressPayloads: Boolean) = DeliveryParams(
+        server.url("/").toString(),
+        mapOf("Bugsnag-Api-Key" to "5d1ec5bd39a74caa1267142706a7fb21"),
+        compressPayloads
+    )
+
+    /**
+     * Asserts that the request was sent with gzip encoding, and that the integrity header
+     * was calculated from the compressed body that was actually sent.
+     */
+    private fun assertCompressed(request: RecordedRequest): ByteArray {
+        assertEquals("gzip", request.getHeader("Content-Encoding"))
+        val body = request.body.readByteArray()
+        assertEquals(sha1(body), request.getHeader("Bugsnag-Integrity"))
+        return body
+    }
+
+    private fun sha1(body: ByteArray): String {
+        val digest = MessageDigest.getInstance("SHA-1").digest(body)
+        return digest.joinToString(separator = "", prefix = "sha1 ") { "%02x".format(it) }
+    }
+
+    private fun gunzip(body: ByteArray) = GZIPInputStream(body.inputStream()).use { it.readBytes() }
+}
@@ -1,6 +1,7 @@
 package com.bugsnag.android;
 
 import com.bugsnag.android.internal.ImmutableConfig;
+import com.bugsnag.android.internal.ProjectPackageMatcher;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -12,11 +13,11 @@ import java.util.Map;
  */
 class NativeStackDeserializer implements MapDeserializer<List<Stackframe>> {
 
-    private final Collection<String> projectPackages;
+    private final ProjectPackageMatcher projectPackages;
     private final ImmutableConfig config;
 
     NativeStackDeserializer(Collection<String> projectPackages, ImmutableConfig config) {
-        this.projectPackages = projectPackages;
+        this.projectPackages = new ProjectPackageMatcher(projectPackages);
         this.config = config;
     }
 
@@ -39,7 +40,7 @@ class NativeStackDeserializer implements MapDeserializer<List<Stackframe>> {
     }
 
     private Stackframe deserializeStackframe(Map<String, Object> map,
-                                             Collection<String> projectPackages) {
+                                             ProjectPackageMatcher projectPackages) {
         String methodName = MapUtils.getOrNull(map, "methodName");
         if (methodName == null) {
             methodName = "";
@@ -60,7 +61,7 @@ class NativeStackDeserializer implements MapDeserializer<List<Stackframe>> {
                 method,
                 file,
                 MapUtils.<Integer>getOrNull(map, "lineNumber"),
-                Stacktrace.Companion.inProject(clz, projectPackages)
+                projectPackages.inProject(clz)
         );
         stackframe.setType(ErrorType.ANDROID);
         return stackframe;
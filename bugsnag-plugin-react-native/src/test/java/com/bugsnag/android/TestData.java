@@ -41,6 +41,8 @@ class TestData {
                 22,
                 32,
                 32,
+                1,
+                1,
                 1000,
                 10000,
                 500,
@@ -56,6 +58,8 @@ class TestData {
                 }),
                 true,
                 true,
+                false,
+                false,
                 true,
                 null,
                 null,
@@ -1,6 +1,7 @@
 package com.bugsnag.android.mazerunner.scenarios
 
 import android.content.Context
+import com.bugsnag.android.Bugsnag
 import com.bugsnag.android.Configuration
 import com.bugsnag.android.NativeOutOfMemoryPlugin
 import java.util.LinkedList
@@ -30,6 +31,9 @@ class NativeOOMHandlerScenario(
 
         configure()
 
+        // left immediately before the OOM, so that it is still held in the state buffer
+        Bugsnag.leaveBreadcrumb("Allocating strings")
+
         while (true) {
             val array = Array(Int.MAX_VALUE) {
                 val input = "It's Supercalifragilisticexpialidocious! \n" +
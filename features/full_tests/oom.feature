@@ -21,3 +21,4 @@ Feature: Reporting OOMs
     And the error payload field "events" is an array with 1 elements
     And the exception "errorClass" equals "java.lang.OutOfMemoryError"
     And the event "metaData.OutOfMemory.NativeOOM" is true
+    And the event has a "manual" breadcrumb named "Allocating strings"